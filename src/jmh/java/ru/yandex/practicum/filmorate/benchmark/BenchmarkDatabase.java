@@ -0,0 +1,108 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.yandex.practicum.filmorate.storage.director.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmReadSettings;
+import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MPADbStorage;
+import ru.yandex.practicum.filmorate.storage.review.ReviewDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.util.Random;
+import java.util.UUID;
+
+// H2 в памяти со схемой приложения, заполненная DataGenerator. Размер данных задается через -p.
+// Соединения берутся из пула Hikari, как в приложении, чтобы не мерить открытие соединений.
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+    @Param("2000")
+    public int users;
+
+    @Param("2000")
+    public int films;
+
+    @Param("20")
+    public int likesPerUser;
+
+    @Param("1.0")
+    public double likesSkew;
+
+    @Param("20")
+    public int friendsPerUser;
+
+    @Param("2")
+    public int reviewsPerFilm;
+
+    // baseline - пул Hikari по умолчанию без кэша запросов H2, tuned - настройки из application.properties
+    @Param("tuned")
+    public String pool;
+
+    // Параллельное чтение частей одного фильма (filmorate.film-read.parallel)
+    @Param("true")
+    public boolean parallelFilmRead;
+
+    public GenreDbStorage genreStorage;
+    public MPADbStorage mpaStorage;
+    public DirectorDbStorage directorStorage;
+    public FilmDbStorage filmStorage;
+    public UserDbStorage userStorage;
+    public ReviewDbStorage reviewStorage;
+    public DataGenerator generator;
+
+    private HikariDataSource dataSource;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setUsername("sa");
+        if ("baseline".equals(pool)) {
+            dataSource.setJdbcUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;QUERY_CACHE_SIZE=0");
+        } else {
+            dataSource.setJdbcUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;QUERY_CACHE_SIZE=64");
+            dataSource.setMaximumPoolSize(16);
+            dataSource.setMinimumIdle(16);
+            dataSource.setConnectionTimeout(10_000);
+        }
+
+        Flyway.configure().dataSource(dataSource).load().migrate();
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        NamedParameterJdbcTemplate namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+
+        generator = DataGenerator.builder()
+                .users(users)
+                .films(films)
+                .directors(Math.max(1, films / 20))
+                .likesPerUser(likesPerUser)
+                .likesSkew(likesSkew)
+                .friendsPerUser(friendsPerUser)
+                .reviewsPerFilm(reviewsPerFilm)
+                .build();
+        generator.fill(jdbcTemplate);
+
+        genreStorage = new GenreDbStorage(jdbcTemplate, namedJdbcTemplate);
+        mpaStorage = new MPADbStorage(jdbcTemplate, namedJdbcTemplate);
+        directorStorage = new DirectorDbStorage(jdbcTemplate, namedJdbcTemplate);
+        FilmReadSettings readSettings = new FilmReadSettings();
+        readSettings.setParallel(parallelFilmRead);
+        filmStorage = new FilmDbStorage(jdbcTemplate, namedJdbcTemplate, genreStorage, mpaStorage, directorStorage,
+                readSettings);
+        userStorage = new UserDbStorage(jdbcTemplate);
+        reviewStorage = new ReviewDbStorage(jdbcTemplate);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        filmStorage.close();
+        dataSource.close();
+    }
+
+    public long randomUser(Random random) {
+        return 1 + random.nextInt(users);
+    }
+}
@@ -0,0 +1,167 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import lombok.Builder;
+import lombok.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.*;
+
+// Заполняет базу синтетическими данными. Популярность фильмов распределена по Ципфу:
+// при likesSkew = 0 лайки равномерны, при 1 и выше основная масса лайков у первых фильмов.
+@Value
+@Builder
+public class DataGenerator {
+    private static final String[] TITLE_WORDS = {
+            "star", "night", "river", "ghost", "city", "winter", "dream", "storm", "island", "shadow",
+            "love", "road", "fire", "silent", "last", "golden", "hidden", "ocean", "empire", "heart"
+    };
+    private static final int BATCH_SIZE = 1_000;
+
+    int users;
+    int films;
+    int directors;
+    int likesPerUser;
+    double likesSkew;
+    int friendsPerUser;
+    int reviewsPerFilm;
+    @Builder.Default
+    long seed = 42;
+
+    public void fill(JdbcTemplate jdbcTemplate) {
+        Random random = new Random(seed);
+
+        List<Object[]> rows = new ArrayList<>();
+        for (int id = 1; id <= users; id++) {
+            rows.add(new Object[]{id, "User " + id, "user" + id, "user" + id + "@email.ru",
+                    Timestamp.valueOf(LocalDate.of(1970, 1, 1).plusDays(id % 15_000).atStartOfDay())});
+        }
+        insert(jdbcTemplate, "INSERT INTO user_data (user_id, name, login, email, birthday) " +
+                "VALUES (?, ?, ?, ?, ?)", rows);
+
+        for (int id = 1; id <= directors; id++) {
+            rows.add(new Object[]{id, "Director " + word(random) + " " + id});
+        }
+        insert(jdbcTemplate, "INSERT INTO director (director_id, name) VALUES (?, ?)", rows);
+
+        int mpaCount = count(jdbcTemplate, "SELECT COUNT(*) FROM mpa_rating");
+        for (int id = 1; id <= films; id++) {
+            rows.add(new Object[]{id, word(random) + " " + word(random) + " " + id, "Description " + id,
+                    1 + random.nextInt(mpaCount),
+                    Timestamp.valueOf(LocalDate.of(1950, 1, 1).plusDays(random.nextInt(27_000)).atStartOfDay()),
+                    60 + random.nextInt(120)});
+        }
+        insert(jdbcTemplate, "INSERT INTO film (film_id, name, description, rating_id, release, duration) " +
+                "VALUES (?, ?, ?, ?, ?, ?)", rows);
+
+        int genreCount = count(jdbcTemplate, "SELECT COUNT(*) FROM genre");
+        List<Object[]> directorRows = new ArrayList<>();
+        for (int film = 1; film <= films; film++) {
+            for (int genre : distinct(random, 1 + random.nextInt(3), genreCount)) {
+                rows.add(new Object[]{film, genre});
+            }
+            if (directors > 0) {
+                directorRows.add(new Object[]{1 + random.nextInt(directors), film});
+            }
+        }
+        insert(jdbcTemplate, "INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?)", rows);
+        insert(jdbcTemplate, "INSERT INTO film_director (director_id, film_id) VALUES (?, ?)", directorRows);
+
+        ZipfSampler popularity = new ZipfSampler(films, likesSkew);
+        for (int user = 1; user <= users; user++) {
+            Set<Integer> liked = new HashSet<>();
+            int likes = Math.min(likesPerUser, films);
+            while (liked.size() < likes) {
+                liked.add(popularity.next(random));
+            }
+            for (int film : liked) {
+                rows.add(new Object[]{film, user});
+            }
+            if (rows.size() >= BATCH_SIZE) {
+                insert(jdbcTemplate, "INSERT INTO like_film (film_id, user_id) VALUES (?, ?)", rows);
+            }
+        }
+        insert(jdbcTemplate, "INSERT INTO like_film (film_id, user_id) VALUES (?, ?)", rows);
+        jdbcTemplate.update("UPDATE film f SET likes_count = " +
+                "(SELECT COUNT(*) FROM like_film l WHERE l.film_id = f.film_id)");
+
+        for (int user = 1; user <= users; user++) {
+            for (int friend : distinct(random, Math.min(friendsPerUser, users - 1), users)) {
+                if (friend != user) {
+                    rows.add(new Object[]{friend, user, random.nextBoolean()});
+                }
+            }
+            if (rows.size() >= BATCH_SIZE) {
+                insert(jdbcTemplate, "MERGE INTO follow (target_id, follower_id, approved) " +
+                        "KEY (target_id, follower_id) VALUES (?, ?, ?)", rows);
+            }
+        }
+        insert(jdbcTemplate, "MERGE INTO follow (target_id, follower_id, approved) " +
+                "KEY (target_id, follower_id) VALUES (?, ?, ?)", rows);
+
+        int reviewId = 0;
+        List<Object[]> voteRows = new ArrayList<>();
+        for (int film = 1; film <= films; film++) {
+            for (int i = 0; i < reviewsPerFilm; i++) {
+                reviewId++;
+                rows.add(new Object[]{reviewId, "Review " + reviewId, 1 + random.nextInt(users), film,
+                        random.nextBoolean()});
+                for (int voter : distinct(random, random.nextInt(5), users)) {
+                    voteRows.add(new Object[]{voter, reviewId, random.nextBoolean()});
+                }
+            }
+        }
+        insert(jdbcTemplate, "INSERT INTO review (review_id, content, user_id, film_id, is_positive) " +
+                "VALUES (?, ?, ?, ?, ?)", rows);
+        insert(jdbcTemplate, "INSERT INTO like_review (user_id, review_id, usefull) VALUES (?, ?, ?)", voteRows);
+    }
+
+    public String randomTitleWord(Random random) {
+        return word(random);
+    }
+
+    private static String word(Random random) {
+        return TITLE_WORDS[random.nextInt(TITLE_WORDS.length)];
+    }
+
+    // count различных чисел из [1, bound]
+    private static Set<Integer> distinct(Random random, int count, int bound) {
+        Set<Integer> result = new HashSet<>();
+        while (result.size() < Math.min(count, bound)) {
+            result.add(1 + random.nextInt(bound));
+        }
+        return result;
+    }
+
+    private static int count(JdbcTemplate jdbcTemplate, String sqlQuery) {
+        return Objects.requireNonNull(jdbcTemplate.queryForObject(sqlQuery, Integer.class));
+    }
+
+    // Вставляет накопленные строки пачками и очищает список
+    private static void insert(JdbcTemplate jdbcTemplate, String sqlQuery, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(sqlQuery, rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())));
+        }
+        rows.clear();
+    }
+
+    private static class ZipfSampler {
+        private final double[] cumulative;
+
+        private ZipfSampler(int size, double skew) {
+            cumulative = new double[size];
+            double sum = 0;
+            for (int rank = 1; rank <= size; rank++) {
+                sum += 1 / Math.pow(rank, skew);
+                cumulative[rank - 1] = sum;
+            }
+        }
+
+        private int next(Random random) {
+            double point = random.nextDouble() * cumulative[cumulative.length - 1];
+            int index = Arrays.binarySearch(cumulative, point);
+            return (index >= 0 ? index : -index - 1) + 1;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FilmStorageBenchmark {
+    @Benchmark
+    public List<Film> getAll(BenchmarkDatabase db) {
+        return db.filmStorage.getAll();
+    }
+
+    // Задержка чтения одного фильма с процентилями, сравнение: -p parallelFilmRead=true,false
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Film getFilm(BenchmarkDatabase db) {
+        return db.filmStorage.get(1 + ThreadLocalRandom.current().nextInt(db.films));
+    }
+
+    @Benchmark
+    public List<Film> getPopularFilm(BenchmarkDatabase db) {
+        return db.filmStorage.getPopularFilm(10, null, null);
+    }
+
+    @Benchmark
+    public List<Film> getPopularFilmByGenre(BenchmarkDatabase db) {
+        return db.filmStorage.getPopularFilm(10, 1 + (long) ThreadLocalRandom.current().nextInt(5), null);
+    }
+
+    @Benchmark
+    public List<Film> searchByTitle(BenchmarkDatabase db) {
+        String query = db.generator.randomTitleWord(ThreadLocalRandom.current());
+        return db.filmStorage.search(query, List.of("title"));
+    }
+
+    @Benchmark
+    public List<Film> searchByTitleAndDirector(BenchmarkDatabase db) {
+        String query = db.generator.randomTitleWord(ThreadLocalRandom.current());
+        return db.filmStorage.search(query, List.of("title", "director"));
+    }
+
+    @Benchmark
+    public List<Film> getRecommendations(BenchmarkDatabase db) {
+        return db.filmStorage.getRecommendations(db.randomUser(ThreadLocalRandom.current()));
+    }
+}
@@ -0,0 +1,99 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.model.feed.FeedEventType;
+import ru.yandex.practicum.filmorate.model.feed.FeedOperation;
+import ru.yandex.practicum.filmorate.storage.feed.FeedStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Пропускная способность записи лайков и событий ленты при разных профилях хранилища H2:
+// default - умолчания H2, h2-durable, h2-throughput и h2-memory (база в памяти со снимками).
+// Приложение поднимается с настройками профиля, база лежит во временном каталоге.
+// Лента пишется синхронно, чтобы каждое событие было отдельной транзакцией.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@State(Scope.Benchmark)
+public class H2ProfileWriteBenchmark {
+    @Param({"default", "h2-durable", "h2-throughput", "h2-memory"})
+    public String profile;
+
+    @Param("2000")
+    public int users;
+
+    @Param("2000")
+    public int films;
+
+    // Для h2-memory: как часто пишется снимок во время замера
+    @Param("60000")
+    public long snapshotIntervalMs;
+
+    private ConfigurableApplicationContext context;
+    private Path dir;
+    private FilmStorage filmStorage;
+    private FeedStorage feedStorage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("filmorate-h2-");
+        SpringApplicationBuilder application = new SpringApplicationBuilder(FilmorateApplication.class);
+        if (!"default".equals(profile)) {
+            application.profiles(profile);
+        }
+        // Аргументами командной строки, чтобы перекрыть application.properties
+        context = application.run(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--filmorate.datasource.path=" + dir.resolve("filmorate"),
+                "--filmorate.datasource.snapshot.interval-ms=" + snapshotIntervalMs,
+                "--filmorate.feed.mode=sync",
+                "--filmorate.warm-up.enabled=false",
+                "--logging.level.ru.yandex.practicum=WARN");
+
+        DataGenerator.builder()
+                .users(users)
+                .films(films)
+                .directors(Math.max(1, films / 20))
+                .likesPerUser(5)
+                .likesSkew(1.0)
+                .friendsPerUser(5)
+                .reviewsPerFilm(0)
+                .build()
+                .fill(context.getBean(JdbcTemplate.class));
+        filmStorage = context.getBean(FilmStorage.class);
+        feedStorage = context.getBean(FeedStorage.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    // Лайк случайной пары: если он уже был, снимается
+    @Benchmark
+    public boolean toggleLike() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long filmId = 1 + random.nextInt(films);
+        long userId = 1 + random.nextInt(users);
+        return filmStorage.addLike(filmId, userId) || filmStorage.removeLike(filmId, userId);
+    }
+
+    @Benchmark
+    public void addFeedEvent() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        feedStorage.add(1 + random.nextInt(users), 1 + random.nextInt(films), FeedEventType.LIKE, FeedOperation.ADD);
+    }
+}
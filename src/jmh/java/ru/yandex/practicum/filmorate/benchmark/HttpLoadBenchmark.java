@@ -0,0 +1,94 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Приложение целиком с Tomcat на H2 в памяти под нагрузкой HTTP-клиентов: число клиентов задается через -t.
+// execution=platform - пул потоков Tomcat, virtual - профиль virtual-threads (нужна Java 21+).
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@State(Scope.Benchmark)
+public class HttpLoadBenchmark {
+    @Param({"platform", "virtual"})
+    public String execution;
+
+    @Param("2000")
+    public int users;
+
+    @Param("2000")
+    public int films;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private String baseUrl;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SpringApplicationBuilder application = new SpringApplicationBuilder(FilmorateApplication.class);
+        if ("virtual".equals(execution)) {
+            application.profiles("virtual-threads");
+        }
+        // Аргументами командной строки, чтобы перекрыть application.properties
+        context = application.run(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                "--logging.level.ru.yandex.practicum=WARN",
+                "--filmorate.logging.sample-rate=0");
+
+        DataGenerator.builder()
+                .users(users)
+                .films(films)
+                .directors(Math.max(1, films / 20))
+                .likesPerUser(20)
+                .likesSkew(1.0)
+                .friendsPerUser(20)
+                .reviewsPerFilm(2)
+                .build()
+                .fill(context.getBean(JdbcTemplate.class));
+
+        int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+        baseUrl = "http://localhost:" + port;
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int getFilm() throws IOException, InterruptedException {
+        return get("/films/" + (1 + ThreadLocalRandom.current().nextInt(films)));
+    }
+
+    @Benchmark
+    public int getFriends() throws IOException, InterruptedException {
+        return get("/users/" + (1 + ThreadLocalRandom.current().nextInt(users)) + "/friends");
+    }
+
+    @Benchmark
+    public int getPopularFilm() throws IOException, InterruptedException {
+        return get("/films/popular?view=lean");
+    }
+
+    private int get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
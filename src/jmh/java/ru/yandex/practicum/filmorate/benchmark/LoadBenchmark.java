@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Смешанная нагрузка на чтение от множества клиентов: число клиентов задается через -t,
+// конфигурация пула - через -p pool=baseline,tuned.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+public class LoadBenchmark {
+    @Benchmark
+    public Film getFilm(BenchmarkDatabase db) {
+        return db.filmStorage.get(1 + ThreadLocalRandom.current().nextInt(db.films));
+    }
+
+    @Benchmark
+    public List<User> getFriends(BenchmarkDatabase db) {
+        return db.userStorage.getFriends(db.randomUser(ThreadLocalRandom.current()));
+    }
+
+    @Benchmark
+    public List<Film> getPopularFilm(BenchmarkDatabase db) {
+        return db.filmStorage.getPopularFilm(10, null, null);
+    }
+}
@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Review;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class ReviewStorageBenchmark {
+    @Param("10")
+    public int count;
+
+    @Benchmark
+    public List<Review> getAllReviews(BenchmarkDatabase db) {
+        return db.reviewStorage.getAllReviews(count);
+    }
+}
@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.SampledLogSettings;
+import ru.yandex.practicum.filmorate.storage.feed.InMemoryFeedStorage;
+
+import javax.validation.Validation;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// GET /films: чтение всех фильмов через сервис с записью в лог на уровне INFO (файл target/benchmark-service.log).
+// payload - прежняя запись всего списка через toString, sampled - сводка SampledLog с долей sampleRate.
+// Размер списка задается параметром films базы.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@State(Scope.Benchmark)
+public class ServiceLogBenchmark {
+    private static final Logger PAYLOAD_LOG = LoggerFactory.getLogger(FilmService.class);
+
+    @Param({"payload", "sampled"})
+    public String logging;
+
+    @Param("0.1")
+    public double sampleRate;
+
+    private FilmService filmService;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkDatabase db) {
+        SampledLogSettings settings = new SampledLogSettings();
+        settings.setSampleRate(sampleRate);
+        filmService = new FilmService(db.filmStorage, db.userStorage, new InMemoryFeedStorage(), db.genreStorage,
+                db.mpaStorage, db.directorStorage, Validation.buildDefaultValidatorFactory().getValidator(),
+                settings);
+    }
+
+    @Benchmark
+    public List<Film> getAllFilms(BenchmarkDatabase db) {
+        if ("payload".equals(logging)) {
+            List<Film> films = db.filmStorage.getAll();
+            PAYLOAD_LOG.info("Получен список всех фильмов. List<Film>: {}", films);
+            return films;
+        }
+        return filmService.getAllFilms();
+    }
+}
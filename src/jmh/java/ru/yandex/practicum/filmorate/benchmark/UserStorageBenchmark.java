@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UserStorageBenchmark {
+    @Benchmark
+    public List<User> getFriends(BenchmarkDatabase db) {
+        return db.userStorage.getFriends(db.randomUser(ThreadLocalRandom.current()));
+    }
+
+    @Benchmark
+    public List<User> getCommonFriends(BenchmarkDatabase db) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return db.userStorage.getCommonFriends(db.randomUser(random), db.randomUser(random));
+    }
+}
@@ -1,13 +1,24 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.BulkImportReport;
+import ru.yandex.practicum.filmorate.model.BulkLikeReport;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LikeEvent;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @Slf4j
@@ -16,10 +27,12 @@ import java.util.List;
 @Validated
 public class FilmController {
     private final FilmService filmService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public FilmController(FilmService filmService) {
+    public FilmController(FilmService filmService, ObjectMapper objectMapper) {
         this.filmService = filmService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
@@ -28,6 +41,15 @@ public class FilmController {
         return filmService.addFilm(film);
     }
 
+    // Принимает JSON-массив или NDJSON и читает фильмы по одному, не загружая весь запрос в память
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public BulkImportReport importFilms(InputStream body) throws IOException {
+        log.info("Получен POST-запрос к /films/bulk.");
+        try (MappingIterator<Film> films = objectMapper.readerFor(Film.class).readValues(body)) {
+            return filmService.importFilms(films);
+        }
+    }
+
     @PutMapping
     public Film updateFilm(@Valid @RequestBody Film film) {
         log.info("Получен PUT-запрос к /films. Тело запроса: {}", film);
@@ -35,8 +57,13 @@ public class FilmController {
     }
 
     @GetMapping("/{id}")
-    public Film getFilm(@PathVariable long id) {
+    public Film getFilm(@PathVariable long id,
+                        @RequestParam(required = false) String view,
+                        @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
         log.info("Получен GET-запрос к /films/{}.", id);
+        if (LeanView.isRequested(view, accept)) {
+            return filmService.getFilmLean(id);
+        }
         return filmService.getFilm(id);
     }
 
@@ -47,29 +74,65 @@ public class FilmController {
     }
 
     @GetMapping
-    public List<Film> getAllFilms() {
-        log.info("Получен GET-запрос к /films.");
-        return filmService.getAllFilms();
+    public List<Film> getAllFilms(@RequestParam(required = false) Long afterId,
+                                  @RequestParam(required = false) Integer limit) {
+        if (afterId == null && limit == null) {
+            log.info("Получен GET-запрос к /films.");
+            return filmService.getAllFilms();
+        }
+        log.info("Получен GET-запрос к /films?afterId={}&limit={}.", afterId, limit);
+        return filmService.getFilmsPage(afterId, limit);
+    }
+
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamAllFilms() {
+        log.info("Получен GET-запрос к /films?stream=true.");
+        return JsonArrayStream.of(objectMapper, filmService::streamAllFilms);
     }
 
     @PutMapping("/{id}/like/{userId}")
-    public Film putLike(@PathVariable long id, @PathVariable long userId) {
+    public Object putLike(@PathVariable long id, @PathVariable long userId,
+                          @RequestParam(required = false) String view,
+                          @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
         log.info("Получен PUT-запрос к /films/{}/like/{}.", id, userId);
+        if (LeanView.isRequested(view, accept)) {
+            return filmService.addLikeLean(id, userId);
+        }
         return filmService.addLike(id, userId);
     }
 
+    // Кортежи {filmId, userId, op} JSON-массивом или NDJSON, op - ADD или REMOVE
+    @PostMapping(value = "/likes/bulk",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public BulkLikeReport applyLikes(InputStream body) throws IOException {
+        log.info("Получен POST-запрос к /films/likes/bulk.");
+        try (MappingIterator<LikeEvent> events = objectMapper.readerFor(LikeEvent.class).readValues(body)) {
+            return filmService.applyLikes(events);
+        }
+    }
+
     @DeleteMapping("/{id}/like/{userId}")
-    public Film deleteLike(@PathVariable long id, @PathVariable long userId) {
+    public Object deleteLike(@PathVariable long id, @PathVariable long userId,
+                             @RequestParam(required = false) String view,
+                             @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
         log.info("Получен DELETE-запрос к /films/{}/like/{}.", id, userId);
+        if (LeanView.isRequested(view, accept)) {
+            return filmService.removeLikeLean(id, userId);
+        }
         return filmService.removeLike(id, userId);
     }
 
     @GetMapping("/popular")
     public List<Film> getPopular(@RequestParam(defaultValue = "10") int count,
                                  @RequestParam(required = false) Long genreId,
-                                 @RequestParam(required = false) Integer year) {
+                                 @RequestParam(required = false) Integer year,
+                                 @RequestParam(required = false) String view,
+                                 @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
 
         log.info("Получен GET-запрос к /popular/count={}/genreId={}/year={}.", count, genreId, year);
+        if (LeanView.isRequested(view, accept)) {
+            return filmService.getPopularFilmLean(count, genreId, year);
+        }
         return filmService.getPopularFilm(count, genreId, year);
     }
 
@@ -90,7 +153,7 @@ public class FilmController {
     @GetMapping("/search")
     public List<Film> searchFilms(@RequestParam(name = "query") String query,
                                   @RequestParam(name = "by", defaultValue = "title") List<String> by) {
-        log.info("Получен GET-запрос к /films/search?query=" + query + "&by=" + by);
+        log.info("Получен GET-запрос к /films/search?query={}&by={}.", query, by);
         return filmService.search(query, by);
     }
 }
@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+// Облегченное представление запрашивается параметром ?view=lean или заголовком Accept с типом LEAN_JSON.
+// В нем изменения лайков и друзей возвращают только id и счетчики, а фильмы - likesCount вместо списка лайков.
+final class LeanView {
+    static final String PARAM = "lean";
+    static final String LEAN_JSON_VALUE = "application/vnd.filmorate.lean+json";
+
+    private static final MediaType LEAN_JSON = MediaType.parseMediaType(LEAN_JSON_VALUE);
+
+    private LeanView() {
+    }
+
+    static boolean isRequested(String view, String accept) {
+        if (PARAM.equalsIgnoreCase(view)) {
+            return true;
+        }
+        if (accept == null) {
+            return false;
+        }
+        try {
+            return MediaType.parseMediaTypes(accept).stream().anyMatch(LEAN_JSON::equalsTypeAndSubtype);
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.model.feed.FeedEntity;
@@ -16,10 +20,12 @@ import java.util.List;
 @RequestMapping("/users")
 public class UserController {
     private final UserService userService;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, ObjectMapper objectMapper) {
         this.userService = userService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
@@ -47,20 +53,41 @@ public class UserController {
     }
 
     @GetMapping
-    public List<User> getAllUsers() {
-        log.info("Получен GET-запрос к /users.");
-        return userService.getAllUsers();
+    public List<User> getAllUsers(@RequestParam(required = false) Long afterId,
+                                  @RequestParam(required = false) Integer limit) {
+        if (afterId == null && limit == null) {
+            log.info("Получен GET-запрос к /users.");
+            return userService.getAllUsers();
+        }
+        log.info("Получен GET-запрос к /users?afterId={}&limit={}.", afterId, limit);
+        return userService.getUsersPage(afterId, limit);
+    }
+
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamAllUsers() {
+        log.info("Получен GET-запрос к /users?stream=true.");
+        return JsonArrayStream.of(objectMapper, userService::streamAllUsers);
     }
 
     @PutMapping("/{id}/friends/{followerId}")
-    public User addFriend(@PathVariable long id, @PathVariable long followerId) {
+    public Object addFriend(@PathVariable long id, @PathVariable long followerId,
+                            @RequestParam(required = false) String view,
+                            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
         log.info("Получен PUT-запрос к /users/{}/friends/{}.", id, followerId);
+        if (LeanView.isRequested(view, accept)) {
+            return userService.addFriendLean(id, followerId);
+        }
         return userService.addFriend(id, followerId);
     }
 
     @DeleteMapping("/{id}/friends/{followerId}")
-    public User deleteFriend(@PathVariable long id, @PathVariable long followerId) {
+    public Object deleteFriend(@PathVariable long id, @PathVariable long followerId,
+                               @RequestParam(required = false) String view,
+                               @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
         log.info("Получен DELETE-запрос к /users/{}/friends/{}.", id, followerId);
+        if (LeanView.isRequested(view, accept)) {
+            return userService.removeFriendLean(id, followerId);
+        }
         return userService.removeFriend(id, followerId);
     }
 
@@ -77,9 +104,11 @@ public class UserController {
     }
 
     @GetMapping("/{id}/feed")
-    public List<FeedEntity> getUserFeed(@PathVariable long id) {
-        log.info("Получен GET-запрос к /users/{}/feed.", id);
-        return userService.getUserFeed(id);
+    public List<FeedEntity> getUserFeed(@PathVariable long id,
+                                        @RequestParam(required = false) Long before,
+                                        @RequestParam(required = false) Integer limit) {
+        log.info("Получен GET-запрос к /users/{}/feed?before={}&limit={}.", id, before, limit);
+        return userService.getUserFeed(id, before, limit);
     }
 
     @GetMapping("/{id}/recommendations")
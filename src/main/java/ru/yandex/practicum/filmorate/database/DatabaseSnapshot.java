@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.database;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+// Снимок базы H2 в памяти - SQL-скрипт всех таблиц и данных в zip-архиве.
+// Снимок пишется во временный файл и затем заменяет предыдущий, поэтому сбой во время записи
+// оставляет на диске последний целый снимок.
+@Slf4j
+public class DatabaseSnapshot {
+    private final JdbcTemplate jdbcTemplate;
+    private final Path path;
+
+    public DatabaseSnapshot(DataSource dataSource, Path path) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.path = path.toAbsolutePath().normalize();
+    }
+
+    public boolean exists() {
+        return Files.isRegularFile(path);
+    }
+
+    public void write() {
+        long start = System.nanoTime();
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(path.getParent());
+            jdbcTemplate.execute("SCRIPT TO " + quote(tmp) + " COMPRESSION ZIP");
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать снимок базы " + path, e);
+        }
+        log.debug("Снимок базы записан в {} за {} мс.", path, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public void restore() {
+        long start = System.nanoTime();
+        jdbcTemplate.execute("RUNSCRIPT FROM " + quote(path) + " COMPRESSION ZIP");
+        log.info("База восстановлена из снимка {} за {} мс.", path, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static String quote(Path file) {
+        return "'" + file.toString().replace("'", "''") + "'";
+    }
+}
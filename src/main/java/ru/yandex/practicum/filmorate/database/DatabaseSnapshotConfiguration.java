@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.database;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.yandex.practicum.filmorate.storage.feed.FeedDbStorage;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// База в памяти с периодическим снимком на диск (профиль h2-memory).
+// При запуске база восстанавливается из последнего снимка до миграций Flyway, затем снимок пишется
+// каждые intervalMs и при остановке. Изменения после последнего снимка при аварийной остановке теряются.
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "filmorate.datasource.snapshot.enabled", havingValue = "true")
+public class DatabaseSnapshotConfiguration {
+    @Bean
+    public DatabaseSnapshot databaseSnapshot(DataSource dataSource, DatabaseSnapshotSettings settings) {
+        return new DatabaseSnapshot(dataSource, Path.of(settings.getPath()));
+    }
+
+    @Bean
+    public FlywayMigrationStrategy snapshotRestoringMigrationStrategy(DatabaseSnapshot snapshot) {
+        return flyway -> {
+            if (snapshot.exists()) {
+                snapshot.restore();
+            }
+            flyway.migrate();
+        };
+    }
+
+    // Writer зависит от хранилища ленты и поэтому закрывается раньше него: очередь ленты
+    // дописывается в базу перед последним снимком
+    @Bean
+    public SnapshotWriter databaseSnapshotWriter(DatabaseSnapshot snapshot,
+                                                 DatabaseSnapshotSettings settings,
+                                                 Optional<FeedDbStorage> feedStorage) {
+        return new SnapshotWriter(snapshot, settings.getIntervalMs(), feedStorage);
+    }
+
+    public static class SnapshotWriter implements DisposableBean {
+        private final DatabaseSnapshot snapshot;
+        private final Optional<FeedDbStorage> feedStorage;
+        private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "db-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        SnapshotWriter(DatabaseSnapshot snapshot, long intervalMs, Optional<FeedDbStorage> feedStorage) {
+            this.snapshot = snapshot;
+            this.feedStorage = feedStorage;
+            executor.scheduleWithFixedDelay(this::write, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void destroy() throws InterruptedException {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            feedStorage.ifPresent(FeedDbStorage::flush);
+            write();
+        }
+
+        private void write() {
+            try {
+                snapshot.write();
+            } catch (RuntimeException e) {
+                log.error("Не удалось записать снимок базы: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.database;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "filmorate.datasource.snapshot")
+public class DatabaseSnapshotSettings {
+    private boolean enabled = false;
+    private String path = "./db/filmorate-snapshot.zip";
+    private long intervalMs = 60_000;
+}
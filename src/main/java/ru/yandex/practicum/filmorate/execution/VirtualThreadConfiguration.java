@@ -0,0 +1,40 @@
+package ru.yandex.practicum.filmorate.execution;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
+// Режим filmorate.execution.mode=virtual: Tomcat обрабатывает каждый запрос, включая вызовы хранилищ,
+// в отдельном виртуальном потоке. Одновременный доступ к базе ограничивает пул Hikari.
+// На JVM без виртуальных потоков остается обычный пул потоков Tomcat.
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "filmorate.execution.mode", havingValue = "virtual")
+public class VirtualThreadConfiguration implements DisposableBean {
+    private final Optional<ExecutorService> executor = VirtualThreads.newThreadPerTaskExecutor("http-virtual-");
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadExecutorCustomizer() {
+        return protocolHandler -> {
+            if (executor.isPresent()) {
+                protocolHandler.setExecutor(executor.get());
+                log.info("Запросы обрабатываются в виртуальных потоках.");
+            } else {
+                log.warn("Виртуальные потоки недоступны в Java {}, запросы обрабатываются пулом потоков Tomcat.",
+                        System.getProperty("java.version"));
+            }
+        };
+    }
+
+    @Override
+    public void destroy() {
+        executor.ifPresent(ExecutorService::shutdown);
+    }
+}
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.execution;
+
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// Виртуальные потоки есть только с Java 21, а проект собирается под Java 11,
+// поэтому исполнитель создается через reflection и на старых JVM его просто нет.
+public final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    // Аналог Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory())
+    public static Optional<ExecutorService> newThreadPerTaskExecutor(String namePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return Optional.of((ExecutorService) newExecutor.invoke(null, factory));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Число SQL-операторов, подготовленных в текущем потоке.
+// Счетчик только растет, поэтому вложенный вызов хранилища считает свои операторы по разности до и после вызова.
+public final class StatementCounter {
+    private static final ThreadLocal<AtomicLong> COUNT = ThreadLocal.withInitial(AtomicLong::new);
+
+    private StatementCounter() {
+    }
+
+    // Задача в другом потоке считает операторы в счетчик потока, который ее создал
+    public static <T> Supplier<T> propagate(Supplier<T> task) {
+        AtomicLong count = COUNT.get();
+        return () -> {
+            AtomicLong previous = COUNT.get();
+            COUNT.set(count);
+            try {
+                return task.get();
+            } finally {
+                COUNT.set(previous);
+            }
+        };
+    }
+
+    static void increment() {
+        COUNT.get().incrementAndGet();
+    }
+
+    static long get() {
+        return COUNT.get().get();
+    }
+}
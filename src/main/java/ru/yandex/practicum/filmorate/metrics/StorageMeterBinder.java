@@ -0,0 +1,89 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStats;
+import ru.yandex.practicum.filmorate.storage.director.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.feed.FeedDbStorage;
+import ru.yandex.practicum.filmorate.storage.feed.FeedWriterMetrics;
+import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MPADbStorage;
+
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+// Кэши справочников и лент событий и очередь записи ленты.
+// Значения снимаются с хранилищ при каждом чтении метрик, сами хранилища о Micrometer не знают.
+@Component
+public class StorageMeterBinder implements MeterBinder {
+    private final GenreDbStorage genreStorage;
+    private final MPADbStorage mpaStorage;
+    private final DirectorDbStorage directorStorage;
+    private final ObjectProvider<FeedDbStorage> feedStorage;
+
+    public StorageMeterBinder(GenreDbStorage genreStorage,
+                              MPADbStorage mpaStorage,
+                              DirectorDbStorage directorStorage,
+                              ObjectProvider<FeedDbStorage> feedStorage) {
+        this.genreStorage = genreStorage;
+        this.mpaStorage = mpaStorage;
+        this.directorStorage = directorStorage;
+        this.feedStorage = feedStorage;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindCache(registry, "genre", genreStorage, GenreDbStorage::getCacheStats);
+        bindCache(registry, "mpa", mpaStorage, MPADbStorage::getCacheStats);
+        bindCache(registry, "director", directorStorage, DirectorDbStorage::getCacheStats);
+        feedStorage.ifAvailable(feed -> {
+            bindCache(registry, "feed-timeline", feed, FeedDbStorage::getTimelineCacheStats);
+            bindFeedWriter(registry, feed);
+        });
+    }
+
+    private static <T> void bindCache(MeterRegistry registry, String cache, T storage,
+                                      Function<T, CacheStats> stats) {
+        FunctionCounter.builder("filmorate.cache.gets", storage, s -> stats.apply(s).getHits())
+                .tag("cache", cache)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("filmorate.cache.gets", storage, s -> stats.apply(s).getMisses())
+                .tag("cache", cache)
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("filmorate.cache.hit.ratio", storage, s -> hitRatio(stats.apply(s)))
+                .tag("cache", cache)
+                .register(registry);
+        Gauge.builder("filmorate.cache.size", storage, s -> stats.apply(s).getSize())
+                .tag("cache", cache)
+                .register(registry);
+    }
+
+    private static void bindFeedWriter(MeterRegistry registry, FeedDbStorage feed) {
+        Gauge.builder("filmorate.feed.queue.size", feed, f -> f.getWriterMetrics().getQueueSize())
+                .register(registry);
+        bindFeedCounter(registry, feed, "enqueued", FeedWriterMetrics::getEnqueued);
+        bindFeedCounter(registry, feed, "written", FeedWriterMetrics::getWritten);
+        bindFeedCounter(registry, feed, "failed", FeedWriterMetrics::getFailed);
+        bindFeedCounter(registry, feed, "overflowed", FeedWriterMetrics::getOverflowed);
+        FunctionCounter.builder("filmorate.feed.batches", feed, f -> f.getWriterMetrics().getBatches())
+                .register(registry);
+    }
+
+    private static void bindFeedCounter(MeterRegistry registry, FeedDbStorage feed, String state,
+                                        ToDoubleFunction<FeedWriterMetrics> value) {
+        FunctionCounter.builder("filmorate.feed.events", feed, f -> value.applyAsDouble(f.getWriterMetrics()))
+                .tag("state", state)
+                .register(registry);
+    }
+
+    private static double hitRatio(CacheStats stats) {
+        long gets = stats.getHits() + stats.getMisses();
+        return gets == 0 ? 0 : (double) stats.getHits() / gets;
+    }
+}
@@ -0,0 +1,61 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+// Время и число SQL-операторов каждого метода интерфейсов хранилищ.
+// Вложенные вызовы других хранилищ входят в значения внешнего метода.
+@Aspect
+@Component
+public class StorageMetricsAspect {
+    static final String CALLS = "filmorate.storage.calls";
+    static final String STATEMENTS = "filmorate.storage.statements";
+
+    private final MeterRegistry registry;
+
+    public StorageMetricsAspect(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Around("execution(* ru.yandex.practicum.filmorate.storage.film.FilmStorage.*(..)) || " +
+            "execution(* ru.yandex.practicum.filmorate.storage.user.UserStorage.*(..)) || " +
+            "execution(* ru.yandex.practicum.filmorate.storage.genre.GenreStorage.*(..)) || " +
+            "execution(* ru.yandex.practicum.filmorate.storage.mpa.MPAStorage.*(..)) || " +
+            "execution(* ru.yandex.practicum.filmorate.storage.director.DirectorStorage.*(..)) || " +
+            "execution(* ru.yandex.practicum.filmorate.storage.review.ReviewStorage.*(..)) || " +
+            "execution(* ru.yandex.practicum.filmorate.storage.feed.FeedStorage.*(..))")
+    public Object measure(ProceedingJoinPoint joinPoint) throws Throwable {
+        String storage = AopUtils.getTargetClass(joinPoint.getTarget()).getSimpleName();
+        String method = joinPoint.getSignature().getName();
+        long statementsBefore = StatementCounter.get();
+        long start = System.nanoTime();
+        String exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            long duration = System.nanoTime() - start;
+            Timer.builder(CALLS)
+                    .tag("storage", storage)
+                    .tag("method", method)
+                    .tag("exception", exception)
+                    .register(registry)
+                    .record(duration, TimeUnit.NANOSECONDS);
+            DistributionSummary.builder(STATEMENTS)
+                    .tag("storage", storage)
+                    .tag("method", method)
+                    .register(registry)
+                    .record(StatementCounter.get() - statementsBefore);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class BulkImportError {
+    private int index; // Номер элемента во входном потоке, начиная с 0
+    private String error;
+    private String description;
+}
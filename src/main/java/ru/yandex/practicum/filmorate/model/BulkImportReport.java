@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class BulkImportReport {
+    private int received;
+    private int imported;
+    private List<BulkImportError> errors = new ArrayList<>();
+}
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class BulkLikeReport {
+    private int received;
+    private int added;
+    private int removed;
+    private int unchanged; // Лайк уже был поставлен или уже отсутствовал
+    private List<BulkImportError> errors = new ArrayList<>();
+}
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Builder;
 import lombok.Data;
 import ru.yandex.practicum.filmorate.model.annotations.AfterDate;
@@ -34,5 +35,10 @@ public class Film {
 
     private List<Genre> genres;
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private Set<Long> likes;
+
+    // Заполняется вместо likes в облегченном представлении
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long likesCount;
 }
\ No newline at end of file
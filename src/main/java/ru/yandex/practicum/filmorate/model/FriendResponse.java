@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Облегченный ответ на изменение дружбы: без списка друзей
+@Getter
+@AllArgsConstructor
+public class FriendResponse {
+    private long userId;
+    private long friendId;
+    private int friendsCount;
+}
@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Builder;
+import lombok.Data;
+import ru.yandex.practicum.filmorate.model.feed.FeedOperation;
+
+import javax.validation.constraints.NotNull;
+
+@Data
+@Builder
+public class LikeEvent {
+    @NotNull(message = "Не указан ID фильма.")
+    private Long filmId;
+
+    @NotNull(message = "Не указан ID пользователя.")
+    private Long userId;
+
+    @NotNull(message = "Не указана операция.")
+    @JsonProperty("op")
+    private FeedOperation operation; // ADD или REMOVE
+}
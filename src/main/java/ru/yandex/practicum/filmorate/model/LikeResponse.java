@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Облегченный ответ на изменение лайка: без перечитывания фильма
+@Getter
+@AllArgsConstructor
+public class LikeResponse {
+    private long filmId;
+    private long userId;
+    private long likesCount;
+}
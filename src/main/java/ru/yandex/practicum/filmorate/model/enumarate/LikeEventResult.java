@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.model.enumarate;
+
+public enum LikeEventResult {
+    ADDED,
+    REMOVED,
+    UNCHANGED,
+    FILM_NOT_FOUND,
+    USER_NOT_FOUND
+}
@@ -2,33 +2,66 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
-import ru.yandex.practicum.filmorate.model.ErrorResponse;
-import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.exception.FilmAttributeNotExistOnFilmCreationException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.model.enumarate.LikeEventResult;
+import ru.yandex.practicum.filmorate.model.feed.FeedEntity;
 import ru.yandex.practicum.filmorate.model.feed.FeedEventType;
 import ru.yandex.practicum.filmorate.model.feed.FeedOperation;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
 import ru.yandex.practicum.filmorate.storage.feed.FeedStorage;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MPAStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class FilmService {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1_000;
+    private static final int STREAM_CHUNK_SIZE = 500;
+    private static final int IMPORT_CHUNK_SIZE = 500;
+    private static final int LIKES_CHUNK_SIZE = 1_000;
+
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
     private final FeedStorage feedStorage;
+    private final GenreStorage genreStorage;
+    private final MPAStorage mpaStorage;
+    private final DirectorStorage directorStorage;
+    private final Validator validator;
+    private final SampledLog sampledLog;
 
     @Autowired
-    public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
-                       @Qualifier("userDbStorage") UserStorage userStorage,
-                       @Qualifier("feedDbStorage") FeedStorage feedStorage) {
+    public FilmService(FilmStorage filmStorage,
+                       UserStorage userStorage,
+                       FeedStorage feedStorage,
+                       GenreStorage genreStorage,
+                       MPAStorage mpaStorage,
+                       DirectorStorage directorStorage,
+                       Validator validator,
+                       SampledLogSettings logSettings) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
         this.feedStorage = feedStorage;
+        this.genreStorage = genreStorage;
+        this.mpaStorage = mpaStorage;
+        this.directorStorage = directorStorage;
+        this.validator = validator;
+        this.sampledLog = new SampledLog(FilmService.class, logSettings);
     }
 
     public Film addFilm(Film film) {
@@ -37,6 +70,53 @@ public class FilmService {
         return savedFilm;
     }
 
+    // Фильмы проверяются по справочникам в памяти и пишутся пакетами по IMPORT_CHUNK_SIZE в отдельных транзакциях.
+    // Ошибочные элементы попадают в отчет и не мешают добавлению остальных.
+    public BulkImportReport importFilms(Iterator<Film> films) {
+        Set<Long> genreIds = genreStorage.getAll().stream().map(Genre::getId).collect(Collectors.toSet());
+        Set<Long> mpaIds = mpaStorage.getAll().stream().map(MPA::getId).collect(Collectors.toSet());
+        Set<Long> directorIds = directorStorage.getAll().stream().map(Director::getId).collect(Collectors.toSet());
+
+        BulkImportReport report = new BulkImportReport();
+        List<Film> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+        List<Integer> chunkIndexes = new ArrayList<>(IMPORT_CHUNK_SIZE);
+        int index = 0;
+        while (true) {
+            Film film;
+            try {
+                if (!films.hasNext()) {
+                    break;
+                }
+                film = films.next();
+            } catch (RuntimeException e) {
+                // После ошибки разбора место следующего элемента в потоке неизвестно, поэтому чтение прекращается
+                report.getErrors().add(new BulkImportError(index, "Film", "Некорректный JSON: " + e.getMessage()));
+                break;
+            }
+
+            ErrorResponse error = checkImportedFilm(film, genreIds, mpaIds, directorIds);
+            if (error == null) {
+                chunk.add(film);
+                chunkIndexes.add(index);
+            } else {
+                report.getErrors().add(new BulkImportError(index, error.getError(), error.getDescription()));
+            }
+            index++;
+
+            if (chunk.size() == IMPORT_CHUNK_SIZE) {
+                importChunk(chunk, chunkIndexes, report);
+                chunk.clear();
+                chunkIndexes.clear();
+            }
+        }
+        importChunk(chunk, chunkIndexes, report);
+        report.setReceived(index);
+
+        log.info("Импорт фильмов завершен. Получено: {}, добавлено: {}, ошибок: {}",
+                report.getReceived(), report.getImported(), report.getErrors().size());
+        return report;
+    }
+
     public Film updateFilm(Film film) {
         Film savedUFilm = filmStorage.update(film);
         log.info("Данные фильма обновлены. Film: {}", savedUFilm);
@@ -44,8 +124,16 @@ public class FilmService {
     }
 
     public Film getFilm(long id) {
+        long start = System.nanoTime();
         Film film = filmStorage.get(id);
-        log.info("Получен фильм с id {}. Film: {}", id, film);
+        sampledLog.event("Получен фильм", start, "id", id, "likes", film.getLikes().size());
+        return film;
+    }
+
+    public Film getFilmLean(long id) {
+        long start = System.nanoTime();
+        Film film = filmStorage.getLean(id);
+        sampledLog.event("Получен фильм без списка лайков", start, "id", id, "likesCount", film.getLikesCount());
         return film;
     }
 
@@ -55,16 +143,56 @@ public class FilmService {
     }
 
     public List<Film> getAllFilms() {
+        long start = System.nanoTime();
         List<Film> films = filmStorage.getAll();
-        log.info("Получен список всех фильмов. List<Film>: {}", films);
+        sampledLog.list("Получен список всех фильмов", start, films, Film::getId);
+        return films;
+    }
+
+    public List<Film> getFilmsPage(Long afterId, Integer limit) {
+        long from = afterId == null ? 0 : afterId;
+        int pageSize = checkPageSize(limit);
+        long start = System.nanoTime();
+        List<Film> films = filmStorage.getPage(from, pageSize);
+        sampledLog.list("Получена страница фильмов", start, films, Film::getId, "afterId", from, "limit", pageSize);
         return films;
     }
 
+    public void streamAllFilms(Consumer<List<Film>> pageConsumer) {
+        long afterId = 0;
+        int count = 0;
+        List<Film> page;
+        do {
+            page = filmStorage.getPage(afterId, STREAM_CHUNK_SIZE);
+            if (!page.isEmpty()) {
+                pageConsumer.accept(page);
+                afterId = page.get(page.size() - 1).getId();
+                count += page.size();
+            }
+        } while (page.size() == STREAM_CHUNK_SIZE);
+        log.info("Список всех фильмов выгружен потоком. Количество: {}", count);
+    }
+
     public Film addLike(long id, long userId) {
-        checkUserExist(userId);
+        return addLike(id, userId, filmStorage::get);
+    }
 
-        Film film = filmStorage.addLike(id, userId);
-        log.info("Добавлен лайк фильму с id {} от пользователя с id {}. Film: {}", id, userId, film);
+    // Облегченный ответ: вместо перечитывания фильма со всеми лайками - один запрос счетчика
+    public LikeResponse addLikeLean(long id, long userId) {
+        return addLike(id, userId, filmId -> new LikeResponse(filmId, userId, filmStorage.getLikesCount(filmId)));
+    }
+
+    private <T> T addLike(long id, long userId, LongFunction<T> responseReader) {
+        try {
+            filmStorage.addLike(id, userId);
+        } catch (DataIntegrityViolationException e) {
+            checkFilmExist(id);
+            checkUserExist(userId);
+            throw e;
+        }
+
+        T response = responseReader.apply(id);
+        log.info("Добавлен лайк фильму с id {} от пользователя с id {}.", id, userId);
 
         FeedEventType eventType = FeedEventType.LIKE;
         FeedOperation operation = FeedOperation.ADD;
@@ -75,14 +203,67 @@ public class FilmService {
                         "userId = {}, entityId = {}, eventType = {}, operation = {}",
                 userId, id, userId, id, eventType, operation
         );
-        return film;
+        return response;
+    }
+
+    // События лайков применяются пакетами по LIKES_CHUNK_SIZE, каждый пакет - одна транзакция хранилища.
+    // События, изменившие лайки, пишутся в ленту одним пакетом в той же транзакции.
+    public BulkLikeReport applyLikes(Iterator<LikeEvent> events) {
+        BulkLikeReport report = new BulkLikeReport();
+        List<LikeEvent> chunk = new ArrayList<>(LIKES_CHUNK_SIZE);
+        List<Integer> chunkIndexes = new ArrayList<>(LIKES_CHUNK_SIZE);
+        int index = 0;
+        while (true) {
+            LikeEvent event;
+            try {
+                if (!events.hasNext()) {
+                    break;
+                }
+                event = events.next();
+            } catch (RuntimeException e) {
+                report.getErrors().add(new BulkImportError(index, "Like", "Некорректный JSON: " + e.getMessage()));
+                break;
+            }
+
+            String error = checkLikeEvent(event);
+            if (error == null) {
+                chunk.add(event);
+                chunkIndexes.add(index);
+            } else {
+                report.getErrors().add(new BulkImportError(index, "Like", error));
+            }
+            index++;
+
+            if (chunk.size() == LIKES_CHUNK_SIZE) {
+                applyLikesChunk(chunk, chunkIndexes, report);
+                chunk.clear();
+                chunkIndexes.clear();
+            }
+        }
+        applyLikesChunk(chunk, chunkIndexes, report);
+        report.setReceived(index);
+
+        log.info("Применены события лайков. Получено: {}, добавлено: {}, удалено: {}, без изменений: {}, ошибок: {}",
+                report.getReceived(), report.getAdded(), report.getRemoved(), report.getUnchanged(),
+                report.getErrors().size());
+        return report;
     }
 
     public Film removeLike(long id, long userId) {
-        checkUserExist(userId);
+        return removeLike(id, userId, filmStorage::get);
+    }
+
+    public LikeResponse removeLikeLean(long id, long userId) {
+        return removeLike(id, userId, filmId -> new LikeResponse(filmId, userId, filmStorage.getLikesCount(filmId)));
+    }
 
-        Film film = filmStorage.removeLike(id, userId);
-        log.info("Удален лайк фильму с id {} от пользователя с id {}. Film: {}", id, userId, film);
+    private <T> T removeLike(long id, long userId, LongFunction<T> responseReader) {
+        if (!filmStorage.removeLike(id, userId)) {
+            checkUserExist(userId);
+        }
+
+        T response = responseReader.apply(id);
+        log.info("Удален лайк фильму с id {} от пользователя с id {}.", id, userId);
 
         FeedEventType eventType = FeedEventType.LIKE;
         FeedOperation operation = FeedOperation.REMOVE;
@@ -93,40 +274,199 @@ public class FilmService {
                         "userId = {}, entityId = {}, eventType = {}, operation = {}",
                 id, userId, userId, id, eventType, operation
         );
-        return film;
+        return response;
     }
 
     public List<Film> getCommonFilm(long id1, long id2) {
-        checkUserExist(id1);
-        checkUserExist(id2);
-
+        long start = System.nanoTime();
         List<Film> commonFilms = filmStorage.getCommonFilms(id1, id2);
-        log.info("Получен список общих фильмов пользователей с id {} и {}. List<Film>: {}", id1, id2, commonFilms);
+        if (commonFilms.isEmpty()) {
+            checkUserExist(id1);
+            checkUserExist(id2);
+        }
+        sampledLog.list("Получен список общих фильмов", start, commonFilms, Film::getId,
+                "userId", id1, "friendId", id2);
         return commonFilms;
     }
 
     public List<Film> getDirectorFilmsList(long id, String sortBy) {
+        long start = System.nanoTime();
         List<Film> films = filmStorage.getDirectorSortedFilms(id, sortBy);
-        log.info("Получен список фильмов режисера Director Id: {}, " +
-                "сортировка sortBy: {} list: {}", id, sortBy, films);
+        sampledLog.list("Получен список фильмов режиссера", start, films, Film::getId,
+                "directorId", id, "sortBy", sortBy);
         return films;
     }
 
     public List<Film> search(String query, List<String> by) {
+        long start = System.nanoTime();
         List<Film> films = filmStorage.search(query, by);
-        log.info("Получен список фильмов по строке поиска {} по критериям {}", query, by);
+        sampledLog.list("Получен список фильмов по строке поиска", start, films, Film::getId,
+                "query", query, "by", by);
         return films;
     }
 
     public List<Film> getPopularFilm(int count, Long id, Integer year) {
+        long start = System.nanoTime();
         List<Film> films = filmStorage.getPopularFilm(count, id, year);
-        log.info("Получен список {} самых популярных фильмов с genre_id = {} и release = {}" +
-                " List<Film>: {} ", count, id, year, films);
+        sampledLog.list("Получен список самых популярных фильмов", start, films, Film::getId,
+                "count", count, "genreId", id, "year", year);
         return films;
     }
 
-    private void logQueryInfo(String query, List<String> by, List<Film> films) {
-        log.info("Получен список фильмов по запросу '{}'. Поиск по {}: list: {}", query, by, films);
+    public List<Film> getPopularFilmLean(int count, Long id, Integer year) {
+        long start = System.nanoTime();
+        List<Film> films = filmStorage.getPopularFilmLean(count, id, year);
+        sampledLog.list("Получен список самых популярных фильмов без списков лайков", start, films, Film::getId,
+                "count", count, "genreId", id, "year", year);
+        return films;
+    }
+
+    private void importChunk(List<Film> chunk, List<Integer> indexes, BulkImportReport report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            report.setImported(report.getImported() + filmStorage.addAll(chunk).size());
+        } catch (RuntimeException e) {
+            // Транзакция пакета откатилась: добавляем фильмы по одному, чтобы найти сбойные
+            log.warn("Пакет из {} фильмов не добавлен, добавление по одному: {}", chunk.size(), e.getMessage());
+            for (int i = 0; i < chunk.size(); i++) {
+                try {
+                    filmStorage.add(chunk.get(i));
+                    report.setImported(report.getImported() + 1);
+                } catch (FilmAttributeNotExistOnFilmCreationException itemException) {
+                    ErrorResponse error = itemException.getErrorResponse();
+                    report.getErrors().add(new BulkImportError(indexes.get(i), error.getError(),
+                            error.getDescription()));
+                } catch (RuntimeException itemException) {
+                    report.getErrors().add(new BulkImportError(indexes.get(i), "Film", itemException.getMessage()));
+                }
+            }
+        }
+    }
+
+    private void applyLikesChunk(List<LikeEvent> chunk, List<Integer> indexes, BulkLikeReport report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<LikeEventResult> results;
+        try {
+            results = filmStorage.applyLikes(chunk, this::addLikesToFeed);
+        } catch (DataAccessException e) {
+            // Пакет откатился, например из-за фильма, удаленного во время применения: применяем события по одному
+            log.warn("Пакет из {} событий лайков не применен, применение по одному: {}", chunk.size(), e.getMessage());
+            results = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                try {
+                    results.add(filmStorage.applyLikes(List.of(chunk.get(i)), this::addLikesToFeed).get(0));
+                } catch (DataAccessException itemException) {
+                    results.add(null);
+                    report.getErrors().add(new BulkImportError(indexes.get(i), "Like", itemException.getMessage()));
+                }
+            }
+        }
+
+        for (int i = 0; i < chunk.size(); i++) {
+            LikeEvent event = chunk.get(i);
+            LikeEventResult result = results.get(i);
+            if (result == null) {
+                continue;
+            }
+            switch (result) {
+                case FILM_NOT_FOUND:
+                    report.getErrors().add(new BulkImportError(indexes.get(i), "Film id",
+                            String.format("Не найден фильм с ID: %d.", event.getFilmId())));
+                    continue;
+                case USER_NOT_FOUND:
+                    report.getErrors().add(new BulkImportError(indexes.get(i), "User id",
+                            String.format("Не найден пользователь с ID: %d.", event.getUserId())));
+                    continue;
+                case ADDED:
+                    report.setAdded(report.getAdded() + 1);
+                    break;
+                case REMOVED:
+                    report.setRemoved(report.getRemoved() + 1);
+                    break;
+                default:
+                    report.setUnchanged(report.getUnchanged() + 1);
+            }
+        }
+    }
+
+    private void addLikesToFeed(List<LikeEvent> events) {
+        feedStorage.addAll(events.stream()
+                .map(event -> FeedEntity.builder()
+                        .userId(event.getUserId())
+                        .entityId(event.getFilmId())
+                        .eventType(FeedEventType.LIKE)
+                        .operation(event.getOperation())
+                        .build())
+                .collect(Collectors.toList()));
+    }
+
+    private String checkLikeEvent(LikeEvent event) {
+        Set<ConstraintViolation<LikeEvent>> violations = validator.validate(event);
+        if (!violations.isEmpty()) {
+            return violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining(" "));
+        }
+        if (event.getOperation() == FeedOperation.UPDATE) {
+            return "Операция должна быть ADD или REMOVE.";
+        }
+        return null;
+    }
+
+    private ErrorResponse checkImportedFilm(Film film, Set<Long> genreIds, Set<Long> mpaIds, Set<Long> directorIds) {
+        Set<ConstraintViolation<Film>> violations = validator.validate(film);
+        if (!violations.isEmpty()) {
+            return new ErrorResponse("Film", violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining(" ")));
+        }
+        if (film.getMpa() == null) {
+            return new ErrorResponse("MPA id", "Не указан MPA фильма.");
+        }
+        if (!mpaIds.contains(film.getMpa().getId())) {
+            return new ErrorResponse("MPA id", String.format("Не найден MPA с ID: %d.", film.getMpa().getId()));
+        }
+        if (film.getGenres() != null) {
+            for (Genre genre : film.getGenres()) {
+                if (!genreIds.contains(genre.getId())) {
+                    return new ErrorResponse("Genre id", String.format("Не найден жанр с ID: %d.", genre.getId()));
+                }
+            }
+        }
+        if (film.getDirectors() != null) {
+            for (Director director : film.getDirectors()) {
+                if (!directorIds.contains(director.getId())) {
+                    return new ErrorResponse("Director id",
+                            String.format("Не найден режиссер с ID: %d.", director.getId()));
+                }
+            }
+        }
+        return null;
+    }
+
+    private int checkPageSize(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException(
+                    String.format("Размер страницы должен быть от 1 до %d.", MAX_PAGE_SIZE));
+        }
+        return limit;
+    }
+
+    private void checkFilmExist(long id) {
+        if (filmStorage.notContainFilm(id)) {
+            throw new EntityNotFoundException(
+                    new ErrorResponse("Film id", String.format("Не найден фильм с ID: %d.", id))
+            );
+        }
     }
 
     private void checkUserExist(long id) {
@@ -2,7 +2,7 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
@@ -29,9 +29,9 @@ public class ReviewService {
     @Autowired
     public ReviewService(
             ReviewStorage reviewStorage,
-            @Qualifier("userDbStorage") UserStorage userStorage,
-            @Qualifier("filmDbStorage") FilmStorage filmStorage,
-            @Qualifier("feedDbStorage") FeedStorage feedStorage) {
+            UserStorage userStorage,
+            FilmStorage filmStorage,
+            FeedStorage feedStorage) {
         this.reviewStorage = reviewStorage;
         this.userStorage = userStorage;
         this.filmStorage = filmStorage;
@@ -40,15 +40,16 @@ public class ReviewService {
 
     public Review addReview(Review review) {
         validation(review);
-        checkUserExists(review.getUserId());
         long userId = review.getUserId();
         long filmId = review.getFilmId();
 
-        checkUserExists(userId);
-        checkFilmExists(review.getFilmId());
         Optional<Review> savedReview = reviewStorage.add(review);
         if (savedReview.isEmpty()) {
-            throwReviewNotExists(review.getId());
+            // Пользователя или фильма нет - проверки нужны только на этом пути
+            checkUserExists(userId);
+            checkFilmExists(filmId);
+            throw new DataIntegrityViolationException(String.format(
+                    "Отзыв пользователя с ID %d о фильме с ID %d не сохранен.", userId, filmId));
         }
         log.info("Отзыв добавлен: {}", savedReview);
 
@@ -91,11 +92,14 @@ public class ReviewService {
     }
 
     public void deleteReview(long id) {
-        checkReviewExists(id);
-
-        Review review = reviewStorage.delete(id);
+        Optional<Review> deletedReview = reviewStorage.delete(id);
+        if (deletedReview.isEmpty()) {
+            throwReviewNotExists(id);
+        }
         log.info("Отзыв с id {} удален", id);
 
+        Review review = deletedReview.get();
+
         long userId = review.getUserId();
         long filmId = review.getFilmId();
 
@@ -132,32 +136,38 @@ public class ReviewService {
     }
 
     public void addLike(long id, long userId) {
-        checkReviewExists(id);
-        checkUserExists(userId);
-        reviewStorage.addLike(id, userId);
+        try {
+            reviewStorage.addLike(id, userId);
+        } catch (DataIntegrityViolationException e) {
+            checkVoteParticipants(id, userId);
+            throw e;
+        }
         log.info("Пользователь с userId {} поставил лайк фильму с filmId {}", userId, id);
     }
 
     public void addDislike(long id, long userId) {
-        checkReviewExists(id);
-        checkUserExists(userId);
-        reviewStorage.addDislike(id, userId);
+        try {
+            reviewStorage.addDislike(id, userId);
+        } catch (DataIntegrityViolationException e) {
+            checkVoteParticipants(id, userId);
+            throw e;
+        }
         log.info("Пользователь с userId {} поставил дизлайк фильму с filmId {}", userId, id);
     }
 
     public void removeLike(long id, long userId) {
-        // Здесь эти проверки не особо то и нужны, но пусть будут
-        checkReviewExists(id);
-        checkUserExists(userId);
-        reviewStorage.removeLike(id, userId);
+        // Проверки нужны только если удалять было нечего
+        if (!reviewStorage.removeLike(id, userId)) {
+            checkVoteParticipants(id, userId);
+        }
         log.info("Пользователь с userId {} удалил лайк к фильму с filmId {}", userId, id);
     }
 
     public void removeDislike(long id, long userId) {
-        // Здесь эти проверки не особо то и нужны, но пусть будут
-        checkReviewExists(id);
-        checkUserExists(userId);
-        reviewStorage.removeDislike(id, userId);
+        // Проверки нужны только если удалять было нечего
+        if (!reviewStorage.removeDislike(id, userId)) {
+            checkVoteParticipants(id, userId);
+        }
         log.info("Пользователь с userId {} удалил дизлайк к фильму с filmId {}", userId, id);
     }
 
@@ -177,6 +187,11 @@ public class ReviewService {
         }
     }
 
+    private void checkVoteParticipants(long reviewId, long userId) {
+        checkReviewExists(reviewId);
+        checkUserExists(userId);
+    }
+
     private void checkReviewExists(long reviewId) {
         if (reviewStorage.notContainReview(reviewId)) {
             throwReviewNotExists(reviewId);
@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToLongFunction;
+
+// Сводка о вызове сервиса вместо его результата: поля запроса, размер списка, первые id и время.
+// Пишется в INFO логгера сервиса только для доли вызовов sampleRate, для остальных ничего не форматируется.
+public class SampledLog {
+    private final Logger log;
+    private final SampledLogSettings settings;
+
+    public SampledLog(Class<?> owner, SampledLogSettings settings) {
+        this.log = LoggerFactory.getLogger(owner);
+        this.settings = settings;
+    }
+
+    // fields - пары ключ, значение
+    public <T> void list(String message, long startNanos, List<T> items, ToLongFunction<T> id, Object... fields) {
+        if (!isSampled()) {
+            return;
+        }
+        StringBuilder line = start(message, fields);
+        line.append(" size=").append(items.size()).append(" ids=[");
+        int shown = Math.min(items.size(), settings.getMaxIds());
+        for (int i = 0; i < shown; i++) {
+            if (i > 0) {
+                line.append(", ");
+            }
+            line.append(id.applyAsLong(items.get(i)));
+        }
+        if (shown < items.size()) {
+            line.append(", ...");
+        }
+        line.append(']');
+        log.info("{}", finish(line, startNanos));
+    }
+
+    public void event(String message, long startNanos, Object... fields) {
+        if (!isSampled()) {
+            return;
+        }
+        log.info("{}", finish(start(message, fields), startNanos));
+    }
+
+    private boolean isSampled() {
+        double rate = settings.getSampleRate();
+        if (rate <= 0 || !log.isInfoEnabled()) {
+            return false;
+        }
+        return rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private static StringBuilder start(String message, Object[] fields) {
+        StringBuilder line = new StringBuilder(message).append('.');
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            line.append(' ').append(fields[i]).append('=').append(fields[i + 1]);
+        }
+        return line;
+    }
+
+    private static String finish(StringBuilder line, long startNanos) {
+        long micros = (System.nanoTime() - startNanos) / 1_000;
+        return line.append(" timeMs=").append(micros / 1_000).append('.')
+                .append(String.format("%03d", micros % 1_000)).toString();
+    }
+}
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "filmorate.logging")
+public class SampledLogSettings {
+    // Доля вызовов, для которых пишется сводка: 1 - каждый вызов, 0 - ни одного
+    private double sampleRate = 1.0;
+    // Сколько первых id результата попадает в сводку
+    private int maxIds = 10;
+}
@@ -2,11 +2,12 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.ErrorResponse;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendResponse;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.model.feed.FeedEntity;
 import ru.yandex.practicum.filmorate.model.feed.FeedEventType;
@@ -16,21 +17,30 @@ import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
 
 @Slf4j
 @Service
 public class UserService {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1_000;
+    private static final int STREAM_CHUNK_SIZE = 500;
+
     private final UserStorage userStorage;
     private final FilmStorage filmStorage;
     private final FeedStorage feedStorage;
+    private final SampledLog sampledLog;
 
     @Autowired
-    public UserService(@Qualifier("userDbStorage") UserStorage userStorage,
-                       @Qualifier("feedDbStorage") FeedStorage feedStorage,
-                       @Qualifier("filmDbStorage") FilmStorage filmStorage) {
+    public UserService(UserStorage userStorage,
+                       FeedStorage feedStorage,
+                       FilmStorage filmStorage,
+                       SampledLogSettings logSettings) {
         this.userStorage = userStorage;
         this.feedStorage = feedStorage;
         this.filmStorage = filmStorage;
+        this.sampledLog = new SampledLog(UserService.class, logSettings);
     }
 
     public User addUser(User user) {
@@ -49,27 +59,66 @@ public class UserService {
     }
 
     public User getUser(long id) {
+        long start = System.nanoTime();
         User user = userStorage.get(id);
-        log.info("Получен пользователь с id {}. User: {}", id, user);
+        sampledLog.event("Получен пользователь", start, "id", id, "friends", user.getFriends().size());
         return user;
     }
 
     public void deleteUser(long id) {
+        filmStorage.removeUserLikes(id);
         userStorage.delete(id);
+        feedStorage.removeUserFeed(id);
         log.info("Пользователь удален id: {}", id);
     }
 
     public List<User> getAllUsers() {
+        long start = System.nanoTime();
         List<User> users = userStorage.getAll();
-        log.info("Получен список всех пользователей. List<User>: {}", users);
+        sampledLog.list("Получен список всех пользователей", start, users, User::getId);
+        return users;
+    }
+
+    public List<User> getUsersPage(Long afterId, Integer limit) {
+        long from = afterId == null ? 0 : afterId;
+        int pageSize = checkPageSize(limit);
+        long start = System.nanoTime();
+        List<User> users = userStorage.getPage(from, pageSize);
+        sampledLog.list("Получена страница пользователей", start, users, User::getId,
+                "afterId", from, "limit", pageSize);
         return users;
     }
 
+    public void streamAllUsers(Consumer<List<User>> pageConsumer) {
+        long afterId = 0;
+        int count = 0;
+        List<User> page;
+        do {
+            page = userStorage.getPage(afterId, STREAM_CHUNK_SIZE);
+            if (!page.isEmpty()) {
+                pageConsumer.accept(page);
+                afterId = page.get(page.size() - 1).getId();
+                count += page.size();
+            }
+        } while (page.size() == STREAM_CHUNK_SIZE);
+        log.info("Список всех пользователей выгружен потоком. Количество: {}", count);
+    }
+
     public User addFriend(long id, long followerId) {
-        User user = userStorage.addFriend(id, followerId);
-        log.info("Сохранена заявка на добавление в друзья пользователю с id {} от пользователя с id {}. " +
-                        "User (id: {}): {}",
-                id, followerId, id, user);
+        return addFriend(id, followerId, userStorage::get);
+    }
+
+    // Облегченный ответ: число друзей из графа в памяти вместо пользователя с полным списком друзей
+    public FriendResponse addFriendLean(long id, long followerId) {
+        return addFriend(id, followerId,
+                userId -> new FriendResponse(userId, followerId, userStorage.getFriendsCount(userId)));
+    }
+
+    private <T> T addFriend(long id, long followerId, LongFunction<T> responseReader) {
+        userStorage.addFriend(id, followerId);
+        T response = responseReader.apply(id);
+        log.info("Сохранена заявка на добавление в друзья пользователю с id {} от пользователя с id {}.",
+                id, followerId);
 
         FeedEventType eventType = FeedEventType.FRIEND;
         FeedOperation operation = FeedOperation.ADD;
@@ -80,14 +129,23 @@ public class UserService {
                         "userId = {}, entityId = {}, eventType = {}, operation = {}",
                 id, followerId, followerId, id, eventType, operation
         );
-        return user;
+        return response;
     }
 
     public User removeFriend(long id, long followerId) {
-        User user = userStorage.removeFriend(id, followerId);
-        log.info("Удалена заявка на добавление в друзья пользователю с id {} от пользователя с id {}. " +
-                        "User (id: {}): {}",
-                id, followerId, id, user);
+        return removeFriend(id, followerId, userStorage::get);
+    }
+
+    public FriendResponse removeFriendLean(long id, long followerId) {
+        return removeFriend(id, followerId,
+                userId -> new FriendResponse(userId, followerId, userStorage.getFriendsCount(userId)));
+    }
+
+    private <T> T removeFriend(long id, long followerId, LongFunction<T> responseReader) {
+        userStorage.removeFriend(id, followerId);
+        T response = responseReader.apply(id);
+        log.info("Удалена заявка на добавление в друзья пользователю с id {} от пользователя с id {}.",
+                id, followerId);
 
         FeedEventType eventType = FeedEventType.FRIEND;
         FeedOperation operation = FeedOperation.REMOVE;
@@ -98,38 +156,60 @@ public class UserService {
                         "userId = {}, entityId = {}, eventType = {}, operation = {}",
                 id, followerId, followerId, id, eventType, operation
         );
-        return user;
+        return response;
     }
 
     public List<User> getFriends(long id) {
+        long start = System.nanoTime();
         List<User> friends = userStorage.getFriends(id);
-        log.info("Получен список всех друзей пользователя с id {}. List<User>: {}", id, friends);
+        sampledLog.list("Получен список друзей", start, friends, User::getId, "userId", id);
         return friends;
     }
 
     public List<User> getCommonFriends(long id, long otherId) {
+        long start = System.nanoTime();
         List<User> friends = userStorage.getCommonFriends(id, otherId);
-        log.info("Получен список общих друзей пользователей с id {} и {}. List<User>: {}", id, otherId, friends);
+        sampledLog.list("Получен список общих друзей", start, friends, User::getId,
+                "userId", id, "otherId", otherId);
         return friends;
     }
 
-    public List<FeedEntity> getUserFeed(long userId) {
-        List<FeedEntity> feed = userStorage.getFeed(userId);
-        log.info("Получен список последних событий на платформе для пользователя с id {}. List<FeedEntity>: {}",
-                userId, feed);
-        return userStorage.getFeed(userId);
+    public List<FeedEntity> getUserFeed(long userId, Long before, Integer limit) {
+        if (limit != null) {
+            checkPageSize(limit);
+        }
+        List<FeedEntity> feed = feedStorage.getUserFeed(userId, before, limit);
+        if (feed.isEmpty() && userStorage.notContainUser(userId)) {
+            throw new EntityNotFoundException(
+                    new ErrorResponse("User id", String.format("Не найден пользователь с ID: %d.", userId))
+            );
+        }
+        log.info("Получен список последних событий на платформе для пользователя с id {} " +
+                "(before {}, limit {}). Количество: {}", userId, before, limit, feed.size());
+        return feed;
     }
 
     public List<Film> getRecommendations(Long id) {
-
-        if (userStorage.notContainUser(id)) {
+        long start = System.nanoTime();
+        List<Film> recommendations = filmStorage.getRecommendations(id);
+        if (recommendations.isEmpty() && userStorage.notContainUser(id)) {
             throw new EntityNotFoundException(
                     new ErrorResponse("User id", String.format("пользователь с id: %d не найден.", id))
             );
         }
-        List<Film> recommendations = filmStorage.getRecommendations(id);
-        log.info("Получен список рекомендованных фильмов для пользователя с id {}. List<Film>: {}", id, recommendations);
+        sampledLog.list("Получен список рекомендованных фильмов", start, recommendations, Film::getId, "userId", id);
         return recommendations;
     }
 
+    private int checkPageSize(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException(
+                    String.format("Размер страницы должен быть от 1 до %d.", MAX_PAGE_SIZE));
+        }
+        return limit;
+    }
+
 }
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.startup;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import ru.yandex.practicum.filmorate.storage.cache.Warmable;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+// Прогрев кэшей и индексов хранилищ после запуска, в отдельном потоке.
+// Пока он идет, индикатор warmUp в группе readiness возвращает OUT_OF_SERVICE, и балансировщик
+// не направляет запросы на экземпляр с холодными кэшами. Ошибка прогрева не держит экземпляр закрытым:
+// непрогретые данные загрузятся при первом запросе, как без прогрева.
+@Slf4j
+@Component("warmUp")
+public class CacheWarmUp implements HealthIndicator {
+    private final ObjectProvider<Warmable> storages;
+    private final WarmUpSettings settings;
+    private final List<String> failed = new CopyOnWriteArrayList<>();
+    private volatile boolean done;
+    private volatile long timeMs;
+
+    public CacheWarmUp(ObjectProvider<Warmable> storages, WarmUpSettings settings) {
+        this.storages = storages;
+        this.settings = settings;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!settings.isEnabled()) {
+            done = true;
+            return;
+        }
+        Thread thread = new Thread(this::warmUp, "cache-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public Health health() {
+        if (!done) {
+            return Health.outOfService().build();
+        }
+        return Health.up()
+                .withDetail("timeMs", timeMs)
+                .withDetail("failed", failed)
+                .build();
+    }
+
+    void warmUp() {
+        long start = System.nanoTime();
+        List<Warmable> targets = storages.orderedStream().collect(Collectors.toList());
+        for (Warmable storage : targets) {
+            String name = ClassUtils.getUserClass(storage).getSimpleName();
+            try {
+                storage.warmUp();
+            } catch (RuntimeException e) {
+                failed.add(name);
+                log.warn("Не удалось прогреть {}: {}", name, e.getMessage());
+            }
+        }
+        timeMs = (System.nanoTime() - start) / 1_000_000;
+        done = true;
+        log.info("Прогрев кэшей завершен за {} мс, хранилищ: {}, с ошибкой: {}.", timeMs, targets.size(), failed);
+    }
+}
@@ -0,0 +1,12 @@
+package ru.yandex.practicum.filmorate.startup;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "filmorate.warm-up")
+public class WarmUpSettings {
+    private boolean enabled = true;
+}
@@ -0,0 +1,11 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.Value;
+
+@Value
+public class CacheStats {
+    int size;
+    int maxSize;
+    long hits;
+    long misses;
+}
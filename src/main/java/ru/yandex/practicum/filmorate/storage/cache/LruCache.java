@@ -0,0 +1,51 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class LruCache<K, V> {
+    private final Map<K, V> data;
+    private final int maxSize;
+    private long hits;
+    private long misses;
+
+    public LruCache(int maxSize) {
+        this.maxSize = maxSize;
+        data = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        V value = data.get(key);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        data.put(key, value);
+    }
+
+    public synchronized void remove(K key) {
+        data.remove(key);
+    }
+
+    public synchronized void clear() {
+        data.clear();
+    }
+
+    public synchronized int size() {
+        return data.size();
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(data.size(), maxSize, hits, misses);
+    }
+}
@@ -0,0 +1,6 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+// Хранилище с кэшами и индексами в памяти, которые можно загрузить при запуске, до первых запросов
+public interface Warmable {
+    void warmUp();
+}
@@ -3,35 +3,47 @@ package ru.yandex.practicum.filmorate.storage.director;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.exception.FilmAttributeNotExistOnFilmCreationException;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.ErrorResponse;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStats;
+import ru.yandex.practicum.filmorate.storage.cache.LruCache;
+import ru.yandex.practicum.filmorate.storage.cache.Warmable;
+import ru.yandex.practicum.filmorate.storage.search.NGramIndex;
 
 import javax.transaction.Transactional;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
-public class DirectorDbStorage implements DirectorStorage {
+public class DirectorDbStorage implements DirectorStorage, Warmable {
+    private static final int CACHE_SIZE = 10_000;
+
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final LruCache<Long, Director> cache = new LruCache<>(CACHE_SIZE);
+    private final NGramIndex nameIndex = new NGramIndex();
+    private final ReentrantLock nameIndexLoadLock = new ReentrantLock();
 
     @Override
     public Director get(long id) {
-        checkDirectorExist(id);
-        String sqlQuery = "SELECT * FROM director WHERE director_id = ?";
-        return jdbcTemplate.queryForObject(sqlQuery, this::mapRowDirector, id);
+        return find(id).orElseThrow(() -> directorNotFound(id));
     }
 
     @Override
     public Director add(Director director) {
+        NGramIndex index = getNameIndex();
         String sqlQuery = "INSERT INTO director (name) VALUES (?)";
 
         KeyHolder keyHolder = new GeneratedKeyHolder();
@@ -43,16 +55,23 @@ public class DirectorDbStorage implements DirectorStorage {
 
         long id = Objects.requireNonNull(keyHolder.getKey()).longValue();
         director.setId(id);
+        cache.put(id, copy(director));
+        index.put(id, director.getName());
         return director;
     }
 
     @Override
     public Director update(Director director) {
         long id = director.getId();
-        checkDirectorExist(id);
+        NGramIndex index = getNameIndex();
         String sqlQuery = "UPDATE director SET name = ? WHERE director_id = ?";
-        jdbcTemplate.update(sqlQuery, director.getName(), id);
-        return this.get(director.getId());
+        if (jdbcTemplate.update(sqlQuery, director.getName(), id) == 0) {
+            cache.remove(id);
+            throw directorNotFound(id);
+        }
+        cache.put(id, copy(director));
+        index.put(id, director.getName());
+        return director;
     }
 
     @Override
@@ -64,12 +83,9 @@ public class DirectorDbStorage implements DirectorStorage {
     @Override
     public List<Director> addDirectors(long filmId, List<Director> directors) {
         if (directors != null && !directors.isEmpty()) {
-            String sqlQuery = "INSERT INTO film_director (film_id, director_id) VALUES (?, ?)";
-            jdbcTemplate.batchUpdate(sqlQuery, directors, directors.size(),
-                    (PreparedStatement ps, Director d) -> {
-                        ps.setLong(1, filmId);
-                        ps.setLong(2, d.getId());
-                    });
+            Set<Long> directorIds = getDirectorIds(directors);
+            checkDirectorsExist(directorIds);
+            insertFilmDirectors(filmId, directorIds);
         }
         return directors;
     }
@@ -80,18 +96,64 @@ public class DirectorDbStorage implements DirectorStorage {
         return jdbcTemplate.query(sqlQuery, (rs, rowNum) -> this.get(rs.getLong("director_id")), id);
     }
 
+    @Override
+    public Map<Long, List<Director>> getFilmsDirectors(Collection<Long> filmIds) {
+        Map<Long, List<Director>> filmsDirectors = new HashMap<>();
+        if (filmIds.isEmpty()) {
+            return filmsDirectors;
+        }
+        String sqlQuery =
+                "SELECT fd.film_id, d.director_id, d.name " +
+                        "FROM film_director fd " +
+                        "JOIN director d ON fd.director_id = d.director_id " +
+                        "WHERE fd.film_id = ANY(:ids) " +
+                        "ORDER BY fd.film_id, d.director_id";
+        namedJdbcTemplate.query(sqlQuery, Map.of("ids", filmIds.toArray(new Long[0])), rs -> {
+            filmsDirectors.computeIfAbsent(rs.getLong("film_id"), id -> new ArrayList<>())
+                    .add(mapRowDirector(rs, 0));
+        });
+        return filmsDirectors;
+    }
+
     @Transactional
     @Override
     public void updateFilmDirectors(long filmId, List<Director> directors) {
-        deleteFilmDirectors(filmId);
-        addDirectors(filmId, directors);
+        if (directors == null || directors.isEmpty()) {
+            deleteFilmDirectors(filmId);
+            return;
+        }
+
+        Set<Long> newDirectors = getDirectorIds(directors);
+        checkDirectorsExist(newDirectors);
+        String sqlQuery = "SELECT director_id FROM film_director WHERE film_id = ?";
+        Set<Long> currentDirectors = new HashSet<>(
+                jdbcTemplate.query(sqlQuery, (rs, rowNum) -> rs.getLong("director_id"), filmId));
+
+        // Неизмененные связи не трогаются, лишние удаляются одним запросом, новые вставляются одним пакетом
+        List<Long> directorsToRemove = currentDirectors.stream()
+                .filter(directorId -> !newDirectors.contains(directorId))
+                .collect(Collectors.toList());
+        List<Long> directorsToAdd = newDirectors.stream()
+                .filter(directorId -> !currentDirectors.contains(directorId))
+                .collect(Collectors.toList());
+
+        if (!directorsToRemove.isEmpty()) {
+            String deleteQuery = "DELETE FROM film_director WHERE film_id = ? AND director_id = ANY(?)";
+            jdbcTemplate.update(deleteQuery, filmId, directorsToRemove.toArray(new Long[0]));
+        }
+        insertFilmDirectors(filmId, directorsToAdd);
     }
 
     @Override
     public void delete(long id) {
-        checkDirectorExist(id);
+        NGramIndex index = getNameIndex();
         String sqlQuery = "DELETE FROM director WHERE director_id = ?";
-        jdbcTemplate.update(sqlQuery, id);
+        int deleted = jdbcTemplate.update(sqlQuery, id);
+        cache.remove(id);
+        index.remove(id);
+        if (deleted == 0) {
+            throw directorNotFound(id);
+        }
     }
 
     @Override
@@ -100,21 +162,115 @@ public class DirectorDbStorage implements DirectorStorage {
         jdbcTemplate.update(sqlQuery, filmId);
     }
 
+    // Кэш режиссеров ограничен, поэтому заполняется не больше чем на его размер
+    @Override
+    public void warmUp() {
+        getAll().stream().limit(CACHE_SIZE).forEach(director -> cache.put(director.getId(), director));
+        getNameIndex();
+    }
+
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
     @Override
     public boolean notContainDirector(long id) {
-        String sqlQuery = "SELECT COUNT(*) FROM director WHERE director_id = ?";
-        Integer count = jdbcTemplate.queryForObject(sqlQuery, Integer.class, id);
-        return count != null && count == 0;
+        return find(id).isEmpty();
     }
 
-    private void checkDirectorExist(long id) {
-        if (this.notContainDirector(id)) {
-            throw new EntityNotFoundException(
-                    new ErrorResponse("Director id", String.format("Не найден режиссер с ID: %d.", id))
+    // Режиссеры, которых нет в кэше, проверяются одним запросом
+    @Override
+    public void checkDirectorsExist(Collection<Long> ids) {
+        Set<Long> missingIds = new LinkedHashSet<>();
+        for (Long id : ids) {
+            if (cache.get(id) == null) {
+                missingIds.add(id);
+            }
+        }
+        if (missingIds.isEmpty()) {
+            return;
+        }
+        String sqlQuery = "SELECT director_id, name FROM director WHERE director_id = ANY(:ids)";
+        namedJdbcTemplate.query(sqlQuery, Map.of("ids", missingIds.toArray(new Long[0])), rs -> {
+            Director director = mapRowDirector(rs, 0);
+            cache.put(director.getId(), director);
+            missingIds.remove(director.getId());
+        });
+        if (!missingIds.isEmpty()) {
+            throw new FilmAttributeNotExistOnFilmCreationException(
+                    new ErrorResponse("Director id",
+                            String.format("Не найден режиссер с ID: %d.", missingIds.iterator().next()))
             );
         }
     }
 
+    @Override
+    public Set<Long> findIdsByName(String query) {
+        return getNameIndex().search(query);
+    }
+
+    private Set<Long> getDirectorIds(List<Director> directors) {
+        return directors.stream()
+                .map(Director::getId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    private void insertFilmDirectors(long filmId, Collection<Long> directorIds) {
+        if (directorIds.isEmpty()) {
+            return;
+        }
+        String sqlQuery = "INSERT INTO film_director (film_id, director_id) VALUES (?, ?)";
+        jdbcTemplate.batchUpdate(sqlQuery, new ArrayList<>(directorIds), directorIds.size(),
+                (PreparedStatement ps, Long directorId) -> {
+                    ps.setLong(1, filmId);
+                    ps.setLong(2, directorId);
+                });
+    }
+
+    // Как и индексы фильмов, индекс имен загружается до записи, чтобы ее изменение не потерялось
+    private NGramIndex getNameIndex() {
+        if (!nameIndex.isLoaded()) {
+            nameIndexLoadLock.lock();
+            try {
+                if (!nameIndex.isLoaded()) {
+                    Map<Long, String> names = new HashMap<>();
+                    getAll().forEach(director -> names.put(director.getId(), director.getName()));
+                    nameIndex.load(names);
+                }
+            } finally {
+                nameIndexLoadLock.unlock();
+            }
+        }
+        return nameIndex;
+    }
+
+    private Optional<Director> find(long id) {
+        Director director = cache.get(id);
+        if (director == null) {
+            String sqlQuery = "SELECT * FROM director WHERE director_id = ?";
+            List<Director> directors = jdbcTemplate.query(sqlQuery, this::mapRowDirector, id);
+            if (directors.isEmpty()) {
+                return Optional.empty();
+            }
+            director = directors.get(0);
+            cache.put(id, director);
+        }
+        return Optional.of(copy(director));
+    }
+
+    private Director copy(Director director) {
+        return Director.builder()
+                .id(director.getId())
+                .name(director.getName())
+                .build();
+    }
+
+    private EntityNotFoundException directorNotFound(long id) {
+        return new EntityNotFoundException(
+                new ErrorResponse("Director id", String.format("Не найден режиссер с ID: %d.", id))
+        );
+    }
+
     private Director mapRowDirector(ResultSet rs, int rowNum) throws SQLException {
         return Director.builder()
                 .id(rs.getLong("director_id"))
@@ -2,7 +2,10 @@ package ru.yandex.practicum.filmorate.storage.director;
 
 import ru.yandex.practicum.filmorate.model.Director;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public interface DirectorStorage {
     Director get(long id);
@@ -17,6 +20,8 @@ public interface DirectorStorage {
 
     List<Director> getFilmDirectors(long id);
 
+    Map<Long, List<Director>> getFilmsDirectors(Collection<Long> filmIds);
+
     void delete(long id);
 
     void deleteFilmDirectors(long id);
@@ -25,4 +30,8 @@ public interface DirectorStorage {
 
     boolean notContainDirector(long id);
 
+    void checkDirectorsExist(Collection<Long> ids);
+
+    Set<Long> findIdsByName(String query);
+
 }
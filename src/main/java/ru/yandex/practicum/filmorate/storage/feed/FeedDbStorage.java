@@ -1,37 +1,160 @@
 package ru.yandex.practicum.filmorate.storage.feed;
 
-import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.model.feed.FeedEntity;
 import ru.yandex.practicum.filmorate.model.feed.FeedEventType;
 import ru.yandex.practicum.filmorate.model.feed.FeedOperation;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStats;
+import ru.yandex.practicum.filmorate.storage.cache.LruCache;
+import ru.yandex.practicum.filmorate.storage.cache.Warmable;
 
-import java.time.LocalDateTime;
-import java.util.HashMap;
-import java.util.Map;
+import javax.annotation.PreDestroy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
-@RequiredArgsConstructor
+@Profile("!in-memory")
 @Component
-public class FeedDbStorage implements FeedStorage {
+public class FeedDbStorage implements FeedStorage, Warmable {
+    private static final int TIMELINE_CAPACITY = 100;
+    private static final int TIMELINE_USERS = 10_000;
+    private static final int LOCK_STRIPES = 64;
+
     private final JdbcTemplate jdbcTemplate;
-    private final Map<FeedOperation, Long> feedOperationIndexes = new HashMap<>();
-    private final Map<FeedEventType, Long> feedEventTypeIndexes = new HashMap<>();
+    private final FeedEventWriter writer;
+    private final LruCache<Long, FeedTimeline> timelines = new LruCache<>(TIMELINE_USERS);
+    private final ReentrantLock[] timelineLocks = IntStream.range(0, LOCK_STRIPES)
+            .mapToObj(i -> new ReentrantLock())
+            .toArray(ReentrantLock[]::new);
+    private final ReentrantLock lookupsLock = new ReentrantLock();
+    private volatile Lookups lookups;
+
+    public FeedDbStorage(JdbcTemplate jdbcTemplate, FeedWriterSettings settings) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.writer = new FeedEventWriter(jdbcTemplate, settings);
+    }
 
     @Override
     public void add(long userId, long entityId, FeedEventType eventType, FeedOperation operation) {
-        final String sqlQuery = "INSERT INTO feed (user_id, entity_id, type_id, operation_id, time) " +
-                "VALUES (?, ?, ?, ?, ?)";
+        FeedEntity event = FeedEntity.builder()
+                .userId(userId)
+                .entityId(entityId)
+                .eventType(eventType)
+                .operation(operation)
+                .timestamp(System.currentTimeMillis())
+                .build();
+        // В ленту в памяти попадают только записанные события: неудачная фоновая запись ее не меняет
+        writer.write(toRow(event)).thenAccept(eventId -> appendToTimeline(event, eventId));
+    }
+
+    // event_id и время событий выдаются при записи.
+    // В транзакции вызывающего события пишутся в нее в любом режиме, а в ленты в памяти попадают после фиксации:
+    // при откате в таблице и лентах не остается событий по непримененным изменениям.
+    @Override
+    public void addAll(List<FeedEntity> events) {
+        long time = System.currentTimeMillis();
+        List<FeedEntity> timed = events.stream()
+                .map(event -> FeedEntity.builder()
+                        .userId(event.getUserId())
+                        .entityId(event.getEntityId())
+                        .eventType(event.getEventType())
+                        .operation(event.getOperation())
+                        .timestamp(time)
+                        .build())
+                .collect(Collectors.toList());
+        List<Object[]> rows = timed.stream().map(this::toRow).collect(Collectors.toList());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<Long> eventIds = writer.writeNow(rows);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    for (int i = 0; i < timed.size(); i++) {
+                        appendToTimeline(timed.get(i), eventIds.get(i));
+                    }
+                }
+            });
+            return;
+        }
+        List<CompletableFuture<Long>> eventIds = writer.writeAll(rows);
+        for (int i = 0; i < timed.size(); i++) {
+            FeedEntity event = timed.get(i);
+            eventIds.get(i).thenAccept(eventId -> appendToTimeline(event, eventId));
+        }
+    }
+
+    @Override
+    public List<FeedEntity> getUserFeed(long userId, Long beforeEventId, Integer limit) {
+        long before = beforeEventId == null ? Long.MAX_VALUE : beforeEventId;
+        int max = limit == null ? Integer.MAX_VALUE : limit;
+
+        // Очередь дописывается до чтения, чтобы пользователь сразу видел свои последние действия
+        // и в закэшированной ленте. Блокировка ленты не держится: фоновый поток сам берет ее, добавляя события.
+        writer.flush();
+        FeedTimeline timeline = getTimeline(userId);
+        List<FeedEntity> recent = timeline.snapshot();
+        boolean complete = timeline.isComplete();
+
+        List<FeedEntity> page = new ArrayList<>();
+        for (FeedEntity event : recent) {
+            if (event.getEventId() < before) {
+                page.add(event);
+            }
+        }
+        if (page.size() >= max) {
+            return new ArrayList<>(page.subList(page.size() - max, page.size()));
+        }
+        if (complete) {
+            return page;
+        }
+
+        long olderThan = recent.isEmpty() ? before : Math.min(before, recent.get(0).getEventId());
+        List<FeedEntity> older = queryLatest(userId, olderThan, max - page.size());
+        Collections.reverse(older);
+        older.addAll(page);
+        return older;
+    }
+
+    @Override
+    public void removeUserFeed(long userId) {
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            timelines.remove(userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void warmUp() {
+        getLookups();
+    }
+
+    // Дописывает в таблицу события из очереди записи
+    public void flush() {
+        writer.flush();
+    }
 
-        Long eventTypeIndex = feedEventTypeIndexes.computeIfAbsent(eventType, this::getEventTypeIndex);
-        Long eventOperation = feedOperationIndexes.computeIfAbsent(operation, this::getOperationIndex);
+    public FeedWriterMetrics getWriterMetrics() {
+        return writer.getMetrics();
+    }
 
-        jdbcTemplate.update(sqlQuery,
-                userId,
-                entityId,
-                eventTypeIndex,
-                eventOperation,
-                LocalDateTime.now()
-        );
+    public CacheStats getTimelineCacheStats() {
+        return timelines.getStats();
+    }
+
+    @PreDestroy
+    public void close() {
+        writer.close();
     }
 
     @Override
@@ -45,4 +168,117 @@ public class FeedDbStorage implements FeedStorage {
         final String sqlQuery = "SELECT DISTINCT type_id FROM event_type WHERE name = ?";
         return jdbcTemplate.queryForObject(sqlQuery, Long.class, eventType.toString());
     }
-}
\ No newline at end of file
+
+    private FeedTimeline getTimeline(long userId) {
+        FeedTimeline timeline = timelines.get(userId);
+        if (timeline != null) {
+            return timeline;
+        }
+        // События, записанные после flush в getUserFeed, попадут либо в запрос, либо в уже загруженную ленту
+        ReentrantLock lock = lockFor(userId);
+        lock.lock();
+        try {
+            timeline = timelines.get(userId);
+            if (timeline == null) {
+                List<FeedEntity> latest = queryLatest(userId, Long.MAX_VALUE, TIMELINE_CAPACITY + 1);
+                boolean complete = latest.size() <= TIMELINE_CAPACITY;
+                if (!complete) {
+                    latest.remove(latest.size() - 1);
+                }
+                Collections.reverse(latest);
+                timeline = new FeedTimeline(TIMELINE_CAPACITY, latest, complete);
+                timelines.put(userId, timeline);
+            }
+            return timeline;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Object[] toRow(FeedEntity event) {
+        Lookups lookups = getLookups();
+        return new Object[]{
+                event.getUserId(),
+                event.getEntityId(),
+                lookups.eventTypeIds.get(event.getEventType()),
+                lookups.operationIds.get(event.getOperation()),
+                new Timestamp(event.getTimestamp())
+        };
+    }
+
+    private void appendToTimeline(FeedEntity event, long eventId) {
+        event.setEventId(eventId);
+        ReentrantLock lock = lockFor(event.getUserId());
+        lock.lock();
+        try {
+            FeedTimeline timeline = timelines.get(event.getUserId());
+            if (timeline != null) {
+                timeline.append(event);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // События пользователя с event_id < before, начиная с самых новых.
+    // Тип и операция берутся из справочников в памяти, поэтому запрос идет по индексу без join.
+    private List<FeedEntity> queryLatest(long userId, long before, int limit) {
+        final String sqlQuery = "SELECT event_id, user_id, entity_id, type_id, operation_id, time " +
+                "FROM feed " +
+                "WHERE user_id = ? AND event_id < ? " +
+                "ORDER BY event_id DESC " +
+                "LIMIT ?";
+        return jdbcTemplate.query(sqlQuery, this::mapRowToFeedEntity, userId, before, limit);
+    }
+
+    private FeedEntity mapRowToFeedEntity(ResultSet rs, int rowNum) throws SQLException {
+        Lookups lookups = getLookups();
+        return FeedEntity.builder()
+                .eventId(rs.getLong("event_id"))
+                .userId(rs.getLong("user_id"))
+                .entityId(rs.getLong("entity_id"))
+                .eventType(lookups.eventTypes.get(rs.getLong("type_id")))
+                .operation(lookups.operations.get(rs.getLong("operation_id")))
+                .timestamp(rs.getTimestamp("time").getTime())
+                .build();
+    }
+
+    private Lookups getLookups() {
+        Lookups result = lookups;
+        if (result == null) {
+            lookupsLock.lock();
+            try {
+                result = lookups;
+                if (result == null) {
+                    result = new Lookups();
+                    Lookups loaded = result;
+                    jdbcTemplate.query("SELECT type_id, name FROM event_type", rs -> {
+                        FeedEventType type = FeedEventType.valueOf(rs.getString("name"));
+                        loaded.eventTypes.put(rs.getLong("type_id"), type);
+                        loaded.eventTypeIds.put(type, rs.getLong("type_id"));
+                    });
+                    jdbcTemplate.query("SELECT operation_id, name FROM event_operation", rs -> {
+                        FeedOperation operation = FeedOperation.valueOf(rs.getString("name"));
+                        loaded.operations.put(rs.getLong("operation_id"), operation);
+                        loaded.operationIds.put(operation, rs.getLong("operation_id"));
+                    });
+                    lookups = result;
+                }
+            } finally {
+                lookupsLock.unlock();
+            }
+        }
+        return result;
+    }
+
+    private ReentrantLock lockFor(long userId) {
+        return timelineLocks[(int) Math.floorMod(userId, (long) LOCK_STRIPES)];
+    }
+
+    private static class Lookups {
+        private final Map<Long, FeedEventType> eventTypes = new HashMap<>();
+        private final Map<FeedEventType, Long> eventTypeIds = new EnumMap<>(FeedEventType.class);
+        private final Map<Long, FeedOperation> operations = new HashMap<>();
+        private final Map<FeedOperation, Long> operationIds = new EnumMap<>(FeedOperation.class);
+    }
+}
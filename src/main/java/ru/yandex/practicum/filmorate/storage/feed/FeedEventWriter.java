@@ -0,0 +1,354 @@
+package ru.yandex.practicum.filmorate.storage.feed;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+// Пишет события ленты в таблицу feed. В режимах ASYNC и GROUP_COMMIT события копятся в ограниченной очереди
+// и записываются одной пачкой в транзакции, когда наберется batchSize или пройдет flushIntervalMs.
+// event_id выдает таблица; future из write() завершается им после фиксации записи.
+@Slf4j
+public class FeedEventWriter implements AutoCloseable {
+    private static final String INSERT_QUERY = "INSERT INTO feed " +
+            "(user_id, entity_id, type_id, operation_id, time) VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FeedWriterSettings settings;
+    private final BlockingQueue<PendingRow> queue;
+    private final Thread flusher;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private volatile boolean running = true;
+
+    public FeedEventWriter(JdbcTemplate jdbcTemplate, FeedWriterSettings settings) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.settings = settings;
+        if (settings.getMode() == FeedWriteMode.SYNC) {
+            queue = null;
+            flusher = null;
+        } else {
+            queue = new ArrayBlockingQueue<>(settings.getQueueCapacity());
+            flusher = new Thread(this::run, "feed-writer");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    public CompletableFuture<Long> write(Object[] row) {
+        if (queue == null || !running) {
+            long eventId = insert(row);
+            written.incrementAndGet();
+            return CompletableFuture.completedFuture(eventId);
+        }
+
+        CompletableFuture<Long> done = enqueue(row);
+        if (settings.getMode() == FeedWriteMode.GROUP_COMMIT) {
+            await(done);
+        }
+        return done;
+    }
+
+    // Пишет несколько событий: в режиме SYNC одним пакетом в транзакции вызывающего,
+    // в остальных режимах через очередь, и в GROUP_COMMIT ждет записи всех событий
+    public List<CompletableFuture<Long>> writeAll(List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        if (queue == null || !running) {
+            return writeNow(rows).stream().map(CompletableFuture::completedFuture).collect(Collectors.toList());
+        }
+
+        List<CompletableFuture<Long>> done = rows.stream().map(this::enqueue).collect(Collectors.toList());
+        if (settings.getMode() == FeedWriteMode.GROUP_COMMIT) {
+            done.forEach(FeedEventWriter::await);
+        }
+        return done;
+    }
+
+    // Пишет события одним пакетом сразу, в любом режиме: внутри транзакции вызывающего они откатываются вместе с ней
+    public List<Long> writeNow(List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        List<Long> eventIds = jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection ->
+                executeBatch(connection, rows));
+        written.addAndGet(rows.size());
+        return eventIds;
+    }
+
+    private CompletableFuture<Long> enqueue(Object[] row) {
+        PendingRow pendingRow = new PendingRow(row);
+        pending.incrementAndGet();
+        if (!offer(pendingRow)) {
+            // Очередь переполнена: не теряем событие и не ждем бесконечно, а пишем его сами
+            pending.decrementAndGet();
+            overflowed.incrementAndGet();
+            log.warn("Очередь записи ленты заполнена ({} событий), событие записывается в потоке запроса.",
+                    settings.getQueueCapacity());
+            long eventId = insert(row);
+            written.incrementAndGet();
+            return CompletableFuture.completedFuture(eventId);
+        }
+        enqueued.incrementAndGet();
+        return pendingRow.done;
+    }
+
+    // Дожидается записи всех событий, поставленных в очередь до вызова.
+    // Если фоновый поток уже остановлен, оставшиеся события дописываются в потоке вызова.
+    public void flush() {
+        if (queue == null || pending.get() == 0) {
+            return;
+        }
+        PendingRow barrier = new PendingRow(null);
+        try {
+            while (!queue.offer(barrier, settings.getFlushIntervalMs(), TimeUnit.MILLISECONDS)) {
+                if (!flusher.isAlive()) {
+                    drain();
+                    return;
+                }
+            }
+            while (!barrier.done.isDone()) {
+                if (!flusher.isAlive()) {
+                    drain();
+                    return;
+                }
+                try {
+                    barrier.done.get(settings.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException | ExecutionException e) {
+                    // Проверяем, жив ли фоновый поток, и ждем дальше
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public FeedWriterMetrics getMetrics() {
+        return new FeedWriterMetrics(
+                settings.getMode(),
+                queue == null ? 0 : queue.size(),
+                queue == null ? 0 : settings.getQueueCapacity(),
+                enqueued.get(),
+                written.get(),
+                batches.get(),
+                failed.get(),
+                overflowed.get()
+        );
+    }
+
+    @Override
+    public void close() {
+        if (flusher == null) {
+            return;
+        }
+        running = false;
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!flusher.isAlive()) {
+            drain();
+        }
+        log.info("Запись ленты остановлена. {}", getMetrics());
+    }
+
+    private boolean offer(PendingRow row) {
+        try {
+            return queue.offer(row, settings.getEnqueueTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void run() {
+        // В режиме ASYNC ждем, пока наберется пачка; в GROUP_COMMIT запросы ждут, поэтому пишем сразу все, что есть
+        long lingerNanos = settings.getMode() == FeedWriteMode.ASYNC
+                ? TimeUnit.MILLISECONDS.toNanos(settings.getFlushIntervalMs())
+                : 0;
+        List<PendingRow> batch = new ArrayList<>(settings.getBatchSize());
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingRow first = queue.poll(settings.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fill(batch, lingerNanos);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (RuntimeException e) {
+                log.error("Ошибка фоновой записи ленты.", e);
+                batch.forEach(row -> row.done.completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Дописывает очередь в потоке вызова после остановки фонового потока.
+    // Пачка пишется под ReentrantLock, а не synchronized, чтобы запись в БД не закрепляла виртуальный поток.
+    private void drain() {
+        drainLock.lock();
+        try {
+            List<PendingRow> batch = new ArrayList<>();
+            queue.drainTo(batch);
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    private void fill(List<PendingRow> batch, long lingerNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < settings.getBatchSize() && batch.get(batch.size() - 1).row != null) {
+            PendingRow next = queue.poll();
+            if (next == null) {
+                long wait = deadline - System.nanoTime();
+                if (wait <= 0) {
+                    return;
+                }
+                next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    return;
+                }
+            }
+            batch.add(next);
+        }
+    }
+
+    private void writeBatch(List<PendingRow> batch) {
+        List<PendingRow> rows = batch.stream().filter(row -> row.row != null).collect(Collectors.toList());
+        if (!rows.isEmpty()) {
+            // Счетчики обновляются до завершения future, чтобы вернувшийся вызов видел актуальные метрики
+            batches.incrementAndGet();
+            try {
+                List<Long> eventIds = insertBatch(rows.stream().map(row -> row.row).collect(Collectors.toList()));
+                written.addAndGet(rows.size());
+                for (int i = 0; i < rows.size(); i++) {
+                    rows.get(i).done.complete(eventIds.get(i));
+                }
+            } catch (DataAccessException e) {
+                log.warn("Не удалось записать пачку из {} событий ленты, запись по одному: {}",
+                        rows.size(), e.getMessage());
+                rows.forEach(this::writeSingle);
+            }
+            pending.addAndGet(-rows.size());
+        }
+        batch.stream().filter(row -> row.row == null).forEach(barrier -> barrier.done.complete(null));
+    }
+
+    private void writeSingle(PendingRow row) {
+        try {
+            long eventId = insert(row.row);
+            written.incrementAndGet();
+            row.done.complete(eventId);
+        } catch (DataAccessException e) {
+            failed.incrementAndGet();
+            log.error("Событие ленты {} не записано: {}", Arrays.toString(row.row), e.getMessage());
+            row.done.completeExceptionally(e);
+        }
+    }
+
+    private long insert(Object[] row) {
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(INSERT_QUERY, new String[]{"event_id"});
+            setValues(stmt, row);
+            return stmt;
+        }, keyHolder);
+        return Objects.requireNonNull(keyHolder.getKey()).longValue();
+    }
+
+    // Пачка пишется в одной транзакции: при ошибке она откатывается целиком и строки пишутся по одной
+    private List<Long> insertBatch(List<Object[]> rows) {
+        return jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                List<Long> eventIds = executeBatch(connection, rows);
+                connection.commit();
+                return eventIds;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        });
+    }
+
+    private static List<Long> executeBatch(Connection connection, List<Object[]> rows) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(INSERT_QUERY, new String[]{"event_id"})) {
+            for (Object[] row : rows) {
+                setValues(stmt, row);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            List<Long> eventIds = new ArrayList<>(rows.size());
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                while (keys.next()) {
+                    eventIds.add(keys.getLong(1));
+                }
+            }
+            if (eventIds.size() != rows.size()) {
+                throw new SQLException(String.format("Получено %d ключей для %d событий ленты.",
+                        eventIds.size(), rows.size()));
+            }
+            return eventIds;
+        }
+    }
+
+    private static void setValues(PreparedStatement stmt, Object[] row) throws SQLException {
+        for (int i = 0; i < row.length; i++) {
+            stmt.setObject(i + 1, row[i]);
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> done) {
+        try {
+            return done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static class PendingRow {
+        // null - метка для flush()
+        private final Object[] row;
+        private final CompletableFuture<Long> done = new CompletableFuture<>();
+
+        private PendingRow(Object[] row) {
+            this.row = row;
+        }
+    }
+}
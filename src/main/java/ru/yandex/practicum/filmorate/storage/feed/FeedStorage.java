@@ -1,11 +1,20 @@
 package ru.yandex.practicum.filmorate.storage.feed;
 
+import ru.yandex.practicum.filmorate.model.feed.FeedEntity;
 import ru.yandex.practicum.filmorate.model.feed.FeedEventType;
 import ru.yandex.practicum.filmorate.model.feed.FeedOperation;
 
+import java.util.List;
+
 public interface FeedStorage {
     void add(long userId, long entityId, FeedEventType eventType, FeedOperation operation);
 
+    void addAll(List<FeedEntity> events);
+
+    List<FeedEntity> getUserFeed(long userId, Long beforeEventId, Integer limit);
+
+    void removeUserFeed(long userId);
+
     Long getOperationIndex(FeedOperation operation);
 
     Long getEventTypeIndex(FeedEventType eventType);
@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.storage.feed;
+
+import ru.yandex.practicum.filmorate.model.feed.FeedEntity;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Кольцевой буфер последних событий пользователя, упорядоченных по event_id.
+// complete = true, пока в буфере лежит вся история пользователя и в таблицу ходить не нужно.
+class FeedTimeline {
+    private final FeedEntity[] events;
+    private int start;
+    private int size;
+    private boolean complete;
+
+    FeedTimeline(int capacity, List<FeedEntity> events, boolean complete) {
+        this.events = new FeedEntity[capacity];
+        this.complete = complete;
+        events.forEach(this::push);
+    }
+
+    synchronized void append(FeedEntity event) {
+        if (size > 0 && event.getEventId() <= get(size - 1).getEventId()) {
+            insertOrdered(event);
+        } else {
+            push(event);
+        }
+    }
+
+    synchronized List<FeedEntity> snapshot() {
+        List<FeedEntity> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(get(i));
+        }
+        return result;
+    }
+
+    synchronized boolean isComplete() {
+        return complete;
+    }
+
+    private FeedEntity get(int index) {
+        return events[(start + index) % events.length];
+    }
+
+    private void push(FeedEntity event) {
+        if (size < events.length) {
+            events[(start + size) % events.length] = event;
+            size++;
+        } else {
+            events[start] = event;
+            start = (start + 1) % events.length;
+            complete = false;
+        }
+    }
+
+    // Событие с меньшим id может прийти позже соседнего при конкурентной записи
+    private void insertOrdered(FeedEntity event) {
+        List<FeedEntity> ordered = snapshot();
+        if (ordered.stream().anyMatch(e -> e.getEventId() == event.getEventId())) {
+            return;
+        }
+        ordered.add(event);
+        ordered.sort(Comparator.comparingLong(FeedEntity::getEventId));
+        start = 0;
+        size = 0;
+        ordered.forEach(this::push);
+    }
+}
@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.storage.feed;
+
+public enum FeedWriteMode {
+    // Запись в потоке запроса, как раньше
+    SYNC,
+    // Запрос только ставит событие в очередь, запись идет пачками в фоне
+    ASYNC,
+    // Запрос ждет, пока пачка с его событием будет записана
+    GROUP_COMMIT
+}
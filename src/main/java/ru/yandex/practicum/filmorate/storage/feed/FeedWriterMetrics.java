@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.storage.feed;
+
+import lombok.Value;
+
+@Value
+public class FeedWriterMetrics {
+    FeedWriteMode mode;
+    int queueSize;
+    int queueCapacity;
+    long enqueued;
+    long written;
+    long batches;
+    long failed;
+    // Сколько раз очередь была заполнена и событие пришлось записать в потоке запроса
+    long overflowed;
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.storage.feed;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "filmorate.feed")
+public class FeedWriterSettings {
+    private FeedWriteMode mode = FeedWriteMode.ASYNC;
+    private int batchSize = 100;
+    private long flushIntervalMs = 20;
+    private int queueCapacity = 10_000;
+    private long enqueueTimeoutMs = 50;
+}
@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.storage.feed;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.feed.FeedEntity;
+import ru.yandex.practicum.filmorate.model.feed.FeedEventType;
+import ru.yandex.practicum.filmorate.model.feed.FeedOperation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Лента событий в памяти для профиля in-memory: события пользователя лежат по возрастанию event_id
+@Profile("in-memory")
+@Component
+public class InMemoryFeedStorage implements FeedStorage {
+    private final Map<Long, List<FeedEntity>> feeds = new ConcurrentHashMap<>();
+    private final AtomicLong currentId = new AtomicLong();
+
+    @Override
+    public void add(long userId, long entityId, FeedEventType eventType, FeedOperation operation) {
+        List<FeedEntity> feed = feeds.computeIfAbsent(userId, key -> new ArrayList<>());
+        synchronized (feed) {
+            // id выдается под блокировкой ленты, чтобы события одного пользователя шли по порядку
+            feed.add(FeedEntity.builder()
+                    .eventId(currentId.incrementAndGet())
+                    .userId(userId)
+                    .entityId(entityId)
+                    .eventType(eventType)
+                    .operation(operation)
+                    .timestamp(System.currentTimeMillis())
+                    .build());
+        }
+    }
+
+    @Override
+    public void addAll(List<FeedEntity> events) {
+        events.forEach(event -> add(event.getUserId(), event.getEntityId(), event.getEventType(), event.getOperation()));
+    }
+
+    @Override
+    public List<FeedEntity> getUserFeed(long userId, Long beforeEventId, Integer limit) {
+        long before = beforeEventId == null ? Long.MAX_VALUE : beforeEventId;
+        int max = limit == null ? Integer.MAX_VALUE : limit;
+
+        List<FeedEntity> feed = feeds.getOrDefault(userId, List.of());
+        List<FeedEntity> page = new ArrayList<>();
+        synchronized (feed) {
+            for (FeedEntity event : feed) {
+                if (event.getEventId() < before) {
+                    page.add(event);
+                }
+            }
+        }
+        if (page.size() > max) {
+            return new ArrayList<>(page.subList(page.size() - max, page.size()));
+        }
+        return page;
+    }
+
+    @Override
+    public void removeUserFeed(long userId) {
+        feeds.remove(userId);
+    }
+
+    // Индексы совпадают с порядком строк справочников в миграции V2__reference_data.sql
+    @Override
+    public Long getOperationIndex(FeedOperation operation) {
+        return (long) operation.ordinal() + 1;
+    }
+
+    @Override
+    public Long getEventTypeIndex(FeedEventType eventType) {
+        return (long) eventType.ordinal() + 1;
+    }
+}
@@ -1,31 +1,80 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
-import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
 import ru.yandex.practicum.filmorate.exception.FilmAttributeNotExistOnFilmCreationException;
-import ru.yandex.practicum.filmorate.model.ErrorResponse;
-import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.model.enumarate.ChoosingSearch;
+import ru.yandex.practicum.filmorate.model.enumarate.LikeEventResult;
+import ru.yandex.practicum.filmorate.model.feed.FeedOperation;
+import ru.yandex.practicum.filmorate.storage.cache.Warmable;
 import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
 import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
 import ru.yandex.practicum.filmorate.storage.mpa.MPAStorage;
 
+import javax.annotation.PreDestroy;
+import javax.transaction.Transactional;
 import java.sql.*;
 import java.sql.Date;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
-@RequiredArgsConstructor
+@Profile("!in-memory")
 @Component
-public class FilmDbStorage implements FilmStorage {
+public class FilmDbStorage implements FilmStorage, Warmable {
+    private static final int RECOMMENDATION_NEIGHBOURS = 10;
+    private static final int RECOMMENDATIONS_LIMIT = 100;
+
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
     private final GenreStorage genreStorage;
     private final MPAStorage mpaStorage;
     private final DirectorStorage directorStorage;
+    private final FilmLeaderboard leaderboard = new FilmLeaderboard();
+    private final FilmLikeIndex likeIndex = new FilmLikeIndex();
+    private final FilmSearchIndex searchIndex = new FilmSearchIndex();
+    private final ReentrantLock leaderboardLoadLock = new ReentrantLock();
+    private final ReentrantLock likeIndexLoadLock = new ReentrantLock();
+    private final ReentrantLock searchIndexLoadLock = new ReentrantLock();
+    private final FilmReadFanOut readFanOut;
+
+    public FilmDbStorage(JdbcTemplate jdbcTemplate,
+                         NamedParameterJdbcTemplate namedJdbcTemplate,
+                         GenreStorage genreStorage,
+                         MPAStorage mpaStorage,
+                         DirectorStorage directorStorage,
+                         FilmReadSettings readSettings) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+        this.genreStorage = genreStorage;
+        this.mpaStorage = mpaStorage;
+        this.directorStorage = directorStorage;
+        this.readFanOut = new FilmReadFanOut(readSettings, jdbcTemplate.getDataSource());
+    }
+
+    @PreDestroy
+    public void close() {
+        readFanOut.close();
+    }
+
+    @Override
+    public void warmUp() {
+        getLeaderboard();
+        getLikeIndex();
+        getSearchIndex();
+    }
 
+    @Transactional
     @Override
     public Film add(Film film) {
         String sqlQuery = "INSERT INTO film (name, description, rating_id, release, duration) VALUES (?, ?, ?, ?, ?)";
@@ -38,20 +87,12 @@ public class FilmDbStorage implements FilmStorage {
                     new ErrorResponse("MPA id", String.format("Не найден MPA с ID: %d.", mpaId))
             );
         }
+        checkFilmAttributes(film);
+        loadFilmIndexes();
 
         jdbcTemplate.update(connection -> {
                     PreparedStatement statement = connection.prepareStatement(sqlQuery, new String[]{"film_id"});
-                    statement.setString(1, film.getName());
-                    statement.setString(2, film.getDescription());
-
-                    if (film.getMpa() == null) {
-                        statement.setNull(3, Types.INTEGER);
-                    } else {
-                        statement.setLong(3, film.getMpa().getId());
-                    }
-
-                    statement.setDate(4, Date.valueOf(film.getReleaseDate()));
-                    statement.setInt(5, film.getDuration());
+                    setFilmParameters(statement, film);
                     return statement;
                 },
                 keyHolder);
@@ -59,13 +100,82 @@ public class FilmDbStorage implements FilmStorage {
         long id = Objects.requireNonNull(keyHolder.getKey()).longValue();
         genreStorage.addFilmGenres(id, film.getGenres());
         directorStorage.addDirectors(id, film.getDirectors());
-        return this.get(id);
+
+        Film savedFilm = assemble(id, film, toFilmGenres(film.getGenres()), new HashSet<>());
+        afterCommit(() -> putToIndexes(savedFilm));
+        return savedFilm;
     }
 
+    // Пакетная вставка без проверки справочников: id жанров, MPA и режиссеров проверяет вызывающий.
+    // Фильмы, жанры и режиссеры пишутся тремя пакетами в одной транзакции.
+    @Override
+    @Transactional
+    public List<Film> addAll(List<Film> films) {
+        if (films.isEmpty()) {
+            return new ArrayList<>();
+        }
+        loadFilmIndexes();
+        String sqlQuery = "INSERT INTO film (name, description, rating_id, release, duration) VALUES (?, ?, ?, ?, ?)";
+        List<Long> ids = jdbcTemplate.execute(
+                (Connection connection) -> connection.prepareStatement(sqlQuery, new String[]{"film_id"}),
+                (PreparedStatement statement) -> {
+                    for (Film film : films) {
+                        setFilmParameters(statement, film);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                    List<Long> keys = new ArrayList<>(films.size());
+                    try (ResultSet rs = statement.getGeneratedKeys()) {
+                        while (rs.next()) {
+                            keys.add(rs.getLong(1));
+                        }
+                    }
+                    return keys;
+                });
+        if (ids == null || ids.size() != films.size()) {
+            throw new IllegalStateException("Не получены id всех добавленных фильмов.");
+        }
+
+        List<Object[]> genreRows = new ArrayList<>();
+        List<Object[]> directorRows = new ArrayList<>();
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            long id = ids.get(i);
+            if (film.getGenres() != null) {
+                film.getGenres().stream()
+                        .map(Genre::getId)
+                        .distinct()
+                        .forEach(genreId -> genreRows.add(new Object[]{id, genreId}));
+            }
+            if (film.getDirectors() != null) {
+                film.getDirectors().stream()
+                        .map(Director::getId)
+                        .distinct()
+                        .forEach(directorId -> directorRows.add(new Object[]{id, directorId}));
+            }
+        }
+        if (!genreRows.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?)", genreRows);
+        }
+        if (!directorRows.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO film_director (film_id, director_id) VALUES (?, ?)", directorRows);
+        }
+
+        List<Film> savedFilms = new ArrayList<>(films.size());
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            savedFilms.add(assemble(ids.get(i), film, toFilmGenres(film.getGenres()), new HashSet<>()));
+        }
+        afterCommit(() -> savedFilms.forEach(this::putToIndexes));
+        return savedFilms;
+    }
+
+    @Transactional
     @Override
     public Film update(Film film) {
         long id = film.getId();
-        checkFilmExist(id);
+        checkFilmAttributes(film);
+        loadFilmIndexes();
 
         String sqlQuery =
                 "UPDATE film " +
@@ -75,77 +185,265 @@ public class FilmDbStorage implements FilmStorage {
                         "    release = ?, " +
                         "    duration = ? " +
                         "WHERE film_id = ?";
-        jdbcTemplate.update(sqlQuery,
+        int updated = jdbcTemplate.update(sqlQuery,
                 film.getName(),
                 film.getDescription(),
                 film.getMpa() == null ? null : film.getMpa().getId(),
                 film.getReleaseDate(),
                 film.getDuration(),
                 id);
+        if (updated == 0) {
+            throw filmNotFound(id);
+        }
         genreStorage.updateFilmGenres(id, film.getGenres());
         directorStorage.updateFilmDirectors(id, film.getDirectors());
-        return this.get(film.getId());
+
+        List<Genre> genres = film.getGenres() == null
+                ? genreStorage.getFilmsGenres(List.of(id)).getOrDefault(id, new ArrayList<>())
+                : toFilmGenres(film.getGenres());
+        Set<Long> likes = getFilmsLikes(List.of(id)).getOrDefault(id, new HashSet<>());
+
+        Film savedFilm = assemble(id, film, genres, likes);
+        afterCommit(() -> putToIndexes(savedFilm));
+        return savedFilm;
     }
 
     @Override
     public Film get(long id) {
-        checkFilmExist(id);
         String filmSqlQuery = "SELECT * FROM film WHERE film_id = ?";
-        return jdbcTemplate.queryForObject(filmSqlQuery, this::mapRowToFilm, id);
+        if (!readFanOut.isEnabled()) {
+            List<Film> films = queryFilms(filmSqlQuery, id);
+            if (films.isEmpty()) {
+                throw filmNotFound(id);
+            }
+            return films.get(0);
+        }
+
+        // Жанры, режиссеры и лайки не зависят от строки фильма и читаются параллельно с ней,
+        // поэтому время чтения определяет самый медленный запрос, а не их сумма. MPA берется из кэша.
+        List<Long> ids = List.of(id);
+        CompletableFuture<Map<Long, List<Genre>>> genres = readFanOut.submit(() -> genreStorage.getFilmsGenres(ids));
+        CompletableFuture<Map<Long, List<Director>>> directors =
+                readFanOut.submit(() -> directorStorage.getFilmsDirectors(ids));
+        CompletableFuture<Map<Long, Set<Long>>> likes = readFanOut.submit(() -> getFilmsLikes(ids));
+        List<Film> films;
+        try {
+            films = jdbcTemplate.query(filmSqlQuery, this::mapRowToFilm, id);
+        } catch (RuntimeException e) {
+            readFanOut.cancel(genres, directors, likes);
+            throw e;
+        }
+        if (films.isEmpty()) {
+            readFanOut.cancel(genres, directors, likes);
+            throw filmNotFound(id);
+        }
+        readFanOut.await(genres, directors, likes);
+
+        Film film = films.get(0);
+        Set<Long> mpaIds = film.getMpa() == null ? Set.of() : Set.of(film.getMpa().getId());
+        compose(films, genres.join(), directors.join(), mpaStorage.getByIds(mpaIds), likes.join());
+        return film;
+    }
+
+    @Override
+    public Film getLean(long id) {
+        String filmSqlQuery = "SELECT * FROM film WHERE film_id = ?";
+        List<Film> films = hydrate(jdbcTemplate.query(filmSqlQuery, this::mapRowToFilm, id), false);
+        if (films.isEmpty()) {
+            throw filmNotFound(id);
+        }
+        return films.get(0);
+    }
+
+    @Override
+    public long getLikesCount(long id) {
+        String sqlQuery = "SELECT likes_count FROM film WHERE film_id = ?";
+        List<Long> counts = jdbcTemplate.queryForList(sqlQuery, Long.class, id);
+        if (counts.isEmpty()) {
+            throw filmNotFound(id);
+        }
+        return counts.get(0);
     }
 
     @Override
     public void delete(long id) {
-        if (this.notContainFilm(id)) {
-            throw new EntityNotFoundException(
-                    new ErrorResponse("Film id", String.format("Не найден фильм с ID: %d.", id))
-            );
+        loadFilmIndexes();
+        getLikeIndex();
+        String sqlQuery = "DELETE FROM film WHERE film_id = ?";
+        if (jdbcTemplate.update(sqlQuery, id) == 0) {
+            throw filmNotFound(id);
         }
-        String sqlQuery = "DELETE FROM film WHERE film_id = " + id;
-        jdbcTemplate.execute(sqlQuery);
+        afterCommit(() -> {
+            leaderboard.remove(id);
+            likeIndex.removeFilm(id);
+            searchIndex.remove(id);
+        });
     }
 
     @Override
     public List<Film> getAll() {
         String sqlQuery = "SELECT * FROM film";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToFilm);
+        return queryFilms(sqlQuery);
+    }
+
+    @Override
+    public List<Film> getPage(long afterId, int limit) {
+        String sqlQuery = "SELECT * FROM film WHERE film_id > ? ORDER BY film_id LIMIT ?";
+        return queryFilms(sqlQuery, afterId, limit);
     }
 
     @Override
     public List<Film> getFilmWithDirectorName(String name) {
-        String nameStr = "%" + name.toLowerCase() + "%";
-        String sqlQuery = "SELECT f.*" +
-                "FROM FILM f " +
-                "JOIN FILM_DIRECTOR fd ON f.FILM_ID  = fd.FILM_ID " +
-                "JOIN DIRECTOR d ON d.DIRECTOR_ID  = fd.DIRECTOR_ID " +
-                "LEFT JOIN like_film l ON l.film_id = f.film_id " +
-                "WHERE LOWER(d.NAME) LIKE ? " +
-                "GROUP BY f.film_id " +
-                "ORDER BY COUNT(l.film_id)";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToFilm, nameStr);
+        Set<Long> directorIds = directorStorage.findIdsByName(name);
+        return queryFilmsByIds(getLeaderboard().rank(getSearchIndex().getDirectorsFilms(directorIds)));
     }
 
+    @Transactional
     @Override
-    public Film addLike(long id, long userId) {
-        checkFilmExist(id);
-        String sqlQuery = "MERGE INTO like_film (film_id, user_id) VALUES (?, ?)";
-        jdbcTemplate.update(sqlQuery, id, userId);
-        return this.get(id);
+    public boolean addLike(long id, long userId) {
+        loadLikeIndexes();
+        String sqlQuery =
+                "INSERT INTO like_film (film_id, user_id) " +
+                        "SELECT ?, ? " +
+                        "WHERE NOT EXISTS (SELECT 1 FROM like_film WHERE film_id = ? AND user_id = ?)";
+        if (jdbcTemplate.update(sqlQuery, id, userId, id, userId) == 0) {
+            return false;
+        }
+        changeLikesCount(id, 1);
+        afterCommit(() -> likeIndex.add(id, userId));
+        return true;
     }
 
+    @Transactional
     @Override
-    public Film removeLike(long id, long userId) {
-        checkFilmExist(id);
+    public boolean removeLike(long id, long userId) {
+        loadLikeIndexes();
         String sqlQuery = "DELETE FROM like_film WHERE film_id = ? AND user_id = ?";
-        jdbcTemplate.update(sqlQuery, id, userId);
-        return this.get(id);
+        if (jdbcTemplate.update(sqlQuery, id, userId) == 0) {
+            return false;
+        }
+        changeLikesCount(id, -1);
+        afterCommit(() -> likeIndex.remove(id, userId));
+        return true;
+    }
+
+    // События применяются по порядку к состоянию лайков в памяти, а в БД уходит только итоговая разница:
+    // пакет вставок, пакет удалений и пакет изменений likes_count. Счетчики меняются по фактическим
+    // числам измененных строк, поэтому параллельные одиночные лайки не сбивают likes_count.
+    // Изменившие состояние события передаются appliedConsumer в той же транзакции.
+    @Transactional
+    @Override
+    public List<LikeEventResult> applyLikes(List<LikeEvent> events, Consumer<List<LikeEvent>> appliedConsumer) {
+        List<LikeEventResult> results = new ArrayList<>(events.size());
+        if (events.isEmpty()) {
+            return results;
+        }
+        loadLikeIndexes();
+        Long[] filmIds = events.stream().map(LikeEvent::getFilmId).distinct().toArray(Long[]::new);
+        Long[] userIds = events.stream().map(LikeEvent::getUserId).distinct().toArray(Long[]::new);
+
+        Set<Long> films = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT film_id FROM film WHERE film_id = ANY(?)", Long.class, (Object) filmIds));
+        Set<Long> users = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT user_id FROM user_data WHERE user_id = ANY(?)", Long.class, (Object) userIds));
+        Set<LikeKey> existing = new HashSet<>();
+        jdbcTemplate.query("SELECT film_id, user_id FROM like_film WHERE film_id = ANY(?) AND user_id = ANY(?)",
+                rs -> {
+                    existing.add(new LikeKey(rs.getLong("film_id"), rs.getLong("user_id")));
+                }, filmIds, userIds);
+
+        Map<LikeKey, Boolean> state = new LinkedHashMap<>();
+        List<LikeEvent> applied = new ArrayList<>();
+        for (LikeEvent event : events) {
+            if (!films.contains(event.getFilmId())) {
+                results.add(LikeEventResult.FILM_NOT_FOUND);
+            } else if (!users.contains(event.getUserId())) {
+                results.add(LikeEventResult.USER_NOT_FOUND);
+            } else {
+                LikeKey key = new LikeKey(event.getFilmId(), event.getUserId());
+                boolean liked = state.getOrDefault(key, existing.contains(key));
+                boolean like = event.getOperation() == FeedOperation.ADD;
+                if (liked == like) {
+                    results.add(LikeEventResult.UNCHANGED);
+                } else {
+                    state.put(key, like);
+                    results.add(like ? LikeEventResult.ADDED : LikeEventResult.REMOVED);
+                    applied.add(event);
+                }
+            }
+        }
+
+        List<Object[]> added = new ArrayList<>();
+        List<Object[]> removed = new ArrayList<>();
+        state.forEach((key, liked) -> {
+            long filmId = key.getFilmId();
+            long userId = key.getUserId();
+            if (liked && !existing.contains(key)) {
+                added.add(new Object[]{filmId, userId, filmId, userId});
+            } else if (!liked && existing.contains(key)) {
+                removed.add(new Object[]{filmId, userId});
+            }
+        });
+        Map<Long, Integer> deltas = new HashMap<>();
+        List<Object[]> addedLikes = new ArrayList<>();
+        List<Object[]> removedLikes = new ArrayList<>();
+        if (!added.isEmpty()) {
+            String sqlQuery = "INSERT INTO like_film (film_id, user_id) " +
+                    "SELECT ?, ? " +
+                    "WHERE NOT EXISTS (SELECT 1 FROM like_film WHERE film_id = ? AND user_id = ?)";
+            int[] counts = jdbcTemplate.batchUpdate(sqlQuery, added);
+            collectLikeChanges(added, counts, 1, deltas, addedLikes);
+        }
+        if (!removed.isEmpty()) {
+            String sqlQuery = "DELETE FROM like_film WHERE film_id = ? AND user_id = ?";
+            int[] counts = jdbcTemplate.batchUpdate(sqlQuery, removed);
+            collectLikeChanges(removed, counts, -1, deltas, removedLikes);
+        }
+        if (!deltas.isEmpty()) {
+            String sqlQuery = "UPDATE film SET likes_count = likes_count + ? WHERE film_id = ?";
+            jdbcTemplate.batchUpdate(sqlQuery, deltas.entrySet().stream()
+                    .map(delta -> new Object[]{delta.getValue(), delta.getKey()})
+                    .collect(Collectors.toList()));
+            afterCommit(() -> {
+                deltas.forEach(leaderboard::changeLikes);
+                addedLikes.forEach(like -> likeIndex.add((long) like[0], (long) like[1]));
+                removedLikes.forEach(like -> likeIndex.remove((long) like[0], (long) like[1]));
+            });
+        }
+        appliedConsumer.accept(applied);
+        return results;
+    }
+
+    @Transactional
+    @Override
+    public void removeUserLikes(long userId) {
+        loadLikeIndexes();
+        String sqlQuery = "SELECT film_id FROM like_film WHERE user_id = ?";
+        List<Long> filmIds = jdbcTemplate.queryForList(sqlQuery, Long.class, userId);
+        if (filmIds.isEmpty()) {
+            return;
+        }
+
+        String updateSqlQuery =
+                "UPDATE film SET likes_count = likes_count - 1 " +
+                        "WHERE film_id IN (SELECT film_id FROM like_film WHERE user_id = ?)";
+        jdbcTemplate.update(updateSqlQuery, userId);
+        String deleteSqlQuery = "DELETE FROM like_film WHERE user_id = ?";
+        jdbcTemplate.update(deleteSqlQuery, userId);
+        afterCommit(() -> {
+            filmIds.forEach(filmId -> leaderboard.changeLikes(filmId, -1));
+            likeIndex.removeUser(userId);
+        });
     }
 
     @Override
     public Set<Long> getFilmLikes(long id) {
-        checkFilmExist(id);
         String sqlQuery = "SELECT user_id FROM like_film WHERE film_id = ?";
-        return (new HashSet<>(jdbcTemplate.query(sqlQuery, (rs, rowNum) -> rs.getLong("user_id"), id)));
+        Set<Long> likes = new HashSet<>(jdbcTemplate.query(sqlQuery, (rs, rowNum) -> rs.getLong("user_id"), id));
+        if (likes.isEmpty()) {
+            checkFilmExist(id);
+        }
+        return likes;
     }
 
     @Override
@@ -155,34 +453,22 @@ public class FilmDbStorage implements FilmStorage {
                 "         JOIN like_film AS lf2 ON lf1.film_id = lf2.film_id AND lf2.user_id = ? " +
                 "         JOIN film AS f ON lf1.film_id = f.film_id " +
                 "WHERE lf1.user_id = ?";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToFilm, id1, id2);
+        return queryFilms(sqlQuery, id1, id2);
     }
 
     @Override
     public List<Film> getFilmWithName(String name) {
-        String nameStr = "%" + name.toLowerCase() + "%";
-        String sqlQuery = "SELECT f.* " +
-                "FROM film f " +
-                "LEFT JOIN like_film l ON l.film_id = f.film_id " +
-                "WHERE LOWER(f.name) LIKE ? " +
-                "GROUP BY f.film_id " +
-                "ORDER BY COUNT(l.film_id)";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToFilm, nameStr);
+        return queryFilmsByIds(getLeaderboard().rank(getSearchIndex().searchTitles(name)));
     }
 
     @Override
     public List<Film> getPopularFilm(int count, Long genreId, Integer year) {
-        String sqlQuery = "SELECT fl.* " +
-                "FROM film fl " +
-                "LEFT JOIN like_film li ON li.film_id = fl.film_id " +
-                (genreId != null ? "JOIN film_genre fg ON fl.film_id = fg.film_id" +
-                        " WHERE fg.genre_id = " + genreId + " " : "") +
-                (year != null ? (genreId != null ? "AND" : "WHERE") + " EXTRACT(YEAR FROM CAST(fl.release AS" +
-                        " TIMESTAMP)) = " + year + " " : "") +
-                "GROUP BY fl.film_id " +
-                "ORDER BY COUNT(li.film_id) DESC " +
-                "LIMIT " + count;
-        return jdbcTemplate.query(sqlQuery, this::mapRowToFilm);
+        return queryFilmsByIds(getLeaderboard().getTop(count, genreId, year));
+    }
+
+    @Override
+    public List<Film> getPopularFilmLean(int count, Long genreId, Integer year) {
+        return queryFilmsByIds(getLeaderboard().getTop(count, genreId, year), false);
     }
 
     @Override
@@ -193,74 +479,37 @@ public class FilmDbStorage implements FilmStorage {
             );
         }
 
-        String sqlQuery = "SELECT f.film_id " +
+        String sqlQuery = "SELECT f.* " +
                 "FROM film f " +
                 "JOIN film_director fd ON f.film_id = fd.film_id " +
-                ("year".equals(sortBy) ? "WHERE fd.director_id = ? " +
-                        "ORDER BY f.release" :
-                        "LEFT JOIN like_film lf ON f.film_id = lf.film_id " +
-                                "WHERE fd.director_id = ? " +
-                                "GROUP BY f.film_id " +
-                                "ORDER BY COUNT(lf.film_id) DESC");
+                "WHERE fd.director_id = ? " +
+                ("year".equals(sortBy) ? "ORDER BY f.release" : "ORDER BY f.likes_count DESC, f.film_id");
 
-        return jdbcTemplate.query(sqlQuery, new Object[]{directorId}, this::mapRowToSortedFilms);
+        return queryFilms(sqlQuery, directorId);
     }
 
     @Override
     public List<Film> getRecommendations(Long id) {
-        String sqlQuery =
-                "SELECT film.* " +
-                        "FROM film " +
-                        "  INNER JOIN like_film AS u2 ON film.film_id = u2.film_id " +
-                        "  LEFT JOIN like_film AS u1 ON u2.film_id = u1.film_id and u1.user_id = ? " +
-                        "WHERE u1.film_id IS NULL " +
-                        "  AND u2.user_id = ( " +
-                        "    SELECT u2.user_id " +
-                        "    FROM like_film AS u1 " +
-                        "      INNER JOIN like_film AS u2 ON u1.film_id = u2.film_id " +
-                        "    WHERE u1.user_id = ? " +
-                        "      AND u2.user_id <> ? " +
-                        "    GROUP BY u2.user_id " +
-                        "    ORDER BY count(*) DESC " +
-                        "    LIMIT 1) ";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToFilm, id, id, id);
+        return queryFilmsByIds(getLikeIndex().recommend(id, RECOMMENDATION_NEIGHBOURS, RECOMMENDATIONS_LIMIT));
     }
 
     @Override
     public List<Film> search(String query, List<String> by) {
-        String searchStr = "%" + query.toLowerCase() + "%";
-        List<Object> args = new ArrayList<>();
-
-        StringBuilder conditions = new StringBuilder();
-        if (by.contains(String.valueOf(ChoosingSearch.title))) {
-            conditions.append("LOWER(name) like ? \n");
-            args.add(searchStr);
+        boolean byTitle = by.contains(String.valueOf(ChoosingSearch.title));
+        boolean byDirector = by.contains(String.valueOf(ChoosingSearch.director));
+        if (!byTitle && !byDirector) {
+            return queryFilmsByIds(getLeaderboard().getTop(Integer.MAX_VALUE, null, null));
         }
-        if (by.contains(String.valueOf(ChoosingSearch.director))) {
-            if (conditions.length() > 0) {
-                conditions.append(" OR ");
-            }
-            conditions.append(" film_id IN ( " +
-                    "SELECT fd.film_id " +
-                    "FROM film_director AS fd " +
-                    "  INNER JOIN director AS d ON fd.director_id = d.director_id " +
-                    "WHERE LOWER(d.name) LIKE ? " +
-                    ") ");
-            args.add(searchStr);
+
+        FilmSearchIndex index = getSearchIndex();
+        Set<Long> filmIds = new HashSet<>();
+        if (byTitle) {
+            filmIds.addAll(index.searchTitles(query));
         }
-        if (conditions.length() > 0) {
-            conditions.insert(0, "WHERE ");
+        if (byDirector) {
+            filmIds.addAll(index.getDirectorsFilms(directorStorage.findIdsByName(query)));
         }
-
-        String sqlQuery = "SELECT " +
-                "  film.*, (SELECT COUNT(*) FROM like_film WHERE film.film_id = like_film.film_id) as likes " +
-                "FROM film " +
-                conditions +
-                "ORDER BY likes DESC";
-
-        return jdbcTemplate.query(sqlQuery,
-                args.toArray(),
-                this::mapRowToFilm);
+        return queryFilmsByIds(getLeaderboard().rank(filmIds));
     }
 
     @Override
@@ -270,31 +519,296 @@ public class FilmDbStorage implements FilmStorage {
         return count != null && count == 0;
     }
 
-    private Film mapRowToSortedFilms(ResultSet rs, int rowNum) throws SQLException {
-        long id = rs.getLong("film_id");
-        return get(id);
+    // Записи загружают индексы, которые меняют, до первого запроса к БД. Загрузка в другом потоке задерживает
+    // запись до своего окончания, поэтому снимок таблиц не содержит изменений записи, а сами изменения
+    // применяются к уже загруженному индексу и не теряются.
+    private void loadFilmIndexes() {
+        getLeaderboard();
+        getSearchIndex();
     }
 
-    private Film mapRowToFilm(ResultSet rs, int rowNum) throws SQLException {
-        long id = rs.getLong("film_id");
+    private void loadLikeIndexes() {
+        getLeaderboard();
+        getLikeIndex();
+    }
+
+    private FilmLeaderboard getLeaderboard() {
+        if (!leaderboard.isLoaded()) {
+            leaderboardLoadLock.lock();
+            try {
+                if (!leaderboard.isLoaded()) {
+                    loadLeaderboard();
+                }
+            } finally {
+                leaderboardLoadLock.unlock();
+            }
+        }
+        return leaderboard;
+    }
+
+    private void loadLeaderboard() {
+        Map<Long, Integer> years = new HashMap<>();
+        Map<Long, Long> likes = new HashMap<>();
+        Map<Long, Set<Long>> genres = new HashMap<>();
+
+        jdbcTemplate.query("SELECT film_id, release, likes_count FROM film", rs -> {
+            long filmId = rs.getLong("film_id");
+            Date release = rs.getDate("release");
+            years.put(filmId, release == null ? null : release.toLocalDate().getYear());
+            likes.put(filmId, rs.getLong("likes_count"));
+        });
+        jdbcTemplate.query("SELECT film_id, genre_id FROM film_genre", rs -> {
+            genres.computeIfAbsent(rs.getLong("film_id"), id -> new HashSet<>()).add(rs.getLong("genre_id"));
+        });
+        leaderboard.load(years, likes, genres);
+    }
+
+    private FilmLikeIndex getLikeIndex() {
+        if (!likeIndex.isLoaded()) {
+            likeIndexLoadLock.lock();
+            try {
+                if (!likeIndex.isLoaded()) {
+                    Map<Long, Set<Long>> likes = new HashMap<>();
+                    jdbcTemplate.query("SELECT film_id, user_id FROM like_film", rs -> {
+                        likes.computeIfAbsent(rs.getLong("film_id"), id -> new HashSet<>())
+                                .add(rs.getLong("user_id"));
+                    });
+                    likeIndex.load(likes);
+                }
+            } finally {
+                likeIndexLoadLock.unlock();
+            }
+        }
+        return likeIndex;
+    }
+
+    private FilmSearchIndex getSearchIndex() {
+        if (!searchIndex.isLoaded()) {
+            searchIndexLoadLock.lock();
+            try {
+                if (!searchIndex.isLoaded()) {
+                    Map<Long, String> titles = new HashMap<>();
+                    Map<Long, Set<Long>> directors = new HashMap<>();
+                    jdbcTemplate.query("SELECT film_id, name FROM film", rs -> {
+                        titles.put(rs.getLong("film_id"), rs.getString("name"));
+                    });
+                    jdbcTemplate.query("SELECT film_id, director_id FROM film_director", rs -> {
+                        directors.computeIfAbsent(rs.getLong("film_id"), id -> new HashSet<>())
+                                .add(rs.getLong("director_id"));
+                    });
+                    searchIndex.load(titles, directors);
+                }
+            } finally {
+                searchIndexLoadLock.unlock();
+            }
+        }
+        return searchIndex;
+    }
+
+    private void setFilmParameters(PreparedStatement statement, Film film) throws SQLException {
+        statement.setString(1, film.getName());
+        statement.setString(2, film.getDescription());
+
+        if (film.getMpa() == null) {
+            statement.setNull(3, Types.INTEGER);
+        } else {
+            statement.setLong(3, film.getMpa().getId());
+        }
+
+        statement.setDate(4, Date.valueOf(film.getReleaseDate()));
+        statement.setInt(5, film.getDuration());
+    }
+
+    // Жанры и режиссеры проверяются до первой записи, чтобы отклоненный запрос ничего не менял
+    private void checkFilmAttributes(Film film) {
+        if (film.getGenres() != null && !film.getGenres().isEmpty()) {
+            genreStorage.checkGenresExist(film.getGenres().stream().map(Genre::getId).collect(Collectors.toList()));
+        }
+        if (film.getDirectors() != null && !film.getDirectors().isEmpty()) {
+            directorStorage.checkDirectorsExist(
+                    film.getDirectors().stream().map(Director::getId).collect(Collectors.toList()));
+        }
+    }
+
+    // Индексы в памяти меняются только после фиксации транзакции: при откате в них не остается
+    // фильмов и значений, которых нет в БД. Без транзакции изменение применяется сразу.
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void putToIndexes(Film film) {
+        leaderboard.put(
+                film.getId(),
+                film.getReleaseDate() == null ? null : film.getReleaseDate().getYear(),
+                film.getGenres().stream().map(Genre::getId).collect(Collectors.toSet())
+        );
+        searchIndex.put(
+                film.getId(),
+                film.getName(),
+                film.getDirectors().stream().map(Director::getId).collect(Collectors.toSet())
+        );
+    }
+
+    // Собирает сохраненный фильм из запроса и кешей справочников, не перечитывая его из БД
+    private Film assemble(long id, Film film, List<Genre> genres, Set<Long> likes) {
+        List<Director> directors = new ArrayList<>();
+        if (film.getDirectors() != null) {
+            film.getDirectors().stream()
+                    .map(Director::getId)
+                    .distinct()
+                    .sorted()
+                    .forEach(directorId -> directors.add(directorStorage.get(directorId)));
+        }
         return Film.builder()
                 .id(id)
+                .name(film.getName())
+                .description(film.getDescription())
+                .releaseDate(film.getReleaseDate())
+                .duration(film.getDuration())
+                .mpa(film.getMpa() == null ? null : mpaStorage.get(film.getMpa().getId()))
+                .genres(genres)
+                .directors(directors)
+                .likes(likes)
+                .build();
+    }
+
+    private List<Genre> toFilmGenres(List<Genre> genres) {
+        List<Genre> result = new ArrayList<>();
+        if (genres != null) {
+            genres.stream()
+                    .map(Genre::getId)
+                    .distinct()
+                    .sorted()
+                    .forEach(genreId -> result.add(genreStorage.get(genreId)));
+        }
+        return result;
+    }
+
+    // Собирает строки, которые действительно изменились, и изменения likes_count по фильмам
+    private void collectLikeChanges(List<Object[]> rows, int[] counts, int delta, Map<Long, Integer> deltas,
+                                    List<Object[]> changed) {
+        for (int i = 0; i < rows.size(); i++) {
+            if (counts[i] > 0) {
+                deltas.merge((long) rows.get(i)[0], delta, Integer::sum);
+                changed.add(rows.get(i));
+            }
+        }
+    }
+
+    private void changeLikesCount(long id, int delta) {
+        String sqlQuery = "UPDATE film SET likes_count = likes_count + ? WHERE film_id = ?";
+        jdbcTemplate.update(sqlQuery, delta, id);
+        afterCommit(() -> leaderboard.changeLikes(id, delta));
+    }
+
+    private List<Film> queryFilmsByIds(List<Long> ids) {
+        return queryFilmsByIds(ids, true);
+    }
+
+    private List<Film> queryFilmsByIds(List<Long> ids, boolean withLikes) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // Id передаются одним параметром-массивом: текст запроса не зависит от их числа, и H2 берет его из кэша
+        String sqlQuery = "SELECT * FROM film WHERE film_id = ANY(:ids)";
+        Map<Long, Film> films = new HashMap<>();
+        hydrate(namedJdbcTemplate.query(sqlQuery, Map.of("ids", ids.toArray(new Long[0])), this::mapRowToFilm),
+                withLikes)
+                .forEach(film -> films.put(film.getId(), film));
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private List<Film> queryFilms(String sqlQuery, Object... args) {
+        return hydrate(jdbcTemplate.query(sqlQuery, this::mapRowToFilm, args), true);
+    }
+
+    // Без лайков фильм несет только likes_count из своей строки, и объем ответа не зависит от числа лайков
+    private List<Film> hydrate(List<Film> films, boolean withLikes) {
+        if (films.isEmpty()) {
+            return films;
+        }
+
+        Set<Long> ids = new HashSet<>();
+        Set<Long> mpaIds = new HashSet<>();
+        for (Film film : films) {
+            ids.add(film.getId());
+            if (film.getMpa() != null) {
+                mpaIds.add(film.getMpa().getId());
+            }
+        }
+
+        Map<Long, List<Genre>> genres = genreStorage.getFilmsGenres(ids);
+        Map<Long, List<Director>> directors = directorStorage.getFilmsDirectors(ids);
+        Map<Long, MPA> ratings = mpaStorage.getByIds(mpaIds);
+        Map<Long, Set<Long>> likes = withLikes ? getFilmsLikes(ids) : null;
+        return compose(films, genres, directors, ratings, likes);
+    }
+
+    // likes = null - фильмы без списков лайков
+    private List<Film> compose(List<Film> films,
+                               Map<Long, List<Genre>> genres,
+                               Map<Long, List<Director>> directors,
+                               Map<Long, MPA> ratings,
+                               Map<Long, Set<Long>> likes) {
+        for (Film film : films) {
+            long id = film.getId();
+            film.setGenres(genres.getOrDefault(id, new ArrayList<>()));
+            film.setDirectors(directors.getOrDefault(id, new ArrayList<>()));
+            if (likes != null) {
+                film.setLikes(likes.getOrDefault(id, new HashSet<>()));
+                film.setLikesCount(null);
+            }
+            if (film.getMpa() != null) {
+                film.setMpa(ratings.get(film.getMpa().getId()));
+            }
+        }
+        return films;
+    }
+
+    private Map<Long, Set<Long>> getFilmsLikes(Collection<Long> ids) {
+        Map<Long, Set<Long>> likes = new HashMap<>();
+        String sqlQuery = "SELECT film_id, user_id FROM like_film WHERE film_id = ANY(:ids)";
+        namedJdbcTemplate.query(sqlQuery, Map.of("ids", ids.toArray(new Long[0])), rs -> {
+            likes.computeIfAbsent(rs.getLong("film_id"), id -> new HashSet<>()).add(rs.getLong("user_id"));
+        });
+        return likes;
+    }
+
+    private Film mapRowToFilm(ResultSet rs, int rowNum) throws SQLException {
+        long mpaId = rs.getLong("rating_id");
+        MPA mpa = rs.wasNull() ? null : new MPA(mpaId, null);
+        return Film.builder()
+                .id(rs.getLong("film_id"))
                 .name(rs.getString("name"))
                 .description(rs.getString("description"))
                 .releaseDate(rs.getDate("release").toLocalDate())
                 .duration(rs.getInt("duration"))
-                .genres(genreStorage.getFilmGenres(id))
-                .directors(directorStorage.getFilmDirectors(id))
-                .mpa(mpaStorage.get(rs.getLong("rating_id")))
-                .likes(this.getFilmLikes(id))
+                .mpa(mpa)
+                .likesCount(rs.getLong("likes_count"))
                 .build();
     }
 
     private void checkFilmExist(long id) {
         if (this.notContainFilm(id)) {
-            throw new EntityNotFoundException(
-                    new ErrorResponse("Film id", String.format("Не найден фильм с ID: %d.", id))
-            );
+            throw filmNotFound(id);
         }
     }
+
+    private EntityNotFoundException filmNotFound(long id) {
+        return new EntityNotFoundException(
+                new ErrorResponse("Film id", String.format("Не найден фильм с ID: %d.", id))
+        );
+    }
 }
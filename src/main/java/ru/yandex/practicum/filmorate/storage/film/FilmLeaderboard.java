@@ -0,0 +1,183 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.Value;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Рейтинг фильмов по количеству лайков, разбитый на корзины (жанр, год).
+// Каждый фильм лежит в корзинах (все, все), (жанр, все), (все, год) и (жанр, год),
+// поэтому топ для любого фильтра /films/popular читается без сортировки.
+public class FilmLeaderboard {
+    private static final Comparator<Entry> ORDER = Comparator
+            .comparingLong(Entry::getLikes).reversed()
+            .thenComparingLong(Entry::getFilmId);
+
+    private final Map<Long, FilmState> films = new HashMap<>();
+    private final Map<Bucket, NavigableSet<Entry>> buckets = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded;
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public void load(Map<Long, Integer> years, Map<Long, Long> likes, Map<Long, Set<Long>> genres) {
+        lock.writeLock().lock();
+        try {
+            films.clear();
+            buckets.clear();
+            years.forEach((filmId, year) -> add(filmId, new FilmState(
+                    year,
+                    genres.getOrDefault(filmId, Set.of()),
+                    likes.getOrDefault(filmId, 0L)
+            )));
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void put(long filmId, Integer year, Collection<Long> genreIds) {
+        if (!loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            FilmState old = films.remove(filmId);
+            long likes = 0;
+            if (old != null) {
+                removeFromBuckets(filmId, old);
+                likes = old.getLikes();
+            }
+            add(filmId, new FilmState(year, new HashSet<>(genreIds), likes));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long filmId) {
+        if (!loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            FilmState old = films.remove(filmId);
+            if (old != null) {
+                removeFromBuckets(filmId, old);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void changeLikes(long filmId, long delta) {
+        if (!loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            FilmState old = films.remove(filmId);
+            if (old != null) {
+                removeFromBuckets(filmId, old);
+                add(filmId, new FilmState(old.getYear(), old.getGenreIds(), Math.max(0, old.getLikes() + delta)));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Long> getTop(int count, Long genreId, Integer year) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<Entry> bucket = buckets.get(new Bucket(genreId, year));
+            if (bucket == null || count <= 0) {
+                return new ArrayList<>();
+            }
+            List<Long> top = new ArrayList<>(Math.min(count, bucket.size()));
+            for (Entry entry : bucket) {
+                if (top.size() == count) {
+                    break;
+                }
+                top.add(entry.getFilmId());
+            }
+            return top;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Упорядочивает фильмы по убыванию лайков, при равенстве - по id
+    public List<Long> rank(Collection<Long> filmIds) {
+        lock.readLock().lock();
+        try {
+            List<Entry> entries = new ArrayList<>(filmIds.size());
+            for (Long filmId : filmIds) {
+                FilmState state = films.get(filmId);
+                entries.add(new Entry(filmId, state == null ? 0 : state.getLikes()));
+            }
+            entries.sort(ORDER);
+            List<Long> ranked = new ArrayList<>(entries.size());
+            entries.forEach(entry -> ranked.add(entry.getFilmId()));
+            return ranked;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(long filmId, FilmState state) {
+        films.put(filmId, state);
+        Entry entry = new Entry(filmId, state.getLikes());
+        for (Bucket bucket : bucketsOf(state)) {
+            buckets.computeIfAbsent(bucket, b -> new TreeSet<>(ORDER)).add(entry);
+        }
+    }
+
+    private void removeFromBuckets(long filmId, FilmState state) {
+        Entry entry = new Entry(filmId, state.getLikes());
+        for (Bucket bucket : bucketsOf(state)) {
+            NavigableSet<Entry> entries = buckets.get(bucket);
+            if (entries != null) {
+                entries.remove(entry);
+                if (entries.isEmpty()) {
+                    buckets.remove(bucket);
+                }
+            }
+        }
+    }
+
+    private List<Bucket> bucketsOf(FilmState state) {
+        List<Bucket> result = new ArrayList<>(2 + state.getGenreIds().size() * 2);
+        result.add(new Bucket(null, null));
+        if (state.getYear() != null) {
+            result.add(new Bucket(null, state.getYear()));
+        }
+        for (Long genreId : state.getGenreIds()) {
+            result.add(new Bucket(genreId, null));
+            if (state.getYear() != null) {
+                result.add(new Bucket(genreId, state.getYear()));
+            }
+        }
+        return result;
+    }
+
+    @Value
+    private static class FilmState {
+        Integer year;
+        Set<Long> genreIds;
+        long likes;
+    }
+
+    @Value
+    private static class Bucket {
+        Long genreId;
+        Integer year;
+    }
+
+    @Value
+    private static class Entry {
+        long filmId;
+        long likes;
+    }
+}
@@ -0,0 +1,172 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.Value;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Индекс лайков в виде битовых множеств: пользователь -> фильмы и фильм -> пользователи.
+// Похожие пользователи ищутся только среди тех, у кого есть хотя бы один общий лайк,
+// поэтому время рекомендаций зависит от пересечения вкусов, а не от размера like_film.
+public class FilmLikeIndex {
+    private static final int PARALLEL_THRESHOLD = 1_000;
+    private static final Comparator<Neighbour> NEIGHBOUR_ORDER = Comparator
+            .comparingDouble(Neighbour::getSimilarity).reversed()
+            .thenComparingInt(Neighbour::getUserId);
+
+    private final Map<Integer, BitSet> userFilms = new HashMap<>();
+    private final Map<Integer, BitSet> filmUsers = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded;
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public void load(Map<Long, Set<Long>> likes) {
+        lock.writeLock().lock();
+        try {
+            userFilms.clear();
+            filmUsers.clear();
+            likes.forEach((filmId, userIds) -> userIds.forEach(userId -> put(filmId, userId)));
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void add(long filmId, long userId) {
+        if (!loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            put(filmId, userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long filmId, long userId) {
+        if (!loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            clear(userFilms, Math.toIntExact(userId), Math.toIntExact(filmId));
+            clear(filmUsers, Math.toIntExact(filmId), Math.toIntExact(userId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeUser(long userId) {
+        if (!loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            int user = Math.toIntExact(userId);
+            BitSet films = userFilms.remove(user);
+            if (films != null) {
+                films.stream().forEach(film -> clear(filmUsers, film, user));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(long filmId) {
+        if (!loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            int film = Math.toIntExact(filmId);
+            BitSet users = filmUsers.remove(film);
+            if (users != null) {
+                users.stream().forEach(user -> clear(userFilms, user, film));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Фильмы, которые понравились k самым похожим (по Жаккару) пользователям и которых нет у userId.
+    // Вес фильма - сумма сходства соседей, лайкнувших его.
+    public List<Long> recommend(long userId, int neighbours, int limit) {
+        lock.readLock().lock();
+        try {
+            int user = Math.toIntExact(userId);
+            BitSet liked = userFilms.get(user);
+            if (liked == null || liked.isEmpty()) {
+                return new ArrayList<>();
+            }
+
+            BitSet candidates = new BitSet();
+            liked.stream().forEach(film -> candidates.or(filmUsers.get(film)));
+            candidates.clear(user);
+
+            IntStream candidateStream = candidates.stream();
+            if (candidates.cardinality() >= PARALLEL_THRESHOLD) {
+                candidateStream = candidateStream.parallel();
+            }
+            List<Neighbour> nearest = candidateStream
+                    .mapToObj(other -> new Neighbour(other, jaccard(liked, userFilms.get(other))))
+                    .sorted(NEIGHBOUR_ORDER)
+                    .limit(neighbours)
+                    .collect(Collectors.toList());
+
+            Map<Integer, Double> scores = new HashMap<>();
+            for (Neighbour neighbour : nearest) {
+                BitSet unseen = (BitSet) userFilms.get(neighbour.getUserId()).clone();
+                unseen.andNot(liked);
+                unseen.stream().forEach(film -> scores.merge(film, neighbour.getSimilarity(), Double::sum));
+            }
+
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed()
+                            .thenComparing(Map.Entry.comparingByKey()))
+                    .limit(limit)
+                    .map(entry -> (long) entry.getKey())
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void put(long filmId, long userId) {
+        int film = Math.toIntExact(filmId);
+        int user = Math.toIntExact(userId);
+        userFilms.computeIfAbsent(user, id -> new BitSet()).set(film);
+        filmUsers.computeIfAbsent(film, id -> new BitSet()).set(user);
+    }
+
+    private static void clear(Map<Integer, BitSet> index, int key, int bit) {
+        BitSet bits = index.get(key);
+        if (bits != null) {
+            bits.clear(bit);
+            if (bits.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static double jaccard(BitSet first, BitSet second) {
+        BitSet intersection = (BitSet) first.clone();
+        intersection.and(second);
+        int common = intersection.cardinality();
+        int union = first.cardinality() + second.cardinality() - common;
+        return union == 0 ? 0 : (double) common / union;
+    }
+
+    @Value
+    private static class Neighbour {
+        int userId;
+        double similarity;
+    }
+}
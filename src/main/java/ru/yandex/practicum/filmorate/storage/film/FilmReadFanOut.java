@@ -0,0 +1,142 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.datasource.ConnectionHolder;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.metrics.StatementCounter;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Независимые части фильма (жанры, режиссеры, лайки) читаются одновременно на ограниченном пуле.
+// Потоков меньше, чем соединений в пуле Hikari, очередь ограничена, а при ее переполнении
+// задачу выполняет сам вызывающий поток - запрос становится последовательным, но не падает.
+@Slf4j
+class FilmReadFanOut {
+    private final FilmReadSettings settings;
+    private final DataSource dataSource;
+    private final ThreadPoolExecutor executor;
+
+    FilmReadFanOut(FilmReadSettings settings, DataSource dataSource) {
+        this.settings = settings;
+        this.dataSource = dataSource;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                settings.getThreads(),
+                settings.getThreads(),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(settings.getQueueCapacity()),
+                task -> {
+                    Thread thread = new Thread(task, "film-read-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    // Внутри транзакции части читаются последовательно: другие потоки берут свои соединения
+    // и не видят незафиксированных изменений транзакции
+    boolean isEnabled() {
+        return settings.isParallel() && !TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    // Операторы части попадают в счетчик вызывающего потока
+    <T> CompletableFuture<T> submit(Supplier<T> task) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getTimeoutMs());
+        return CompletableFuture.supplyAsync(StatementCounter.propagate(() -> withQueryTimeout(task, deadline)),
+                executor);
+    }
+
+    // Ждет все части не дольше timeoutMs. Первая ошибка или тайм-аут отменяет оставшиеся части,
+    // и вызывающий получает исходное исключение упавшей части.
+    void await(CompletableFuture<?>... parts) {
+        CompletableFuture<Void> all = CompletableFuture.allOf(parts);
+        for (CompletableFuture<?> part : parts) {
+            part.whenComplete((result, e) -> {
+                if (e != null) {
+                    all.completeExceptionally(e);
+                }
+            });
+        }
+        try {
+            all.get(settings.getTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            cancel(parts);
+            throw new QueryTimeoutException(
+                    String.format("Чтение фильма не уложилось в %d мс.", settings.getTimeoutMs()));
+        } catch (ExecutionException e) {
+            cancel(parts);
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            cancel(parts);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Чтение фильма прервано.", e);
+        }
+    }
+
+    void cancel(CompletableFuture<?>... parts) {
+        for (CompletableFuture<?> part : parts) {
+            part.cancel(false);
+        }
+    }
+
+    void close() {
+        executor.shutdown();
+    }
+
+    // Отмена future не останавливает уже выполняющийся запрос, поэтому часть читает через соединение
+    // с оставшимся до тайм-аута временем: JdbcTemplate выставляет его как тайм-аут каждого оператора,
+    // и БД сама прерывает запрос, который не уложился.
+    private <T> T withQueryTimeout(Supplier<T> task, long deadline) {
+        if (dataSource == null || TransactionSynchronizationManager.hasResource(dataSource)) {
+            return task.get();
+        }
+        long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remainingMs <= 0) {
+            throw new QueryTimeoutException(
+                    String.format("Чтение фильма не уложилось в %d мс.", settings.getTimeoutMs()));
+        }
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        ConnectionHolder holder = new ConnectionHolder(connection);
+        holder.setTimeoutInMillis(remainingMs);
+        TransactionSynchronizationManager.bindResource(dataSource, holder);
+        try {
+            return task.get();
+        } finally {
+            TransactionSynchronizationManager.unbindResource(dataSource);
+            resetQueryTimeout(connection);
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    // H2 хранит тайм-аут оператора в сессии, поэтому перед возвратом в пул он сбрасывается.
+    // Оператор создается на исходном соединении и не попадает в счетчики операторов.
+    private static void resetQueryTimeout(Connection connection) {
+        try (Statement statement = connection.unwrap(Connection.class).createStatement()) {
+            statement.setQueryTimeout(0);
+        } catch (SQLException e) {
+            log.warn("Не удалось сбросить тайм-аут запроса соединения: {}", e.getMessage());
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable e) {
+        while (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new IllegalStateException("Не удалось прочитать фильм.", e);
+    }
+}
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "filmorate.film-read")
+public class FilmReadSettings {
+    private boolean parallel = true;
+    private int threads = 8;
+    private int queueCapacity = 256;
+    private long timeoutMs = 2000;
+}
@@ -0,0 +1,103 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.storage.search.NGramIndex;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Поисковый индекс фильмов: n-граммы названий и связь режиссер -> фильмы.
+// Имена режиссеров индексирует DirectorStorage, здесь по найденным id режиссеров выбираются фильмы.
+public class FilmSearchIndex {
+    private final NGramIndex titles = new NGramIndex();
+    private final Map<Long, Set<Long>> filmDirectors = new HashMap<>();
+    private final Map<Long, Set<Long>> directorFilms = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded;
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public void load(Map<Long, String> films, Map<Long, Set<Long>> directors) {
+        lock.writeLock().lock();
+        try {
+            titles.load(films);
+            filmDirectors.clear();
+            directorFilms.clear();
+            directors.forEach(this::link);
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void put(long filmId, String title, Collection<Long> directorIds) {
+        if (!loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            titles.put(filmId, title);
+            unlink(filmId);
+            link(filmId, new HashSet<>(directorIds));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long filmId) {
+        if (!loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            titles.remove(filmId);
+            unlink(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Set<Long> searchTitles(String query) {
+        return titles.search(query);
+    }
+
+    public Set<Long> getDirectorsFilms(Collection<Long> directorIds) {
+        lock.readLock().lock();
+        try {
+            Set<Long> films = new HashSet<>();
+            for (Long directorId : directorIds) {
+                films.addAll(directorFilms.getOrDefault(directorId, Set.of()));
+            }
+            return films;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void link(long filmId, Set<Long> directorIds) {
+        if (directorIds.isEmpty()) {
+            return;
+        }
+        filmDirectors.put(filmId, directorIds);
+        directorIds.forEach(directorId -> directorFilms.computeIfAbsent(directorId, id -> new HashSet<>())
+                .add(filmId));
+    }
+
+    private void unlink(long filmId) {
+        Set<Long> directorIds = filmDirectors.remove(filmId);
+        if (directorIds == null) {
+            return;
+        }
+        for (Long directorId : directorIds) {
+            Set<Long> films = directorFilms.get(directorId);
+            if (films != null) {
+                films.remove(filmId);
+                if (films.isEmpty()) {
+                    directorFilms.remove(directorId);
+                }
+            }
+        }
+    }
+}
@@ -1,23 +1,38 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LikeEvent;
+import ru.yandex.practicum.filmorate.model.enumarate.LikeEventResult;
 
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
     Film add(Film film);
 
+    List<Film> addAll(List<Film> films);
+
     Film update(Film film);
 
     Film get(long id);
 
-    Film addLike(long id, long userId);
+    Film getLean(long id);
+
+    long getLikesCount(long id);
+
+    boolean addLike(long id, long userId);
+
+    boolean removeLike(long id, long userId);
 
-    Film removeLike(long id, long userId);
+    List<LikeEventResult> applyLikes(List<LikeEvent> events, Consumer<List<LikeEvent>> appliedConsumer);
+
+    void removeUserLikes(long userId);
 
     List<Film> getAll();
 
+    List<Film> getPage(long afterId, int limit);
+
     List<Film> getFilmWithDirectorName(String name);
 
     List<Film> getFilmWithName(String name);
@@ -30,6 +45,8 @@ public interface FilmStorage {
 
     List<Film> getPopularFilm(int count, Long genreId, Integer year);
 
+    List<Film> getPopularFilmLean(int count, Long genreId, Integer year);
+
     void delete(long id);
 
     boolean notContainFilm(long id);
@@ -1,127 +1,464 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
-import ru.yandex.practicum.filmorate.model.ErrorResponse;
-import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.exception.FilmAttributeNotExistOnFilmCreationException;
+import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.model.enumarate.ChoosingSearch;
+import ru.yandex.practicum.filmorate.model.enumarate.LikeEventResult;
+import ru.yandex.practicum.filmorate.model.feed.FeedOperation;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MPAStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+// Хранилище фильмов в памяти для профиля in-memory.
+// Лайки лежат в конкурентных множествах, изменения одного фильма сериализуются полосатыми блокировками,
+// а популярные, рекомендации и поиск обслуживаются теми же индексами, что и в FilmDbStorage.
+@Profile("in-memory")
 @Component
 public class InMemoryFilmStorage implements FilmStorage {
-    private final Map<Long, Film> data;
-    private long currentId;
+    private static final int RECOMMENDATION_NEIGHBOURS = 10;
+    private static final int RECOMMENDATIONS_LIMIT = 100;
+    private static final int LOCK_STRIPES = 64;
 
-    public InMemoryFilmStorage() {
-        data = new HashMap<>();
-        currentId = 1;
+    private final GenreStorage genreStorage;
+    private final MPAStorage mpaStorage;
+    private final DirectorStorage directorStorage;
+    private final UserStorage userStorage;
+    private final ConcurrentNavigableMap<Long, Film> films = new ConcurrentSkipListMap<>();
+    private final Map<Long, Set<Long>> filmLikes = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> userLikes = new ConcurrentHashMap<>();
+    private final AtomicLong currentId = new AtomicLong();
+    private final Object[] filmLocks = IntStream.range(0, LOCK_STRIPES).mapToObj(i -> new Object()).toArray();
+    // Полосы пользователей берутся только внутри полосы фильма, поэтому порядок блокировок всегда один
+    private final Object[] userLocks = IntStream.range(0, LOCK_STRIPES).mapToObj(i -> new Object()).toArray();
+    // Пользователи, чьи лайки удалены перед удалением пользователя. id пользователей не переиспользуются.
+    private final Set<Long> removedUsers = ConcurrentHashMap.newKeySet();
+    private final FilmLeaderboard leaderboard = new FilmLeaderboard();
+    private final FilmLikeIndex likeIndex = new FilmLikeIndex();
+    private final FilmSearchIndex searchIndex = new FilmSearchIndex();
+
+    public InMemoryFilmStorage(GenreStorage genreStorage,
+                               MPAStorage mpaStorage,
+                               DirectorStorage directorStorage,
+                               UserStorage userStorage) {
+        this.genreStorage = genreStorage;
+        this.mpaStorage = mpaStorage;
+        this.directorStorage = directorStorage;
+        this.userStorage = userStorage;
+        leaderboard.load(Map.of(), Map.of(), Map.of());
+        likeIndex.load(Map.of());
+        searchIndex.load(Map.of(), Map.of());
     }
 
     @Override
     public Film add(Film film) {
-        film.setId(currentId++);
-        data.put(film.getId(), film);
-        return film;
+        long id = currentId.incrementAndGet();
+        Film savedFilm = build(id, film, toFilmGenres(film.getGenres()));
+        synchronized (lockFor(id)) {
+            films.put(id, savedFilm);
+            filmLikes.put(id, ConcurrentHashMap.newKeySet());
+            putToIndexes(savedFilm);
+        }
+        return copy(savedFilm);
+    }
+
+    @Override
+    public List<Film> addAll(List<Film> films) {
+        return films.stream().map(this::add).collect(Collectors.toList());
     }
 
+    // Справочники, как и в add, проверяются до захвата блокировки: на промахе кэша это запросы к БД
     @Override
     public Film update(Film film) {
         long id = film.getId();
-        if (this.notContainFilm(id)) {
-            throw new EntityNotFoundException(
-                    new ErrorResponse("Film id", String.format("Не найден фильм с ID: %d.", id))
-            );
+        if (notContainFilm(id)) {
+            throw filmNotFound(id);
+        }
+        List<Genre> genres = film.getGenres() == null ? null : toFilmGenres(film.getGenres());
+        Film savedFilm = build(id, film, genres == null ? List.of() : genres);
+        synchronized (lockFor(id)) {
+            Film current = films.get(id);
+            if (current == null) {
+                throw filmNotFound(id);
+            }
+            // Как и в БД: без списка жанров жанры фильма не меняются
+            if (genres == null) {
+                savedFilm.setGenres(current.getGenres());
+            }
+            films.put(id, savedFilm);
+            putToIndexes(savedFilm);
+            return copy(savedFilm);
         }
-        data.put(id, film);
-        return film;
     }
 
     @Override
     public Film get(long id) {
-        if (this.notContainFilm(id)) {
-            throw new EntityNotFoundException(
-                    new ErrorResponse("Film id", String.format("Не найден фильм с ID: %d.", id))
-            );
+        Film film = films.get(id);
+        if (film == null) {
+            throw filmNotFound(id);
         }
-        return data.get(id);
+        return copy(film);
+    }
+
+    @Override
+    public Film getLean(long id) {
+        Film film = films.get(id);
+        if (film == null) {
+            throw filmNotFound(id);
+        }
+        return copy(film, false);
+    }
+
+    @Override
+    public long getLikesCount(long id) {
+        Set<Long> users = filmLikes.get(id);
+        if (users == null) {
+            throw filmNotFound(id);
+        }
+        return users.size();
     }
 
     @Override
     public void delete(long id) {
-        if (this.notContainFilm(id)) {
-            throw new EntityNotFoundException(
-                    new ErrorResponse("Film id", String.format("Не найден фильм с ID: %d.", id))
-            );
+        synchronized (lockFor(id)) {
+            if (films.remove(id) == null) {
+                throw filmNotFound(id);
+            }
+            Set<Long> users = filmLikes.remove(id);
+            if (users != null) {
+                users.forEach(userId -> userLikes.computeIfPresent(userId, (key, filmIds) -> {
+                    filmIds.remove(id);
+                    return filmIds.isEmpty() ? null : filmIds;
+                }));
+            }
+            leaderboard.remove(id);
+            likeIndex.removeFilm(id);
+            searchIndex.remove(id);
         }
-        data.remove(id);
     }
 
     @Override
     public List<Film> getAll() {
-        return new ArrayList<>(data.values());
+        return films.values().stream().map(this::copy).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Film> getPage(long afterId, int limit) {
+        return films.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .map(this::copy)
+                .collect(Collectors.toList());
     }
 
     @Override
     public List<Film> getFilmWithDirectorName(String name) {
-        return null;
+        return getByIds(leaderboard.rank(searchIndex.getDirectorsFilms(directorStorage.findIdsByName(name))));
     }
 
     @Override
-    public Film addLike(long id, long userId) {
-        Film film = this.get(id);
-        film.getLikes().add(userId);
-        return film;
+    public List<Film> getFilmWithName(String name) {
+        return getByIds(leaderboard.rank(searchIndex.searchTitles(name)));
     }
 
+    // Лайк сохраняется под блокировкой пользователя: removeUserLikes либо увидит его, либо лайк не будет сохранен
     @Override
-    public Film removeLike(long id, long userId) {
-        Film film = this.get(id);
-        film.getLikes().remove(userId);
-        return film;
+    public boolean addLike(long id, long userId) {
+        synchronized (lockFor(id)) {
+            synchronized (userLockFor(userId)) {
+                Set<Long> users = filmLikes.get(id);
+                if (users == null || removedUsers.contains(userId) || userStorage.notContainUser(userId)) {
+                    // Аналог нарушения внешнего ключа like_film: сервис сам определит, какой сущности нет
+                    throw new DataIntegrityViolationException(
+                            String.format("Лайк фильму с ID %d от пользователя с ID %d не сохранен.", id, userId));
+                }
+                if (!users.add(userId)) {
+                    return false;
+                }
+                userLikes.computeIfAbsent(userId, key -> ConcurrentHashMap.newKeySet()).add(id);
+                leaderboard.changeLikes(id, 1);
+                likeIndex.add(id, userId);
+                return true;
+            }
+        }
     }
 
     @Override
-    public Set<Long> getFilmLikes(long id) {
-        if (this.notContainFilm(id)) {
+    public boolean removeLike(long id, long userId) {
+        synchronized (lockFor(id)) {
+            Set<Long> users = filmLikes.get(id);
+            if (users == null || !users.remove(userId)) {
+                return false;
+            }
+            userLikes.computeIfPresent(userId, (key, filmIds) -> {
+                filmIds.remove(id);
+                return filmIds.isEmpty() ? null : filmIds;
+            });
+            leaderboard.changeLikes(id, -1);
+            likeIndex.remove(id, userId);
+            return true;
+        }
+    }
+
+    @Override
+    public List<LikeEventResult> applyLikes(List<LikeEvent> events, Consumer<List<LikeEvent>> appliedConsumer) {
+        List<LikeEventResult> results = new ArrayList<>(events.size());
+        List<LikeEvent> applied = new ArrayList<>();
+        for (LikeEvent event : events) {
+            long id = event.getFilmId();
+            long userId = event.getUserId();
+            if (notContainFilm(id)) {
+                results.add(LikeEventResult.FILM_NOT_FOUND);
+            } else if (userStorage.notContainUser(userId)) {
+                results.add(LikeEventResult.USER_NOT_FOUND);
+            } else if (event.getOperation() == FeedOperation.ADD) {
+                results.add(addLike(id, userId) ? LikeEventResult.ADDED : LikeEventResult.UNCHANGED);
+            } else {
+                results.add(removeLike(id, userId) ? LikeEventResult.REMOVED : LikeEventResult.UNCHANGED);
+            }
+            if (results.get(results.size() - 1) == LikeEventResult.ADDED
+                    || results.get(results.size() - 1) == LikeEventResult.REMOVED) {
+                applied.add(event);
+            }
+        }
+        appliedConsumer.accept(applied);
+        return results;
+    }
+
+    // Вызывается перед удалением пользователя: после отметки новые лайки пользователя не сохраняются,
+    // а все уже сохраненные видны в userLikes
+    @Override
+    public void removeUserLikes(long userId) {
+        Set<Long> filmIds;
+        synchronized (userLockFor(userId)) {
+            removedUsers.add(userId);
+            filmIds = new HashSet<>(userLikes.getOrDefault(userId, Set.of()));
+        }
+        for (long filmId : filmIds) {
+            removeLike(filmId, userId);
+        }
+        userLikes.remove(userId);
+        likeIndex.removeUser(userId);
+    }
+
+    @Override
+    public List<Film> getDirectorSortedFilms(Long directorId, String sortBy) {
+        if (directorId != null && directorStorage.notContainDirector(directorId)) {
             throw new EntityNotFoundException(
-                    new ErrorResponse("Film id", String.format("Не найден фильм с ID: %d.", id))
+                    new ErrorResponse("Director id", String.format("Не найден режиссер с ID: %d.", directorId))
             );
         }
-        return data.get(id).getLikes();
+        // Как и в БД, без id режиссера фильмов нет
+        if (directorId == null) {
+            return new ArrayList<>();
+        }
+        Set<Long> filmIds = searchIndex.getDirectorsFilms(Set.of(directorId));
+        if (!"year".equals(sortBy)) {
+            return getByIds(leaderboard.rank(filmIds));
+        }
+        return filmIds.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparing(Film::getReleaseDate).thenComparingLong(Film::getId))
+                .map(this::copy)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Set<Long> getFilmLikes(long id) {
+        Set<Long> users = filmLikes.get(id);
+        if (users == null) {
+            throw filmNotFound(id);
+        }
+        return new HashSet<>(users);
     }
 
     @Override
     public List<Film> getCommonFilms(long id1, long id2) {
-        return List.of();
+        Set<Long> first = userLikes.getOrDefault(id1, Set.of());
+        Set<Long> second = userLikes.getOrDefault(id2, Set.of());
+        if (first.size() > second.size()) {
+            Set<Long> swap = first;
+            first = second;
+            second = swap;
+        }
+        Set<Long> common = new HashSet<>();
+        for (long filmId : first) {
+            if (second.contains(filmId)) {
+                common.add(filmId);
+            }
+        }
+        return getByIds(leaderboard.rank(common));
+    }
+
+    @Override
+    public List<Film> getPopularFilm(int count, Long genreId, Integer year) {
+        return getByIds(leaderboard.getTop(count, genreId, year));
+    }
+
+    @Override
+    public List<Film> getPopularFilmLean(int count, Long genreId, Integer year) {
+        return getByIds(leaderboard.getTop(count, genreId, year), false);
     }
 
     @Override
     public boolean notContainFilm(long id) {
-        return !data.containsKey(id);
+        return !films.containsKey(id);
     }
 
     @Override
     public List<Film> getRecommendations(Long id) {
-        return List.of();
+        return getByIds(likeIndex.recommend(id, RECOMMENDATION_NEIGHBOURS, RECOMMENDATIONS_LIMIT));
     }
 
     @Override
     public List<Film> search(String query, List<String> by) {
-        return null;
+        boolean byTitle = by.contains(String.valueOf(ChoosingSearch.title));
+        boolean byDirector = by.contains(String.valueOf(ChoosingSearch.director));
+        if (!byTitle && !byDirector) {
+            return getByIds(leaderboard.getTop(Integer.MAX_VALUE, null, null));
+        }
+
+        Set<Long> filmIds = new HashSet<>();
+        if (byTitle) {
+            filmIds.addAll(searchIndex.searchTitles(query));
+        }
+        if (byDirector) {
+            filmIds.addAll(searchIndex.getDirectorsFilms(directorStorage.findIdsByName(query)));
+        }
+        return getByIds(leaderboard.rank(filmIds));
     }
 
-    @Override
-    public List<Film> getFilmWithName(String name) {
-        return Collections.emptyList();
+    private List<Film> getByIds(List<Long> ids) {
+        return getByIds(ids, true);
     }
 
-    @Override
-    public List<Film> getDirectorSortedFilms(Long id, String sortBy) {
-        return new ArrayList<>();
+    private List<Film> getByIds(List<Long> ids, boolean withLikes) {
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .map(film -> copy(film, withLikes))
+                .collect(Collectors.toList());
     }
 
-    @Override
-    public List<Film> getPopularFilm(int count, Long genreId, Integer year) {
-        return new ArrayList<>();
+    // Хранимый фильм: справочные поля уже проверены, режиссеры хранятся только по id
+    private Film build(long id, Film film, List<Genre> genres) {
+        if (film.getMpa() == null || mpaStorage.notContainMPA(film.getMpa().getId())) {
+            long mpaId = film.getMpa() == null ? 0 : film.getMpa().getId();
+            throw new FilmAttributeNotExistOnFilmCreationException(
+                    new ErrorResponse("MPA id", String.format("Не найден MPA с ID: %d.", mpaId))
+            );
+        }
+        List<Director> directors = new ArrayList<>();
+        if (film.getDirectors() != null) {
+            film.getDirectors().stream()
+                    .map(Director::getId)
+                    .distinct()
+                    .sorted()
+                    .forEach(directorId -> {
+                        if (directorStorage.notContainDirector(directorId)) {
+                            throw new FilmAttributeNotExistOnFilmCreationException(new ErrorResponse(
+                                    "Director id", String.format("Не найден режиссер с ID: %d.", directorId)));
+                        }
+                        directors.add(Director.builder().id(directorId).build());
+                    });
+        }
+        return Film.builder()
+                .id(id)
+                .name(film.getName())
+                .description(film.getDescription())
+                .releaseDate(film.getReleaseDate())
+                .duration(film.getDuration())
+                .mpa(mpaStorage.get(film.getMpa().getId()))
+                .genres(List.copyOf(genres))
+                .directors(List.copyOf(directors))
+                .build();
+    }
+
+    private Film copy(Film film) {
+        return copy(film, true);
+    }
+
+    // Копия для выдачи наружу: актуальные имена режиссеров и снимок лайков либо только их число
+    private Film copy(Film film, boolean withLikes) {
+        Set<Long> likes = filmLikes.getOrDefault(film.getId(), Set.of());
+        List<Director> directors = new ArrayList<>();
+        for (Director director : film.getDirectors()) {
+            try {
+                directors.add(directorStorage.get(director.getId()));
+            } catch (EntityNotFoundException e) {
+                // Режиссер удален после сохранения фильма
+            }
+        }
+        return Film.builder()
+                .id(film.getId())
+                .name(film.getName())
+                .description(film.getDescription())
+                .releaseDate(film.getReleaseDate())
+                .duration(film.getDuration())
+                .mpa(film.getMpa())
+                .genres(new ArrayList<>(film.getGenres()))
+                .directors(directors)
+                .likes(withLikes ? new HashSet<>(likes) : null)
+                .likesCount(withLikes ? null : (long) likes.size())
+                .build();
+    }
+
+    private List<Genre> toFilmGenres(List<Genre> genres) {
+        List<Genre> result = new ArrayList<>();
+        if (genres != null) {
+            genres.stream()
+                    .map(Genre::getId)
+                    .distinct()
+                    .sorted()
+                    .forEach(genreId -> {
+                        if (genreStorage.notContainGenre(genreId)) {
+                            throw new FilmAttributeNotExistOnFilmCreationException(
+                                    new ErrorResponse("Genre id", String.format("Не найден жанр с ID: %d.", genreId))
+                            );
+                        }
+                        result.add(genreStorage.get(genreId));
+                    });
+        }
+        return result;
+    }
+
+    private void putToIndexes(Film film) {
+        leaderboard.put(
+                film.getId(),
+                film.getReleaseDate() == null ? null : film.getReleaseDate().getYear(),
+                film.getGenres().stream().map(Genre::getId).collect(Collectors.toSet())
+        );
+        searchIndex.put(
+                film.getId(),
+                film.getName(),
+                film.getDirectors().stream().map(Director::getId).collect(Collectors.toSet())
+        );
+    }
+
+    private Object lockFor(long id) {
+        return filmLocks[(int) Math.floorMod(id, (long) LOCK_STRIPES)];
+    }
+
+    private Object userLockFor(long userId) {
+        return userLocks[(int) Math.floorMod(userId, (long) LOCK_STRIPES)];
+    }
+
+    private EntityNotFoundException filmNotFound(long id) {
+        return new EntityNotFoundException(
+                new ErrorResponse("Film id", String.format("Не найден фильм с ID: %d.", id))
+        );
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.Value;
+
+// Пара фильм-пользователь для лайков в пакетной обработке
+@Value
+class LikeKey {
+    long filmId;
+    long userId;
+}
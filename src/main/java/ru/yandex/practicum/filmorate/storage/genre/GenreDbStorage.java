@@ -2,41 +2,45 @@ package ru.yandex.practicum.filmorate.storage.genre;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
 import ru.yandex.practicum.filmorate.exception.FilmAttributeNotExistOnFilmCreationException;
 import ru.yandex.practicum.filmorate.model.ErrorResponse;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStats;
+import ru.yandex.practicum.filmorate.storage.cache.LruCache;
+import ru.yandex.practicum.filmorate.storage.cache.Warmable;
 
 import javax.transaction.Transactional;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.sql.PreparedStatement;
+import java.util.*;
 import java.util.stream.Collectors;
 
 @Component
 @RequiredArgsConstructor
-public class GenreDbStorage implements GenreStorage {
+public class GenreDbStorage implements GenreStorage, Warmable {
+    private static final int CACHE_SIZE = 1_000;
+
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final LruCache<Long, Genre> cache = new LruCache<>(CACHE_SIZE);
 
     @Override
     public Genre get(long id) {
-        if (this.notContainGenre(id)) {
-            throw new EntityNotFoundException(
-                    new ErrorResponse("Genre id", String.format("Не найден жанр с ID: %d.", id))
-            );
-        }
-        String sqlQuery = "SELECT * FROM genre WHERE genre_id = ?";
-        return jdbcTemplate.queryForObject(sqlQuery, (rs, rowNum) ->
-                new Genre(id, rs.getString("name")), id);
+        return find(id).orElseThrow(() -> new EntityNotFoundException(
+                new ErrorResponse("Genre id", String.format("Не найден жанр с ID: %d.", id))
+        ));
     }
 
     @Override
     public List<Genre> getAll() {
         String sqlQuery = "SELECT * FROM genre";
-        return jdbcTemplate.query(sqlQuery, (rs, rowNum) ->
+        List<Genre> genres = jdbcTemplate.query(sqlQuery, (rs, rowNum) ->
                 new Genre(rs.getLong("genre_id"), rs.getString("name"))
         );
+        genres.forEach(genre -> cache.put(genre.getId(), copy(genre)));
+        return genres;
     }
 
     @Override
@@ -45,16 +49,37 @@ public class GenreDbStorage implements GenreStorage {
         return jdbcTemplate.query(sqlQuery, (rs, rowNum) -> this.get(rs.getLong("genre_id")), id);
     }
 
+    @Override
+    public Map<Long, List<Genre>> getFilmsGenres(Collection<Long> filmIds) {
+        Map<Long, List<Genre>> filmsGenres = new HashMap<>();
+        if (filmIds.isEmpty()) {
+            return filmsGenres;
+        }
+        String sqlQuery =
+                "SELECT fg.film_id, g.genre_id, g.name " +
+                        "FROM film_genre fg " +
+                        "JOIN genre g ON fg.genre_id = g.genre_id " +
+                        "WHERE fg.film_id = ANY(:ids) " +
+                        "ORDER BY fg.film_id, g.genre_id";
+        namedJdbcTemplate.query(sqlQuery, Map.of("ids", filmIds.toArray(new Long[0])), rs -> {
+            filmsGenres.computeIfAbsent(rs.getLong("film_id"), id -> new ArrayList<>())
+                    .add(new Genre(rs.getLong("genre_id"), rs.getString("name")));
+        });
+        return filmsGenres;
+    }
+
     @Override
     public List<Genre> addFilmGenres(long id, List<Genre> genres) {
         if (genres == null || genres.isEmpty()) {
             return genres;
         }
 
-        Set<Long> uniqFilmGenres = genres.stream().map(Genre::getId).collect(Collectors.toSet());
+        Set<Long> uniqFilmGenres = genres.stream()
+                .map(Genre::getId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
 
-        uniqFilmGenres.forEach(this::checkFilmGenreExist);
-        uniqFilmGenres.forEach(genreId -> this.add(id, genreId));
+        checkGenresExist(uniqFilmGenres);
+        insertFilmGenres(id, uniqFilmGenres);
         return genres;
     }
 
@@ -70,18 +95,23 @@ public class GenreDbStorage implements GenreStorage {
             return genres;
         }
 
+        Set<Long> newGenres = genres.stream().map(Genre::getId).collect(Collectors.toCollection(LinkedHashSet::new));
+        checkGenresExist(newGenres);
         Set<Long> currentGenres = new HashSet<>(this.getFilmGenresIds(id));
-        Set<Long> newGenres = genres.stream().map(Genre::getId).collect(Collectors.toSet());
 
-        newGenres.forEach(this::checkFilmGenreExist);
-
-        Set<Long> genresToRemove = new HashSet<>(currentGenres);
-        genresToRemove.removeAll(newGenres);
-        Set<Long> genresToAdd = new HashSet<>(newGenres);
-        genresToAdd.removeAll(currentGenres);
-
-        genresToRemove.forEach(genreId -> this.delete(id, genreId));
-        genresToAdd.forEach(genreId -> this.add(id, genreId));
+        // Неизмененные связи не трогаются, лишние удаляются одним запросом, новые вставляются одним пакетом
+        List<Long> genresToRemove = currentGenres.stream()
+                .filter(genreId -> !newGenres.contains(genreId))
+                .collect(Collectors.toList());
+        List<Long> genresToAdd = newGenres.stream()
+                .filter(genreId -> !currentGenres.contains(genreId))
+                .collect(Collectors.toList());
+
+        if (!genresToRemove.isEmpty()) {
+            String sqlQuery = "DELETE FROM film_genre WHERE film_id = ? AND genre_id = ANY(?)";
+            jdbcTemplate.update(sqlQuery, id, genresToRemove.toArray(new Long[0]));
+        }
+        insertFilmGenres(id, genresToAdd);
 
         return genres;
     }
@@ -104,11 +134,64 @@ public class GenreDbStorage implements GenreStorage {
         jdbcTemplate.update(sqlQuery, filmId);
     }
 
+    @Override
+    public void warmUp() {
+        getAll();
+    }
+
+    public CacheStats getCacheStats() {
+        return cache.getStats();
+    }
+
     @Override
     public boolean notContainGenre(long id) {
-        String sqlQuery = "SELECT COUNT(*) FROM genre WHERE genre_id = ?";
-        Integer count = jdbcTemplate.queryForObject(sqlQuery, Integer.class, id);
-        return count != null && count == 0;
+        return find(id).isEmpty();
+    }
+
+    // Жанры, которых нет в кэше, проверяются одним запросом
+    @Override
+    public void checkGenresExist(Collection<Long> ids) {
+        Set<Long> missingIds = new LinkedHashSet<>();
+        for (Long id : ids) {
+            if (cache.get(id) == null) {
+                missingIds.add(id);
+            }
+        }
+        if (missingIds.isEmpty()) {
+            return;
+        }
+        String sqlQuery = "SELECT genre_id, name FROM genre WHERE genre_id = ANY(:ids)";
+        namedJdbcTemplate.query(sqlQuery, Map.of("ids", missingIds.toArray(new Long[0])), rs -> {
+            Genre genre = new Genre(rs.getLong("genre_id"), rs.getString("name"));
+            cache.put(genre.getId(), genre);
+            missingIds.remove(genre.getId());
+        });
+        if (!missingIds.isEmpty()) {
+            throw new FilmAttributeNotExistOnFilmCreationException(
+                    new ErrorResponse("Genre id",
+                            String.format("Не найден жанр с ID: %d.", missingIds.iterator().next()))
+            );
+        }
+    }
+
+    private Optional<Genre> find(long id) {
+        Genre genre = cache.get(id);
+        if (genre == null) {
+            String sqlQuery = "SELECT * FROM genre WHERE genre_id = ?";
+            List<Genre> genres = jdbcTemplate.query(sqlQuery, (rs, rowNum) ->
+                    new Genre(id, rs.getString("name")), id);
+            if (genres.isEmpty()) {
+                return Optional.empty();
+            }
+            genre = genres.get(0);
+            cache.put(id, genre);
+        }
+        return Optional.of(copy(genre));
+    }
+
+    // Как и кэш режиссеров, кэш отдает копии, чтобы вызывающий не мог изменить общий экземпляр
+    private Genre copy(Genre genre) {
+        return new Genre(genre.getId(), genre.getName());
     }
 
     private List<Long> getFilmGenresIds(long id) {
@@ -116,11 +199,15 @@ public class GenreDbStorage implements GenreStorage {
         return jdbcTemplate.query(sqlQuery, (rs, rowNum) -> rs.getLong("genre_id"), id);
     }
 
-    private void checkFilmGenreExist(long id) {
-        if (notContainGenre(id)) {
-            throw new FilmAttributeNotExistOnFilmCreationException(
-                    new ErrorResponse("Genre id", String.format("Не найден жанр с ID: %d.", id))
-            );
+    private void insertFilmGenres(long filmId, Collection<Long> genreIds) {
+        if (genreIds.isEmpty()) {
+            return;
         }
+        String sqlQuery = "INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?)";
+        jdbcTemplate.batchUpdate(sqlQuery, new ArrayList<>(genreIds), genreIds.size(),
+                (PreparedStatement ps, Long genreId) -> {
+                    ps.setLong(1, filmId);
+                    ps.setLong(2, genreId);
+                });
     }
 }
\ No newline at end of file
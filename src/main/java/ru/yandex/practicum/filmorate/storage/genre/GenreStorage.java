@@ -2,7 +2,9 @@ package ru.yandex.practicum.filmorate.storage.genre;
 
 import ru.yandex.practicum.filmorate.model.Genre;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface GenreStorage {
     Genre get(long id);
@@ -11,6 +13,8 @@ public interface GenreStorage {
 
     List<Genre> getFilmGenres(long id);
 
+    Map<Long, List<Genre>> getFilmsGenres(Collection<Long> filmIds);
+
     List<Genre> addFilmGenres(long id, List<Genre> genres);
 
     List<Genre> updateFilmGenres(long id, List<Genre> genres);
@@ -22,4 +26,6 @@ public interface GenreStorage {
     void delete(long filmId);
 
     boolean notContainGenre(long id);
+
+    void checkGenresExist(Collection<Long> ids);
 }
\ No newline at end of file
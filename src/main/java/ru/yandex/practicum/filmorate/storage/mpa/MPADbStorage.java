@@ -2,41 +2,97 @@ package ru.yandex.practicum.filmorate.storage.mpa;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
 import ru.yandex.practicum.filmorate.model.ErrorResponse;
 import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.storage.cache.CacheStats;
+import ru.yandex.practicum.filmorate.storage.cache.LruCache;
+import ru.yandex.practicum.filmorate.storage.cache.Warmable;
 
-import java.util.List;
+import java.util.*;
 
 @Component
 @RequiredArgsConstructor
-public class MPADbStorage implements MPAStorage {
+public class MPADbStorage implements MPAStorage, Warmable {
+    private static final int CACHE_SIZE = 100;
+
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final LruCache<Long, MPA> cache = new LruCache<>(CACHE_SIZE);
 
     @Override
     public MPA get(long id) {
-        if (this.notContainMPA(id)) {
-            throw new EntityNotFoundException(
-                    new ErrorResponse("MPA id", String.format("Не найден рейтиг с ID: %d.", id))
-            );
-        }
-        String sqlQuery = "SELECT * FROM mpa_rating WHERE rating_id = ?";
-        return jdbcTemplate.queryForObject(sqlQuery, (rs, rowNum) -> new MPA(id, rs.getString("name")), id);
+        return find(id).orElseThrow(() -> new EntityNotFoundException(
+                new ErrorResponse("MPA id", String.format("Не найден рейтиг с ID: %d.", id))
+        ));
     }
 
     @Override
     public List<MPA> getAll() {
         String sqlQuery = "SELECT * FROM mpa_rating";
-        return jdbcTemplate.query(sqlQuery, (rs, rowNum) ->
+        List<MPA> ratings = jdbcTemplate.query(sqlQuery, (rs, rowNum) ->
                 new MPA(rs.getLong("rating_id"), rs.getString("name"))
         );
+        ratings.forEach(mpa -> cache.put(mpa.getId(), copy(mpa)));
+        return ratings;
+    }
+
+    @Override
+    public Map<Long, MPA> getByIds(Collection<Long> ids) {
+        Map<Long, MPA> ratings = new HashMap<>();
+        Set<Long> missingIds = new HashSet<>();
+        for (Long id : ids) {
+            MPA mpa = cache.get(id);
+            if (mpa != null) {
+                ratings.put(id, copy(mpa));
+            } else {
+                missingIds.add(id);
+            }
+        }
+        if (missingIds.isEmpty()) {
+            return ratings;
+        }
+        String sqlQuery = "SELECT * FROM mpa_rating WHERE rating_id = ANY(:ids)";
+        namedJdbcTemplate.query(sqlQuery, Map.of("ids", missingIds.toArray(new Long[0])), rs -> {
+            MPA mpa = new MPA(rs.getLong("rating_id"), rs.getString("name"));
+            cache.put(mpa.getId(), copy(mpa));
+            ratings.put(mpa.getId(), mpa);
+        });
+        return ratings;
+    }
+
+    @Override
+    public void warmUp() {
+        getAll();
+    }
+
+    public CacheStats getCacheStats() {
+        return cache.getStats();
     }
 
     @Override
     public boolean notContainMPA(long id) {
-        String sqlQuery = "SELECT COUNT(*) FROM mpa_rating WHERE rating_id = ?";
-        Integer count = jdbcTemplate.queryForObject(sqlQuery, Integer.class, id);
-        return count != null && count == 0;
+        return find(id).isEmpty();
+    }
+
+    private Optional<MPA> find(long id) {
+        MPA mpa = cache.get(id);
+        if (mpa == null) {
+            String sqlQuery = "SELECT * FROM mpa_rating WHERE rating_id = ?";
+            List<MPA> ratings = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> new MPA(id, rs.getString("name")), id);
+            if (ratings.isEmpty()) {
+                return Optional.empty();
+            }
+            mpa = ratings.get(0);
+            cache.put(id, mpa);
+        }
+        return Optional.of(copy(mpa));
+    }
+
+    // Как и кэш режиссеров, кэш отдает копии, чтобы вызывающий не мог изменить общий экземпляр
+    private MPA copy(MPA mpa) {
+        return new MPA(mpa.getId(), mpa.getName());
     }
 }
\ No newline at end of file
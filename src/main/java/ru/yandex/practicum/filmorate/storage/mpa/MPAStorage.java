@@ -2,12 +2,16 @@ package ru.yandex.practicum.filmorate.storage.mpa;
 
 import ru.yandex.practicum.filmorate.model.MPA;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface MPAStorage {
     MPA get(long id);
 
     List<MPA> getAll();
 
+    Map<Long, MPA> getByIds(Collection<Long> ids);
+
     boolean notContainMPA(long id);
 }
@@ -0,0 +1,182 @@
+package ru.yandex.practicum.filmorate.storage.review;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Отзывы в памяти для профиля in-memory. Оценки отзыва и его useful меняются под полосатой блокировкой отзыва.
+@Profile("in-memory")
+@Component
+public class InMemoryReviewStorage implements ReviewStorage {
+    private static final int LOCK_STRIPES = 64;
+    private static final Comparator<Review> BY_USEFUL =
+            Comparator.comparingLong(Review::getUseful).reversed().thenComparingLong(Review::getId);
+
+    private final UserStorage userStorage;
+    private final FilmStorage filmStorage;
+    private final ConcurrentNavigableMap<Long, Review> reviews = new ConcurrentSkipListMap<>();
+    // review_id -> (user_id -> usefull)
+    private final Map<Long, Map<Long, Boolean>> votes = new ConcurrentHashMap<>();
+    private final AtomicLong currentId = new AtomicLong();
+    private final Object[] reviewLocks = IntStream.range(0, LOCK_STRIPES).mapToObj(i -> new Object()).toArray();
+
+    public InMemoryReviewStorage(UserStorage userStorage, FilmStorage filmStorage) {
+        this.userStorage = userStorage;
+        this.filmStorage = filmStorage;
+    }
+
+    @Override
+    public Optional<Review> add(Review review) {
+        if (userStorage.notContainUser(review.getUserId()) || filmStorage.notContainFilm(review.getFilmId())) {
+            // Как и в ReviewDbStorage, отзыв не сохраняется: сервис сам определит, какой сущности нет
+            return Optional.empty();
+        }
+        long id = currentId.incrementAndGet();
+        Review savedReview = Review.builder()
+                .id(id)
+                .content(review.getContent())
+                .userId(review.getUserId())
+                .filmId(review.getFilmId())
+                .isPositive(review.getIsPositive())
+                .useful(0L)
+                .build();
+        reviews.put(id, savedReview);
+        return Optional.of(copy(savedReview));
+    }
+
+    @Override
+    public Optional<Review> update(Review review) {
+        long id = review.getId();
+        synchronized (lockFor(id)) {
+            Review current = reviews.get(id);
+            if (current == null) {
+                return Optional.empty();
+            }
+            Review savedReview = copy(current);
+            savedReview.setContent(review.getContent());
+            savedReview.setIsPositive(review.getIsPositive());
+            reviews.put(id, savedReview);
+            return Optional.of(copy(savedReview));
+        }
+    }
+
+    @Override
+    public Optional<Review> getReview(long id) {
+        return Optional.ofNullable(reviews.get(id)).map(this::copy);
+    }
+
+    @Override
+    public List<Review> getAllReviews(int count) {
+        return top(reviews.values(), count);
+    }
+
+    @Override
+    public List<Review> getFilmReviews(long filmId, int count) {
+        return top(reviews.values().stream()
+                .filter(review -> review.getFilmId() == filmId)
+                .collect(Collectors.toList()), count);
+    }
+
+    @Override
+    public Optional<Review> delete(long id) {
+        synchronized (lockFor(id)) {
+            votes.remove(id);
+            return Optional.ofNullable(reviews.remove(id)).map(this::copy);
+        }
+    }
+
+    @Override
+    public void addLike(long id, long userId) {
+        vote(id, userId, true);
+    }
+
+    @Override
+    public void addDislike(long id, long userId) {
+        vote(id, userId, false);
+    }
+
+    @Override
+    public boolean removeLike(long id, long userId) {
+        return removeVote(id, userId);
+    }
+
+    @Override
+    public boolean removeDislike(long id, long userId) {
+        return removeVote(id, userId);
+    }
+
+    @Override
+    public boolean notContainReview(long reviewId) {
+        return !reviews.containsKey(reviewId);
+    }
+
+    private void vote(long id, long userId, boolean useful) {
+        synchronized (lockFor(id)) {
+            if (!reviews.containsKey(id) || userStorage.notContainUser(userId)) {
+                throw new DataIntegrityViolationException(
+                        String.format("Оценка отзыва с ID %d от пользователя с ID %d не сохранена.", id, userId));
+            }
+            Boolean previous = votes.computeIfAbsent(id, key -> new ConcurrentHashMap<>()).put(userId, useful);
+            changeUseful(id, voteWeight(useful) - (previous == null ? 0 : voteWeight(previous)));
+        }
+    }
+
+    private boolean removeVote(long id, long userId) {
+        synchronized (lockFor(id)) {
+            Boolean removed = votes.getOrDefault(id, Map.of()).remove(userId);
+            if (removed == null) {
+                return false;
+            }
+            changeUseful(id, -voteWeight(removed));
+            return true;
+        }
+    }
+
+    private void changeUseful(long id, int delta) {
+        if (delta != 0) {
+            reviews.computeIfPresent(id, (key, review) -> {
+                Review changed = copy(review);
+                changed.setUseful(review.getUseful() + delta);
+                return changed;
+            });
+        }
+    }
+
+    private static int voteWeight(boolean useful) {
+        return useful ? 1 : -1;
+    }
+
+    private List<Review> top(Collection<Review> source, int count) {
+        return source.stream()
+                .sorted(BY_USEFUL)
+                .limit(count)
+                .map(this::copy)
+                .collect(Collectors.toList());
+    }
+
+    private Review copy(Review review) {
+        return Review.builder()
+                .id(review.getId())
+                .content(review.getContent())
+                .userId(review.getUserId())
+                .filmId(review.getFilmId())
+                .isPositive(review.getIsPositive())
+                .useful(review.getUseful())
+                .build();
+    }
+
+    private Object lockFor(long id) {
+        return reviewLocks[(int) Math.floorMod(id, (long) LOCK_STRIPES)];
+    }
+}
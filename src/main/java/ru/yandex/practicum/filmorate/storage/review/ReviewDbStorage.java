@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.storage.review;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
@@ -9,6 +10,7 @@ import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.Review;
 
+import javax.transaction.Transactional;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -17,50 +19,71 @@ import java.util.Objects;
 import java.util.Optional;
 
 @RequiredArgsConstructor
+@Profile("!in-memory")
 @Component
 public class ReviewDbStorage implements ReviewStorage {
     private final JdbcTemplate jdbcTemplate;
 
     @Override
     public Optional<Review> add(Review review) {
+        // Строка вставляется только при существующих пользователе и фильме: отклоненная вставка
+        // не расходует значение identity, и id следующих отзывов не сдвигаются
         String sqlQuery =
                 "INSERT INTO review (content, user_id, film_id, is_positive) " +
-                        "VALUES (?, ?, ?, ?)";
+                        "SELECT ?, ?, ?, ? " +
+                        "WHERE EXISTS (SELECT 1 FROM user_data WHERE user_id = ?) " +
+                        "AND EXISTS (SELECT 1 FROM film WHERE film_id = ?)";
 
         KeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbcTemplate.update(connection -> {
+        int inserted = jdbcTemplate.update(connection -> {
             PreparedStatement stmt = connection.prepareStatement(sqlQuery, new String[]{"review_id"});
             stmt.setString(1, review.getContent());
             stmt.setLong(2, review.getUserId());
             stmt.setLong(3, review.getFilmId());
             stmt.setBoolean(4, review.getIsPositive());
+            stmt.setLong(5, review.getUserId());
+            stmt.setLong(6, review.getFilmId());
             return stmt;
         }, keyHolder);
+        if (inserted == 0) {
+            return Optional.empty();
+        }
 
         long id = Objects.requireNonNull(keyHolder.getKey()).longValue();
 
-        return getReview(id);
+        return Optional.of(Review.builder()
+                .id(id)
+                .content(review.getContent())
+                .userId(review.getUserId())
+                .filmId(review.getFilmId())
+                .isPositive(review.getIsPositive())
+                .useful(0L)
+                .build());
     }
 
     @Override
     public Optional<Review> update(Review review) {
         String sqlQuery =
                 "UPDATE review SET content = ?, is_positive = ? WHERE review_id = ?";
-        jdbcTemplate.update(sqlQuery,
+        int updated = jdbcTemplate.update(sqlQuery,
                 review.getContent(),
                 review.getIsPositive(),
                 review.getId());
+        if (updated == 0) {
+            return Optional.empty();
+        }
         return getReview(review.getId());
     }
 
     @Override
-    public Review delete(long id) {
+    public Optional<Review> delete(long id) {
         Optional<Review> reviewOptional = getReview(id);
 
-        String sqlQuery = "DELETE FROM review WHERE review_id = ?";
-        jdbcTemplate.update(sqlQuery, id);
-
-        return reviewOptional.orElse(null);
+        if (reviewOptional.isPresent()) {
+            String sqlQuery = "DELETE FROM review WHERE review_id = ?";
+            jdbcTemplate.update(sqlQuery, id);
+        }
+        return reviewOptional;
     }
 
     @Override
@@ -78,7 +101,7 @@ public class ReviewDbStorage implements ReviewStorage {
     @Override
     public List<Review> getAllReviews(int count) {
         String sqlQuery = getBaseCommand() +
-                "ORDER BY useful DESC " +
+                "ORDER BY useful DESC, review_id " +
                 "LIMIT ? ";
         return jdbcTemplate.query(sqlQuery, this::mapRowToReview, count);
     }
@@ -87,37 +110,33 @@ public class ReviewDbStorage implements ReviewStorage {
     public List<Review> getFilmReviews(long filmId, int count) {
         String sqlQuery = getBaseCommand() +
                 "WHERE film_id = ? " +
-                "ORDER BY useful DESC " +
+                "ORDER BY useful DESC, review_id " +
                 "LIMIT ? ";
         return jdbcTemplate.query(sqlQuery, this::mapRowToReview, filmId, count);
     }
 
     @Override
+    @Transactional
     public void addLike(long id, long userId) {
-        String sqlQuery =
-                "MERGE INTO like_review (user_id, review_id, usefull) VALUES (?, ?, true)";
-        jdbcTemplate.update(sqlQuery, userId, id);
+        vote(id, userId, true);
     }
 
     @Override
+    @Transactional
     public void addDislike(long id, long userId) {
-        String sqlQuery =
-                "MERGE INTO like_review (user_id, review_id, usefull) VALUES (?, ?, false)";
-        jdbcTemplate.update(sqlQuery, userId, id);
+        vote(id, userId, false);
     }
 
     @Override
-    public void removeLike(long id, long userId) {
-        String sqlQuery =
-                "DELETE FROM like_review WHERE user_id = ? AND review_id = ?";
-        jdbcTemplate.update(sqlQuery, userId, id);
+    @Transactional
+    public boolean removeLike(long id, long userId) {
+        return removeVote(id, userId);
     }
 
     @Override
-    public void removeDislike(long id, long userId) {
-        String sqlQuery =
-                "DELETE FROM like_review WHERE user_id = ? AND review_id = ?";
-        jdbcTemplate.update(sqlQuery, userId, id);
+    @Transactional
+    public boolean removeDislike(long id, long userId) {
+        return removeVote(id, userId);
     }
 
     @Override
@@ -127,15 +146,40 @@ public class ReviewDbStorage implements ReviewStorage {
         return !rows.next();
     }
 
+    // OLD TABLE возвращает прежнюю оценку, поэтому смена лайка на дизлайк меняет useful на 2 одним запросом
+    private void vote(long id, long userId, boolean useful) {
+        String sqlQuery = "SELECT usefull FROM OLD TABLE ( " +
+                "MERGE INTO like_review (user_id, review_id, usefull) KEY (user_id, review_id) VALUES (?, ?, ?))";
+        List<Boolean> previous = jdbcTemplate.queryForList(sqlQuery, Boolean.class, userId, id, useful);
+
+        int delta = voteWeight(useful) - (previous.isEmpty() ? 0 : voteWeight(previous.get(0)));
+        changeUseful(id, delta);
+    }
+
+    private boolean removeVote(long id, long userId) {
+        String sqlQuery = "SELECT usefull FROM OLD TABLE ( " +
+                "DELETE FROM like_review WHERE user_id = ? AND review_id = ?)";
+        List<Boolean> removed = jdbcTemplate.queryForList(sqlQuery, Boolean.class, userId, id);
+        if (removed.isEmpty()) {
+            return false;
+        }
+        changeUseful(id, -voteWeight(removed.get(0)));
+        return true;
+    }
+
+    private void changeUseful(long id, int delta) {
+        if (delta != 0) {
+            jdbcTemplate.update("UPDATE review SET useful = useful + ? WHERE review_id = ?", delta, id);
+        }
+    }
+
+    private static int voteWeight(boolean useful) {
+        return useful ? 1 : -1;
+    }
+
     private String getBaseCommand() {
-        return
-                "SELECT \n " +
-                "  review_id, content, user_id, film_id, is_positive, \n " +
-                "  IFNULL((SELECT sum(CASE usefull WHEN true THEN 1 ELSE -1 END) \n " +
-                "          FROM like_review \n " +
-                "          WHERE review_id = r.review_id), \n " +
-                        " 0) AS useful \n " +
-                "FROM review as r \n ";
+        return "SELECT review_id, content, user_id, film_id, is_positive, useful " +
+                "FROM review ";
     }
 
     private Review mapRowToReview(ResultSet rs, int rowNum) throws SQLException {
@@ -17,15 +17,15 @@ public interface ReviewStorage {
 
     List<Review> getFilmReviews(long filmId, int count);
 
-    Review delete(long id);
+    Optional<Review> delete(long id);
 
     void addLike(long id, long userId);
 
     void addDislike(long id, long userId);
 
-    void removeLike(long id, long userId);
+    boolean removeLike(long id, long userId);
 
-    void removeDislike(long id, long userId);
+    boolean removeDislike(long id, long userId);
 
     boolean notContainReview(long reviewId);
 }
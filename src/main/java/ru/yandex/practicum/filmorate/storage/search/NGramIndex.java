@@ -0,0 +1,127 @@
+package ru.yandex.practicum.filmorate.storage.search;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Инвертированный индекс по триграммам строк без учета регистра.
+// Кандидаты берутся из самого короткого списка триграмм запроса и проверяются по подстроке,
+// поэтому результат совпадает с LOWER(text) LIKE '%query%'.
+public class NGramIndex {
+    private static final int N = 3;
+
+    private final Map<Long, String> texts = new HashMap<>();
+    private final Map<String, Set<Long>> postings = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded;
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public void load(Map<Long, String> values) {
+        lock.writeLock().lock();
+        try {
+            texts.clear();
+            postings.clear();
+            values.forEach(this::add);
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void put(long id, String text) {
+        if (!loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            delete(id);
+            add(id, text);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        if (!loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            delete(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Set<Long> search(String query) {
+        String normalized = normalize(query);
+        lock.readLock().lock();
+        try {
+            if (normalized.length() < N) {
+                return scan(texts.keySet(), normalized);
+            }
+            Set<Long> candidates = null;
+            for (String gram : grams(normalized)) {
+                Set<Long> ids = postings.get(gram);
+                if (ids == null) {
+                    return new HashSet<>();
+                }
+                if (candidates == null || ids.size() < candidates.size()) {
+                    candidates = ids;
+                }
+            }
+            return scan(candidates, normalized);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Set<Long> scan(Collection<Long> ids, String normalized) {
+        Set<Long> result = new HashSet<>();
+        for (Long id : ids) {
+            if (texts.get(id).contains(normalized)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    private void add(long id, String text) {
+        String normalized = normalize(text);
+        texts.put(id, normalized);
+        for (String gram : grams(normalized)) {
+            postings.computeIfAbsent(gram, g -> new HashSet<>()).add(id);
+        }
+    }
+
+    private void delete(long id) {
+        String old = texts.remove(id);
+        if (old == null) {
+            return;
+        }
+        for (String gram : grams(old)) {
+            Set<Long> ids = postings.get(gram);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    private static Set<String> grams(String normalized) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + N <= normalized.length(); i++) {
+            grams.add(normalized.substring(i, i + N));
+        }
+        return grams;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,229 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import lombok.Value;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Граф дружбы в памяти, построенный по таблице follow.
+// Строка (target, follower, approved) делает follower другом target, а target другом follower - только при approved.
+// Для каждой пары хранится состояние обеих возможных строк, из него выводятся списки друзей -
+// отсортированные long[], которые не изменяются на месте, а заменяются копией.
+public class FriendGraph {
+    private static final long[] EMPTY = new long[0];
+
+    // Биты состояния пары (first < second): строка (first, second) и строка (second, first)
+    private static final int FORWARD = 1;
+    private static final int FORWARD_APPROVED = 2;
+    private static final int BACKWARD = 4;
+    private static final int BACKWARD_APPROVED = 8;
+
+    private final Map<PairKey, Integer> pairs = new HashMap<>();
+    private final Map<Long, long[]> friends = new HashMap<>();
+    // Все пользователи, с которыми у пользователя есть строки в follow, - для удаления пользователя
+    private final Map<Long, long[]> partners = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded;
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public void load(Collection<Follow> follows) {
+        lock.writeLock().lock();
+        try {
+            pairs.clear();
+            friends.clear();
+            partners.clear();
+            follows.forEach(follow -> putRowLocked(follow.getTargetId(), follow.getFollowerId(), follow.isApproved()));
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putRow(long targetId, long followerId, boolean approved) {
+        if (!loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            putRowLocked(targetId, followerId, approved);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeRow(long targetId, long followerId) {
+        if (!loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            long first = Math.min(targetId, followerId);
+            long second = Math.max(targetId, followerId);
+            int state = pairs.getOrDefault(key(first, second), 0);
+            setState(first, second, state & ~rowBits(targetId, followerId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeUser(long userId) {
+        if (!loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (long partner : partners.getOrDefault(userId, EMPTY)) {
+                pairs.remove(key(Math.min(userId, partner), Math.max(userId, partner)));
+                friends.computeIfPresent(partner, (id, ids) -> without(ids, userId));
+                partners.computeIfPresent(partner, (id, ids) -> without(ids, userId));
+            }
+            friends.remove(userId);
+            partners.remove(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long[] getFriends(long userId) {
+        lock.readLock().lock();
+        try {
+            return friends.getOrDefault(userId, EMPTY).clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getFriendsCount(long userId) {
+        lock.readLock().lock();
+        try {
+            return friends.getOrDefault(userId, EMPTY).length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Пересечение двух отсортированных списков слиянием
+    public long[] getCommonFriends(long userId, long otherId) {
+        lock.readLock().lock();
+        try {
+            long[] first = friends.getOrDefault(userId, EMPTY);
+            long[] second = friends.getOrDefault(otherId, EMPTY);
+            long[] common = new long[Math.min(first.length, second.length)];
+            int size = 0;
+            for (int i = 0, j = 0; i < first.length && j < second.length; ) {
+                if (first[i] < second[j]) {
+                    i++;
+                } else if (first[i] > second[j]) {
+                    j++;
+                } else {
+                    common[size++] = first[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(common, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void putRowLocked(long targetId, long followerId, boolean approved) {
+        long first = Math.min(targetId, followerId);
+        long second = Math.max(targetId, followerId);
+        boolean forward = targetId == first;
+        int state = pairs.getOrDefault(key(first, second), 0) & ~rowBits(targetId, followerId);
+        if (forward) {
+            state |= FORWARD | (approved ? FORWARD_APPROVED : 0);
+        } else {
+            state |= BACKWARD | (approved ? BACKWARD_APPROVED : 0);
+        }
+        setState(first, second, state);
+    }
+
+    private void setState(long first, long second, int state) {
+        PairKey key = key(first, second);
+        int previous = pairs.getOrDefault(key, 0);
+        if (state == 0) {
+            pairs.remove(key);
+        } else {
+            pairs.put(key, state);
+        }
+
+        if (previous == 0 && state != 0) {
+            partners.put(first, with(partners.getOrDefault(first, EMPTY), second));
+            partners.put(second, with(partners.getOrDefault(second, EMPTY), first));
+        } else if (previous != 0 && state == 0) {
+            partners.computeIfPresent(first, (id, ids) -> without(ids, second));
+            partners.computeIfPresent(second, (id, ids) -> without(ids, first));
+        }
+
+        // first дружит с second, если есть строка (first, second) или подтвержденная (second, first)
+        setEdge(first, second, (state & (FORWARD | BACKWARD_APPROVED)) != 0);
+        setEdge(second, first, (state & (BACKWARD | FORWARD_APPROVED)) != 0);
+    }
+
+    private void setEdge(long from, long to, boolean present) {
+        long[] ids = friends.getOrDefault(from, EMPTY);
+        long[] updated = present ? with(ids, to) : without(ids, to);
+        if (updated != ids) {
+            if (updated.length == 0) {
+                friends.remove(from);
+            } else {
+                friends.put(from, updated);
+            }
+        }
+    }
+
+    private static int rowBits(long targetId, long followerId) {
+        return targetId <= followerId ? FORWARD | FORWARD_APPROVED : BACKWARD | BACKWARD_APPROVED;
+    }
+
+    private static PairKey key(long first, long second) {
+        return new PairKey(first, second);
+    }
+
+    private static long[] with(long[] ids, long id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index >= 0) {
+            return ids;
+        }
+        int position = -index - 1;
+        long[] result = new long[ids.length + 1];
+        System.arraycopy(ids, 0, result, 0, position);
+        result[position] = id;
+        System.arraycopy(ids, position, result, position + 1, ids.length - position);
+        return result;
+    }
+
+    private static long[] without(long[] ids, long id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index < 0) {
+            return ids;
+        }
+        long[] result = new long[ids.length - 1];
+        System.arraycopy(ids, 0, result, 0, index);
+        System.arraycopy(ids, index + 1, result, index, ids.length - index - 1);
+        return result;
+    }
+
+    // Ключ пары составной: id пользователей не упаковываются в один long и не пересекаются при любых значениях
+    @Value
+    private static class PairKey {
+        long first;
+        long second;
+    }
+
+    @Value
+    public static class Follow {
+        long targetId;
+        long followerId;
+        boolean approved;
+    }
+}
@@ -1,118 +1,281 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
 import ru.yandex.practicum.filmorate.model.ErrorResponse;
 import ru.yandex.practicum.filmorate.model.User;
-import ru.yandex.practicum.filmorate.model.feed.FeedEntity;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+// Хранилище пользователей в памяти для профиля in-memory.
+// Строки follow хранятся так же, как в таблице, а списки друзей выдает тот же FriendGraph, что и в UserDbStorage.
+// Операции берут полосатые блокировки всех затронутых пользователей в порядке номера полосы.
+@Profile("in-memory")
 @Component
 public class InMemoryUserStorage implements UserStorage {
-    private final Map<Long, User> data;
-    private long currentId;
+    private static final int LOCK_STRIPES = 64;
+
+    private final ConcurrentNavigableMap<Long, User> users = new ConcurrentSkipListMap<>();
+    // target_id -> (follower_id -> approved) и обратный индекс follower_id -> target_id
+    private final Map<Long, Map<Long, Boolean>> follows = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> followed = new ConcurrentHashMap<>();
+    private final FriendGraph friendGraph = new FriendGraph();
+    private final AtomicLong currentId = new AtomicLong();
+    private final ReentrantLock[] userLocks = IntStream.range(0, LOCK_STRIPES)
+            .mapToObj(i -> new ReentrantLock())
+            .toArray(ReentrantLock[]::new);
 
     public InMemoryUserStorage() {
-        data = new HashMap<>();
-        currentId = 1;
+        friendGraph.load(List.of());
     }
 
     @Override
     public User add(User user) {
-        user.setId(currentId++);
-        data.put(user.getId(), user);
-        return user;
+        long id = currentId.incrementAndGet();
+        User savedUser = assemble(id, user);
+        users.put(id, savedUser);
+        return copy(savedUser);
     }
 
     @Override
     public User update(User user) {
         long id = user.getId();
-
-        if (this.notContainUser(id)) {
-            throw new EntityNotFoundException(
-                    new ErrorResponse("User id", String.format("Не найден пользователь с ID: %d.", id))
-            );
+        List<ReentrantLock> locks = lockUsers(List.of(id));
+        try {
+            if (users.replace(id, assemble(id, user)) == null) {
+                throw userNotFound(id);
+            }
+            return copy(users.get(id));
+        } finally {
+            unlock(locks);
         }
-        data.put(id, user);
-        return user;
     }
 
     @Override
     public User get(long id) {
-        if (this.notContainUser(id)) {
-            throw new EntityNotFoundException(
-                    new ErrorResponse("User id", String.format("Не найден пользователь с ID: %d.", id))
-            );
+        User user = users.get(id);
+        if (user == null) {
+            throw userNotFound(id);
         }
-        return data.get(id);
+        return copy(user);
     }
 
-    // Добавлен так как есть в интерфейсе "UserStorage"
     @Override
+    // Удаление меняет строки follow всех связанных пользователей, поэтому берет и их блокировки.
+    // Пока блокировки не взяты, могут появиться новые связи - тогда набор пользователей собирается заново.
     public void delete(long id) {
-        if (this.notContainUser(id)) {
-            throw new EntityNotFoundException(
-                    new ErrorResponse("User id", String.format("Не найден пользователь с ID: %d.", id))
-            );
+        while (true) {
+            Set<Long> related = relatedUsers(id);
+            List<ReentrantLock> locks = lockUsers(related);
+            try {
+                if (!related.containsAll(relatedUsers(id))) {
+                    continue;
+                }
+                if (users.remove(id) == null) {
+                    throw userNotFound(id);
+                }
+                Map<Long, Boolean> followers = follows.remove(id);
+                if (followers != null) {
+                    followers.keySet().forEach(followerId -> removeFromSet(followed, followerId, id));
+                }
+                Set<Long> targets = followed.remove(id);
+                if (targets != null) {
+                    targets.forEach(targetId -> follows.computeIfPresent(targetId, (key, rows) -> {
+                        rows.remove(id);
+                        return rows.isEmpty() ? null : rows;
+                    }));
+                }
+                friendGraph.removeUser(id);
+                return;
+            } finally {
+                unlock(locks);
+            }
         }
-        data.remove(id);
     }
 
     @Override
     public List<User> getAll() {
-        return new ArrayList<>(data.values());
+        return users.values().stream().map(this::copy).collect(Collectors.toList());
     }
 
     @Override
-    public User addFriend(long id, long friendId) {
-        User user = this.get(id);
-        user.getFriends().add(friendId);
-        return user;
+    public List<User> getPage(long afterId, int limit) {
+        return users.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .map(this::copy)
+                .collect(Collectors.toList());
     }
 
     @Override
-    public User removeFriend(long id, long friendId) {
-        User user = this.get(id);
-        user.getFriends().remove(friendId);
-        return user;
+    public void addFriend(long id, long followerId) {
+        List<ReentrantLock> locks = lockUsers(List.of(id, followerId));
+        try {
+            checkUserExist(id);
+            checkUserExist(followerId);
+            if (Boolean.FALSE.equals(getRow(followerId, id))) {
+                putRow(followerId, id, true);
+            } else if (getRow(id, followerId) == null) {
+                putRow(id, followerId, false);
+            }
+        } finally {
+            unlock(locks);
+        }
     }
 
     @Override
-    public List<User> getFriends(long id) {
-        User user = this.get(id);
-        return user.getFriends().stream()
-                .map(data::get)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+    public void removeFriend(long id, long followerId) {
+        List<ReentrantLock> locks = lockUsers(List.of(id, followerId));
+        try {
+            if (Boolean.TRUE.equals(getRow(followerId, id))) {
+                removeRow(followerId, id);
+                putRow(id, followerId, false);
+            } else if (Boolean.FALSE.equals(getRow(id, followerId))) {
+                removeRow(id, followerId);
+            } else if (Boolean.TRUE.equals(getRow(id, followerId))) {
+                putRow(id, followerId, false);
+            } else {
+                checkUserExist(id);
+                checkUserExist(followerId);
+            }
+        } finally {
+            unlock(locks);
+        }
     }
 
     @Override
-    public List<User> getCommonFriends(long id, long otherId) {
-        User user = this.get(id);
-        User otherUser = this.get(otherId);
+    public int getFriendsCount(long id) {
+        return friendGraph.getFriendsCount(id);
+    }
 
-        Set<Long> commonFriends = new TreeSet<>(user.getFriends());
-        commonFriends.retainAll(otherUser.getFriends());
-        return commonFriends.stream()
-                .map(data::get)
-                .collect(Collectors.toList());
+    @Override
+    public List<User> getFriends(long id) {
+        List<User> friends = getByIds(friendGraph.getFriends(id));
+        if (friends.isEmpty()) {
+            checkUserExist(id);
+        }
+        return friends;
     }
 
     @Override
-    public List<Long> getLikes(long id) {
-        return Collections.emptyList();
+    public List<User> getCommonFriends(long id, long otherId) {
+        List<User> friends = getByIds(friendGraph.getCommonFriends(id, otherId));
+        if (friends.isEmpty()) {
+            checkUserExist(id);
+            checkUserExist(otherId);
+        }
+        return friends;
     }
 
     @Override
-    public List<FeedEntity> getFeed(long id) {
+    public List<Long> getLikes(long id) {
         return Collections.emptyList();
     }
 
     @Override
     public boolean notContainUser(long id) {
-        return !data.containsKey(id);
+        return !users.containsKey(id);
+    }
+
+    private Boolean getRow(long targetId, long followerId) {
+        return follows.getOrDefault(targetId, Map.of()).get(followerId);
+    }
+
+    private void putRow(long targetId, long followerId, boolean approved) {
+        follows.computeIfAbsent(targetId, key -> new ConcurrentHashMap<>()).put(followerId, approved);
+        followed.computeIfAbsent(followerId, key -> ConcurrentHashMap.newKeySet()).add(targetId);
+        friendGraph.putRow(targetId, followerId, approved);
     }
 
-}
\ No newline at end of file
+    private void removeRow(long targetId, long followerId) {
+        follows.computeIfPresent(targetId, (key, rows) -> {
+            rows.remove(followerId);
+            return rows.isEmpty() ? null : rows;
+        });
+        removeFromSet(followed, followerId, targetId);
+        friendGraph.removeRow(targetId, followerId);
+    }
+
+    private static void removeFromSet(Map<Long, Set<Long>> map, long key, long value) {
+        map.computeIfPresent(key, (id, values) -> {
+            values.remove(value);
+            return values.isEmpty() ? null : values;
+        });
+    }
+
+    private List<User> getByIds(long[] ids) {
+        return Arrays.stream(ids)
+                .mapToObj(users::get)
+                .filter(Objects::nonNull)
+                .map(this::copy)
+                .collect(Collectors.toList());
+    }
+
+    // Хранимый пользователь без друзей: они каждый раз берутся из графа
+    private User assemble(long id, User user) {
+        return User.builder()
+                .id(id)
+                .name(user.getName())
+                .login(user.getLogin())
+                .email(user.getEmail())
+                .birthday(user.getBirthday())
+                .build();
+    }
+
+    private User copy(User user) {
+        return User.builder()
+                .id(user.getId())
+                .name(user.getName())
+                .login(user.getLogin())
+                .email(user.getEmail())
+                .birthday(user.getBirthday())
+                .friends(Arrays.stream(friendGraph.getFriends(user.getId())).boxed().collect(Collectors.toSet()))
+                .build();
+    }
+
+    // Пользователь и все, с кем у него есть строки follow в любую сторону
+    private Set<Long> relatedUsers(long id) {
+        Set<Long> related = new HashSet<>();
+        related.add(id);
+        related.addAll(follows.getOrDefault(id, Map.of()).keySet());
+        related.addAll(followed.getOrDefault(id, Set.of()));
+        return related;
+    }
+
+    // Блокировки всегда берутся в порядке номера полосы, чтобы встречные запросы не зависали
+    private List<ReentrantLock> lockUsers(Collection<Long> ids) {
+        List<ReentrantLock> locks = ids.stream()
+                .map(id -> (int) Math.floorMod(id, (long) LOCK_STRIPES))
+                .distinct()
+                .sorted()
+                .map(stripe -> userLocks[stripe])
+                .collect(Collectors.toList());
+        locks.forEach(ReentrantLock::lock);
+        return locks;
+    }
+
+    private static void unlock(List<ReentrantLock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
+
+    private void checkUserExist(long id) {
+        if (this.notContainUser(id)) {
+            throw userNotFound(id);
+        }
+    }
+
+    private EntityNotFoundException userNotFound(long id) {
+        return new EntityNotFoundException(
+                new ErrorResponse("User id", String.format("Не найден пользователь с ID: %d.", id))
+        );
+    }
+}
@@ -1,30 +1,35 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
 import ru.yandex.practicum.filmorate.model.ErrorResponse;
 import ru.yandex.practicum.filmorate.model.User;
-import ru.yandex.practicum.filmorate.model.feed.FeedEntity;
-import ru.yandex.practicum.filmorate.model.feed.FeedEventType;
-import ru.yandex.practicum.filmorate.model.feed.FeedOperation;
+import ru.yandex.practicum.filmorate.storage.cache.Warmable;
 
+import javax.transaction.Transactional;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Objects;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
+@Profile("!in-memory")
 @Component
-public class UserDbStorage implements UserStorage {
+public class UserDbStorage implements UserStorage, Warmable {
     private final JdbcTemplate jdbcTemplate;
+    private final FriendGraph friendGraph = new FriendGraph();
+    private final ReentrantLock graphLoadLock = new ReentrantLock();
 
     @Override
     public User add(User user) {
@@ -43,39 +48,51 @@ public class UserDbStorage implements UserStorage {
                 keyHolder);
 
         long id = Objects.requireNonNull(keyHolder.getKey()).longValue();
-        return this.get(id);
+        return assemble(id, user, new HashSet<>());
     }
 
     @Override
     public User update(User user) {
         long id = user.getId();
-        checkUserExist(id);
 
         String sqlQuery = "UPDATE user_data SET name = ?, login = ?, email = ?, birthday = ? WHERE user_id = ?";
-        jdbcTemplate.update(sqlQuery,
+        int updated = jdbcTemplate.update(sqlQuery,
                 user.getName(),
                 user.getLogin(),
                 user.getEmail(),
                 user.getBirthday(),
                 id);
-        return this.get(user.getId());
+        if (updated == 0) {
+            throw userNotFound(id);
+        }
+        return assemble(id, user, this.getFriendsIds(id));
     }
 
     @Override
     public User get(long id) {
-        checkUserExist(id);
         String filmSqlQuery = "SELECT * FROM user_data WHERE user_id = ?";
-        return jdbcTemplate.queryForObject(filmSqlQuery, this::mapRowToUser, id);
+        List<User> users = jdbcTemplate.query(filmSqlQuery, this::mapRowToUser, id);
+        if (users.isEmpty()) {
+            throw userNotFound(id);
+        }
+        return users.get(0);
     }
 
+    // Голоса пользователя удаляются каскадом, поэтому сначала они вычитаются из хранимого рейтинга отзывов
+    @Transactional
+    @Override
     public void delete(long id) {
-        if (this.notContainUser(id)) {
-            throw new EntityNotFoundException(
-                    new ErrorResponse("User id", String.format("Не найден пользователь с ID: %d.", id))
-            );
+        FriendGraph graph = getFriendGraph();
+        String usefulSqlQuery = "UPDATE review SET useful = useful - (" +
+                "SELECT SUM(CASE WHEN usefull THEN 1 ELSE -1 END) FROM like_review " +
+                "WHERE review_id = review.review_id AND user_id = ?) " +
+                "WHERE review_id IN (SELECT review_id FROM like_review WHERE user_id = ?)";
+        jdbcTemplate.update(usefulSqlQuery, id, id);
+        String sqlQuery = "DELETE FROM user_data WHERE user_id = ?";
+        if (jdbcTemplate.update(sqlQuery, id) == 0) {
+            throw userNotFound(id);
         }
-        String sqlQuery = "DELETE FROM user_data WHERE user_id = " + id;
-        jdbcTemplate.execute(sqlQuery);
+        afterCommit(() -> graph.removeUser(id));
     }
 
     @Override
@@ -85,97 +102,82 @@ public class UserDbStorage implements UserStorage {
     }
 
     @Override
-    public User addFriend(long id, long followerId) {
-        checkUserExist(id);
-        checkUserExist(followerId);
+    public List<User> getPage(long afterId, int limit) {
+        String sqlQuery = "SELECT * FROM user_data WHERE user_id > ? ORDER BY user_id LIMIT ?";
+        return jdbcTemplate.query(sqlQuery, this::mapRowToUser, afterId, limit);
+    }
 
-        if (containsFriendApproval(followerId, id, false)) {
-            String sqlQuery = "UPDATE follow SET approved = ? WHERE target_id = ? AND follower_id = ?";
-            jdbcTemplate.update(sqlQuery, true, followerId, id);
-        } else {
+    @Transactional
+    @Override
+    public void addFriend(long id, long followerId) {
+        FriendGraph graph = getFriendGraph();
+        String approveSqlQuery =
+                "UPDATE follow SET approved = ? WHERE target_id = ? AND follower_id = ? AND approved = ?";
+        if (jdbcTemplate.update(approveSqlQuery, true, followerId, id, false) == 0) {
             String sqlQuery = "INSERT INTO follow (target_id, follower_id, approved) VALUES (?, ?, ?)";
-            jdbcTemplate.update(sqlQuery, id, followerId, false);
+            try {
+                jdbcTemplate.update(sqlQuery, id, followerId, false);
+            } catch (DataIntegrityViolationException e) {
+                checkUserExist(id);
+                checkUserExist(followerId);
+                throw e;
+            }
+            afterCommit(() -> graph.putRow(id, followerId, false));
+        } else {
+            afterCommit(() -> graph.putRow(followerId, id, true));
         }
-        return this.get(id);
     }
 
-
+    @Transactional
     @Override
-    public User removeFriend(long id, long followerId) {
-
-        checkUserExist(followerId);
-        checkUserExist(id);
-
-        if (containsFriendApproval(followerId, id, true)) {
-            String sqlQuery = "DELETE FROM follow WHERE target_id = ? AND follower_id = ?";
-            jdbcTemplate.update(sqlQuery, followerId, id);
-            this.addFriend(id, followerId);
-        } else if (containsFriendApproval(id, followerId, true)) {
-            String sqlQuery = "UPDATE follow SET approved = ? WHERE target_id = ? AND follower_id = ?";
-            jdbcTemplate.update(sqlQuery, false, id, followerId);
-        } else if (containsFriendApproval(id, followerId, false)) {
-            String sqlQuery = "DELETE FROM follow WHERE target_id = ? AND follower_id = ?";
-            jdbcTemplate.update(sqlQuery, id, followerId);
+    public void removeFriend(long id, long followerId) {
+        String deleteSqlQuery = "DELETE FROM follow WHERE target_id = ? AND follower_id = ? AND approved = ?";
+        FriendGraph graph = getFriendGraph();
+        if (jdbcTemplate.update(deleteSqlQuery, followerId, id, true) > 0) {
+            // Встречная строка могла уже существовать, поэтому MERGE, а не INSERT
+            String sqlQuery = "MERGE INTO follow (target_id, follower_id, approved) KEY (target_id, follower_id) " +
+                    "VALUES (?, ?, ?)";
+            jdbcTemplate.update(sqlQuery, id, followerId, false);
+            afterCommit(() -> {
+                graph.removeRow(followerId, id);
+                graph.putRow(id, followerId, false);
+            });
+        } else if (jdbcTemplate.update(deleteSqlQuery, id, followerId, false) == 0) {
+            String sqlQuery =
+                    "UPDATE follow SET approved = ? WHERE target_id = ? AND follower_id = ? AND approved = ?";
+            if (jdbcTemplate.update(sqlQuery, false, id, followerId, true) == 0) {
+                checkUserExist(id);
+                checkUserExist(followerId);
+            } else {
+                afterCommit(() -> graph.putRow(id, followerId, false));
+            }
+        } else {
+            afterCommit(() -> graph.removeRow(id, followerId));
         }
-        return this.get(id);
     }
 
     @Override
-    public List<User> getFriends(long id) {
-        checkUserExist(id);
+    public int getFriendsCount(long id) {
+        return getFriendGraph().getFriendsCount(id);
+    }
 
-        String sqlQuery =
-                "SELECT * " +
-                        "FROM user_data " +
-                        "WHERE user_id IN ( " +
-                        "    SELECT target_id " +
-                        "    FROM follow " +
-                        "    WHERE follower_id = ? " +
-                        "      AND approved = true " +
-                        ") OR user_id IN ( " +
-                        "    SELECT follower_id " +
-                        "    FROM follow " +
-                        "    WHERE target_id = ? " +
-                        ")";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToUser, id, id);
+    @Override
+    public List<User> getFriends(long id) {
+        List<User> friends = queryUsersByIds(getFriendGraph().getFriends(id));
+        if (friends.isEmpty()) {
+            checkUserExist(id);
+        }
+        return friends;
     }
 
     @Override
     public List<User> getCommonFriends(long id, long otherId) {
-        checkUserExist(id);
-        checkUserExist(otherId);
-
-        String sqlQuery =
-                "SELECT u1.user_id, u1.email, u1.login, u1.birthday, u1.name " +
-                        "FROM ( " +
-                        "    SELECT * " +
-                        "    FROM user_data " +
-                        "    WHERE user_id IN ( " +
-                        "        SELECT target_id " +
-                        "        FROM follow " +
-                        "        WHERE follower_id = ? " +
-                        "          AND approved = TRUE " +
-                        "    ) OR user_id IN ( " +
-                        "        SELECT follower_id " +
-                        "        FROM follow " +
-                        "        WHERE target_id = ? " +
-                        "    ) " +
-                        ") AS u1 " +
-                        "INNER JOIN ( " +
-                        "    SELECT * " +
-                        "    FROM user_data " +
-                        "    WHERE user_id IN ( " +
-                        "        SELECT target_id " +
-                        "        FROM follow " +
-                        "        WHERE follower_id = ? " +
-                        "          AND approved = TRUE " +
-                        "    ) OR user_id IN ( " +
-                        "        SELECT follower_id " +
-                        "        FROM follow " +
-                        "        WHERE target_id = ? " +
-                        "    ) " +
-                        ") AS u2 ON u1.user_id = u2.user_id";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToUser, id, id, otherId, otherId);
+        List<User> friends = queryUsersByIds(getFriendGraph().getCommonFriends(id, otherId));
+        if (friends.isEmpty()) {
+            checkUserExist(id);
+            checkUserExist(otherId);
+        }
+        return friends;
     }
 
     @Override
@@ -184,30 +186,6 @@ public class UserDbStorage implements UserStorage {
         return jdbcTemplate.query(sql, (rs, rowNum) -> rs.getLong("film_id"), id);
     }
 
-    @Override
-    public List<FeedEntity> getFeed(long id) {
-        checkUserExist(id);
-        String sqlQuery =
-                "SELECT  " +
-                        "    f.event_id, " +
-                        "    f.user_id, " +
-                        "    f.entity_id, " +
-                        "    f.time, " +
-                        "    eo.name AS operation_name, " +
-                        "    et.name AS type_name " +
-                        "FROM  " +
-                        "    feed f " +
-                        "JOIN  " +
-                        "    event_operation eo ON f.operation_id = eo.operation_id " +
-                        "JOIN  " +
-                        "    event_type et ON f.type_id = et.type_id " +
-                        "WHERE  " +
-                        "    f.user_id = ? " +
-                        "ORDER BY " +
-                        "    f.time";
-        return jdbcTemplate.query(sqlQuery, this::mapRowToFeedEntity, id);
-    }
-
     @Override
     public boolean notContainUser(long id) {
         String sqlQuery = "select count(*) from user_data where USER_ID = ?";
@@ -215,23 +193,57 @@ public class UserDbStorage implements UserStorage {
         return count != null && count == 0;
     }
 
+    @Override
+    public void warmUp() {
+        getFriendGraph();
+    }
+
     private Set<Long> getFriendsIds(long id) {
-        String sqlQuery =
-                "SELECT user_id " +
-                        "FROM user_data " +
-                        "WHERE user_id IN ( " +
-                        "    SELECT target_id " +
-                        "    FROM follow " +
-                        "    WHERE follower_id = ? " +
-                        "      AND approved = TRUE " +
-                        ") OR user_id IN ( " +
-                        "    SELECT follower_id " +
-                        "    FROM follow " +
-                        "    WHERE target_id = ? " +
-                        ")";
-        return new HashSet<>(jdbcTemplate.query(sqlQuery,
-                (rs, rowNum) -> rs.getLong("user_id"),
-                id, id));
+        return Arrays.stream(getFriendGraph().getFriends(id)).boxed().collect(Collectors.toSet());
+    }
+
+    private List<User> queryUsersByIds(long[] ids) {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        String sqlQuery = "SELECT * FROM user_data WHERE user_id = ANY(?) ORDER BY user_id";
+        Long[] userIds = Arrays.stream(ids).boxed().toArray(Long[]::new);
+        return jdbcTemplate.query(sqlQuery, this::mapRowToUser, (Object) userIds);
+    }
+
+    // Граф меняется только после фиксации транзакции: при откате в нем не остается строк, которых нет в follow.
+    // Без транзакции изменение применяется сразу.
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    // Записи загружают граф до запроса к БД: загрузка в другом потоке задерживает запись до своего окончания,
+    // поэтому изменение не попадает в снимок follow и применяется к уже загруженному графу
+    private FriendGraph getFriendGraph() {
+        if (!friendGraph.isLoaded()) {
+            graphLoadLock.lock();
+            try {
+                if (!friendGraph.isLoaded()) {
+                    friendGraph.load(jdbcTemplate.query("SELECT target_id, follower_id, approved FROM follow",
+                            (rs, rowNum) -> new FriendGraph.Follow(
+                                    rs.getLong("target_id"),
+                                    rs.getLong("follower_id"),
+                                    rs.getBoolean("approved"))));
+                }
+            } finally {
+                graphLoadLock.unlock();
+            }
+        }
+        return friendGraph;
     }
 
     private User mapRowToUser(ResultSet rs, int rowNum) throws SQLException {
@@ -246,29 +258,27 @@ public class UserDbStorage implements UserStorage {
                 .build();
     }
 
-    private FeedEntity mapRowToFeedEntity(ResultSet rs, int rowNum) throws SQLException {
-        return FeedEntity.builder()
-                .eventId(rs.getLong("event_id"))
-                .userId(rs.getLong("user_id"))
-                .entityId(rs.getLong("entity_id"))
-                .operation(FeedOperation.valueOf(rs.getString("operation_name")))
-                .eventType(FeedEventType.valueOf(rs.getString("type_name")))
-                .timestamp(rs.getDate("time").getTime())
+    private User assemble(long id, User user, Set<Long> friends) {
+        return User.builder()
+                .id(id)
+                .name(user.getName())
+                .login(user.getLogin())
+                .email(user.getEmail())
+                .birthday(user.getBirthday())
+                .friends(friends)
                 .build();
     }
 
-    private boolean containsFriendApproval(long targetId, long friendId, boolean approved) {
-        String sqlQuery = "SELECT COUNT(*) FROM follow WHERE target_id = ? AND follower_id = ? AND approved = ?";
-        Integer count = jdbcTemplate.queryForObject(sqlQuery, Integer.class, targetId, friendId, approved);
-        return count != null && count == 1;
-    }
-
     private void checkUserExist(long id) {
         if (this.notContainUser(id)) {
-            throw new EntityNotFoundException(
-                    new ErrorResponse("User id", String.format("Не найден пользователь с ID: %d.", id))
-            );
+            throw userNotFound(id);
         }
     }
 
+    private EntityNotFoundException userNotFound(long id) {
+        return new EntityNotFoundException(
+                new ErrorResponse("User id", String.format("Не найден пользователь с ID: %d.", id))
+        );
+    }
+
 }
\ No newline at end of file
@@ -1,7 +1,6 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
 import ru.yandex.practicum.filmorate.model.User;
-import ru.yandex.practicum.filmorate.model.feed.FeedEntity;
 
 import java.util.List;
 
@@ -12,20 +11,22 @@ public interface UserStorage {
 
     User get(long id);
 
-    User addFriend(long id, long friendId);
+    void addFriend(long id, long friendId);
 
-    User removeFriend(long id, long friendId);
+    void removeFriend(long id, long friendId);
+
+    int getFriendsCount(long id);
 
     List<User> getAll();
 
+    List<User> getPage(long afterId, int limit);
+
     List<User> getFriends(long id);
 
     List<User> getCommonFriends(long id, long otherId);
 
     List<Long> getLikes(long id);
 
-    List<FeedEntity> getFeed(long id);
-
     void delete(long id);
 
     boolean notContainUser(long id);
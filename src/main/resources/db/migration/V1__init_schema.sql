@@ -17,7 +17,8 @@ CREATE TABLE IF NOT EXISTS film
     description VARCHAR(200),
     rating_id   INTEGER REFERENCES mpa_rating (rating_id),
     release     TIMESTAMP CHECK (release >= '1895-12-28'),
-    duration    INTEGER     NOT NULL CHECK (duration > 0)
+    duration    INTEGER     NOT NULL CHECK (duration > 0),
+    likes_count INTEGER     NOT NULL DEFAULT 0
 );
 
 CREATE TABLE IF NOT EXISTS film_genre
@@ -43,6 +44,12 @@ CREATE TABLE IF NOT EXISTS like_film
     PRIMARY KEY (film_id, user_id)
 );
 
+ALTER TABLE film ADD COLUMN IF NOT EXISTS likes_count INTEGER NOT NULL DEFAULT 0;
+
+UPDATE film f
+SET likes_count = (SELECT COUNT(*) FROM like_film l WHERE l.film_id = f.film_id)
+WHERE likes_count <> (SELECT COUNT(*) FROM like_film l WHERE l.film_id = f.film_id);
+
 CREATE TABLE IF NOT EXISTS follow
 (
     target_id   INTEGER REFERENCES user_data (user_id) ON DELETE CASCADE,
@@ -57,7 +64,8 @@ CREATE TABLE IF NOT EXISTS review
 	content     text NOT NULL,
     user_id     INTEGER REFERENCES user_data (user_id) ON DELETE CASCADE,
     film_id     INTEGER REFERENCES film (film_id) ON DELETE CASCADE,
-    is_positive BOOLEAN not null DEFAULT TRUE
+    is_positive BOOLEAN not null DEFAULT TRUE,
+    useful      INTEGER NOT NULL DEFAULT 0
 );
 
 CREATE TABLE IF NOT EXISTS like_review
@@ -68,6 +76,19 @@ CREATE TABLE IF NOT EXISTS like_review
     PRIMARY KEY (user_id, review_id)
 );
 
+ALTER TABLE review ADD COLUMN IF NOT EXISTS useful INTEGER NOT NULL DEFAULT 0;
+
+UPDATE review r
+SET useful = (SELECT IFNULL(SUM(CASE usefull WHEN TRUE THEN 1 ELSE -1 END), 0)
+              FROM like_review l
+              WHERE l.review_id = r.review_id)
+WHERE useful <> (SELECT IFNULL(SUM(CASE usefull WHEN TRUE THEN 1 ELSE -1 END), 0)
+                 FROM like_review l
+                 WHERE l.review_id = r.review_id);
+
+CREATE INDEX IF NOT EXISTS review_useful_idx ON review (useful DESC, review_id);
+CREATE INDEX IF NOT EXISTS review_film_useful_idx ON review (film_id, useful DESC, review_id);
+
 
 CREATE TABLE IF NOT EXISTS director
 (
@@ -102,4 +123,6 @@ CREATE TABLE IF NOT EXISTS feed
     type_id      INTEGER REFERENCES event_type (type_id) ON DELETE RESTRICT,
     operation_id INTEGER REFERENCES event_operation (operation_id) ON DELETE RESTRICT,
     time         TIMESTAMP
-);
\ No newline at end of file
+);
+
+CREATE INDEX IF NOT EXISTS feed_user_event_idx ON feed (user_id, event_id);
\ No newline at end of file
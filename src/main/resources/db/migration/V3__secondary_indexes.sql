@@ -0,0 +1,17 @@
+-- Первичные ключи связей начинаются с другого столбца и не помогают при поиске по второму.
+-- Индексы составные, чтобы запросы по ним читали только индекс.
+
+-- Лайки пользователя: getLikes, общие фильмы, рекомендации, удаление лайков пользователя
+CREATE INDEX IF NOT EXISTS like_film_user_idx ON like_film (user_id, film_id);
+
+-- Подписки пользователя как подписчика: удаление пользователя и его заявок в друзья
+CREATE INDEX IF NOT EXISTS follow_follower_idx ON follow (follower_id, target_id);
+
+-- Оценки отзыва: пересчет полезности и каскадное удаление вместе с отзывом
+CREATE INDEX IF NOT EXISTS like_review_review_idx ON like_review (review_id, user_id);
+
+-- Режиссеры фильма: чтение фильмов, обновление и удаление режиссеров фильма
+CREATE INDEX IF NOT EXISTS film_director_film_idx ON film_director (film_id, director_id);
+
+-- Отзывы фильма ищутся по review_film_useful_idx (film_id, useful DESC, review_id),
+-- лента пользователя - по feed_user_event_idx (user_id, event_id): event_id растет вместе с time.
@@ -0,0 +1,77 @@
+package ru.yandex.practicum.filmorate.database;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// SCRIPT читает закоммиченные данные, поэтому тест работает без транзакции
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class DatabaseSnapshotTest {
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testSnapshotRestoresIntoEmptyDatabase() {
+        jdbcTemplate.update("INSERT INTO user_data (email, login, name, birthday) " +
+                "VALUES ('user@email.ru', 'user', 'User', '1990-01-01')");
+        Path path = dir.resolve("snapshot.zip");
+
+        new DatabaseSnapshot(dataSource, path).write();
+
+        assertThat(path).isRegularFile();
+        assertThat(Files.exists(dir.resolve("snapshot.zip.tmp"))).isFalse();
+
+        DataSource restored = memoryDatabase();
+        DatabaseSnapshot snapshot = new DatabaseSnapshot(restored, path);
+        assertThat(snapshot.exists()).isTrue();
+        snapshot.restore();
+
+        JdbcTemplate restoredTemplate = new JdbcTemplate(restored);
+        assertThat(restoredTemplate.queryForObject("SELECT login FROM user_data", String.class)).isEqualTo("user");
+        assertThat(restoredTemplate.queryForObject("SELECT COUNT(*) FROM genre", Integer.class))
+                .isEqualTo(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM genre", Integer.class));
+        assertThat(restoredTemplate.queryForObject(
+                "SELECT MAX(\"version\") FROM \"flyway_schema_history\"", String.class)).isEqualTo("3");
+    }
+
+    @Test
+    public void testNewSnapshotReplacesPrevious() {
+        Path path = dir.resolve("snapshot.zip");
+        DatabaseSnapshot snapshot = new DatabaseSnapshot(dataSource, path);
+        snapshot.write();
+        jdbcTemplate.update("INSERT INTO user_data (email, login, name, birthday) " +
+                "VALUES ('user@email.ru', 'user', 'User', '1990-01-01')");
+
+        snapshot.write();
+
+        DataSource restored = memoryDatabase();
+        new DatabaseSnapshot(restored, path).restore();
+        assertThat(new JdbcTemplate(restored).queryForObject("SELECT COUNT(*) FROM user_data", Integer.class))
+                .isEqualTo(1);
+    }
+
+    private static DataSource memoryDatabase() {
+        return new SimpleDriverDataSource(new org.h2.Driver(),
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+    }
+}
@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.execution;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VirtualThreadsTest {
+    @Test
+    public void testExecutorExistsOnlyWhereJvmHasVirtualThreads() throws Exception {
+        Optional<ExecutorService> executor = VirtualThreads.newThreadPerTaskExecutor("test-virtual-");
+        assertThat(executor.isPresent()).isEqualTo(Runtime.version().feature() >= 21);
+        if (executor.isEmpty()) {
+            return;
+        }
+
+        String threadName = executor.get().submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+        assertThat(threadName).isEqualTo("test-virtual-0");
+        executor.get().shutdown();
+    }
+}
@@ -0,0 +1,117 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.TransactionAwareDataSourceProxy;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.storage.director.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmReadSettings;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MPADbStorage;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class StorageMetricsAspectTest {
+    private final DataSource dataSource;
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private JdbcTemplate jdbcTemplate;
+    private GenreDbStorage target;
+    private GenreStorage genreStorage;
+
+    @BeforeEach
+    void init() {
+        jdbcTemplate = new JdbcTemplate(
+                new StatementCountingDataSource(new TransactionAwareDataSourceProxy(dataSource)));
+        target = new GenreDbStorage(jdbcTemplate, new NamedParameterJdbcTemplate(jdbcTemplate));
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.addAspect(new StorageMetricsAspect(registry));
+        genreStorage = factory.getProxy();
+    }
+
+    @Test
+    public void testStorageCallsAreTimedWithStatementCounts() {
+        genreStorage.getAll();
+        genreStorage.get(1);
+        genreStorage.get(2);
+
+        assertThat(registry.get(StorageMetricsAspect.CALLS)
+                .tags("storage", "GenreDbStorage", "method", "get", "exception", "none")
+                .timer().count()).isEqualTo(2);
+        // Жанры уже в кэше после getAll
+        assertThat(registry.get(StorageMetricsAspect.STATEMENTS)
+                .tags("storage", "GenreDbStorage", "method", "get")
+                .summary().totalAmount()).isEqualTo(0);
+        assertThat(registry.get(StorageMetricsAspect.STATEMENTS)
+                .tags("storage", "GenreDbStorage", "method", "getAll")
+                .summary().totalAmount()).isEqualTo(1);
+        assertThat(target.getCacheStats().getHits()).isEqualTo(2);
+    }
+
+    // Части фильма читаются в других потоках через свои соединения, поэтому тест работает без транзакции
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testParallelReadStatementsAreCountedForCaller() {
+        NamedParameterJdbcTemplate namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        MPADbStorage mpaStorage = new MPADbStorage(jdbcTemplate, namedJdbcTemplate);
+        FilmDbStorage filmTarget = new FilmDbStorage(jdbcTemplate, namedJdbcTemplate, target, mpaStorage,
+                new DirectorDbStorage(jdbcTemplate, namedJdbcTemplate), new FilmReadSettings());
+        AspectJProxyFactory factory = new AspectJProxyFactory(filmTarget);
+        factory.addAspect(new StorageMetricsAspect(registry));
+        FilmStorage filmStorage = factory.getProxy();
+        long filmId = filmTarget.add(Film.builder()
+                .name("Film")
+                .description("Description")
+                .genres(List.of(new Genre(1L, null)))
+                .directors(List.of())
+                .mpa(new MPA(1L, null))
+                .releaseDate(LocalDate.of(2020, 8, 25))
+                .duration(100)
+                .build()).getId();
+
+        filmStorage.get(filmId);
+
+        // Строка фильма в вызывающем потоке, жанры, режиссеры и лайки - в потоках пула
+        assertThat(registry.get(StorageMetricsAspect.STATEMENTS)
+                .tags("storage", "FilmDbStorage", "method", "get")
+                .summary().totalAmount()).isEqualTo(4);
+        filmTarget.close();
+    }
+
+    @Test
+    public void testFailedCallIsTaggedWithException() {
+        assertThatThrownBy(() -> genreStorage.get(99)).isInstanceOf(EntityNotFoundException.class);
+
+        assertThat(registry.get(StorageMetricsAspect.CALLS)
+                .tags("method", "get", "exception", "EntityNotFoundException")
+                .timer().count()).isEqualTo(1);
+        assertThat(registry.get(StorageMetricsAspect.STATEMENTS)
+                .tags("method", "get")
+                .summary().totalAmount()).isEqualTo(1);
+        assertThat(target.getCacheStats().getMisses()).isEqualTo(1);
+    }
+}
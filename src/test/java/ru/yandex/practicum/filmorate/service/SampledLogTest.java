@@ -0,0 +1,61 @@
+package ru.yandex.practicum.filmorate.service;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SampledLogTest {
+    private final Logger logger = (Logger) LoggerFactory.getLogger(SampledLogTest.class);
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+    private final SampledLogSettings settings = new SampledLogSettings();
+
+    @BeforeEach
+    void init() {
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    @AfterEach
+    void tearDown() {
+        logger.detachAppender(appender);
+    }
+
+    @Test
+    public void testListIsSummarizedBySizeAndFirstIds() {
+        settings.setMaxIds(3);
+        SampledLog sampledLog = new SampledLog(SampledLogTest.class, settings);
+        List<Long> items = LongStream.rangeClosed(1, 1000).boxed().collect(Collectors.toList());
+
+        sampledLog.list("Получен список", System.nanoTime(), items, Long::longValue, "count", 1000, "year", null);
+
+        assertThat(appender.list).hasSize(1);
+        assertThat(appender.list.get(0).getFormattedMessage())
+                .startsWith("Получен список. count=1000 year=null size=1000 ids=[1, 2, 3, ...] timeMs=");
+    }
+
+    @Test
+    public void testSampleRateLimitsWrittenSummaries() {
+        settings.setSampleRate(0);
+        SampledLog sampledLog = new SampledLog(SampledLogTest.class, settings);
+        for (int i = 0; i < 100; i++) {
+            sampledLog.event("Получен фильм", System.nanoTime(), "id", i);
+        }
+        assertThat(appender.list).isEmpty();
+
+        settings.setSampleRate(0.5);
+        for (int i = 0; i < 1000; i++) {
+            sampledLog.event("Получен фильм", System.nanoTime(), "id", i);
+        }
+        assertThat(appender.list.size()).isBetween(350, 650);
+    }
+}
@@ -0,0 +1,339 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.TransactionAwareDataSourceProxy;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.exception.FilmAttributeNotExistOnFilmCreationException;
+import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.model.feed.FeedOperation;
+import ru.yandex.practicum.filmorate.storage.director.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.feed.FeedDbStorage;
+import ru.yandex.practicum.filmorate.storage.feed.FeedWriteMode;
+import ru.yandex.practicum.filmorate.storage.feed.FeedWriterSettings;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmReadSettings;
+import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MPADbStorage;
+import ru.yandex.practicum.filmorate.storage.review.ReviewDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import javax.sql.DataSource;
+import javax.validation.Validation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Индексы фильмов обновляются после фиксации транзакции, поэтому тесты работают без транзакции теста
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class StatementCountTest {
+    private final DataSource dataSource;
+    private final AtomicInteger statements = new AtomicInteger();
+    private FilmService filmService;
+    private UserService userService;
+    private ReviewService reviewService;
+    private DirectorService directorService;
+
+    @BeforeEach
+    void init() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(countingDataSource(new TransactionAwareDataSourceProxy(dataSource)));
+        NamedParameterJdbcTemplate namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+
+        GenreDbStorage genreStorage = new GenreDbStorage(jdbcTemplate, namedJdbcTemplate);
+        MPADbStorage mpaStorage = new MPADbStorage(jdbcTemplate, namedJdbcTemplate);
+        DirectorDbStorage directorStorage = new DirectorDbStorage(jdbcTemplate, namedJdbcTemplate);
+        FilmDbStorage filmStorage = new FilmDbStorage(jdbcTemplate, namedJdbcTemplate,
+                genreStorage, mpaStorage, directorStorage, new FilmReadSettings());
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate);
+        FeedWriterSettings feedSettings = new FeedWriterSettings();
+        feedSettings.setMode(FeedWriteMode.SYNC);
+        FeedDbStorage feedStorage = new FeedDbStorage(jdbcTemplate, feedSettings);
+
+        filmService = new FilmService(filmStorage, userStorage, feedStorage, genreStorage, mpaStorage,
+                directorStorage, Validation.buildDefaultValidatorFactory().getValidator(), new SampledLogSettings());
+        userService = new UserService(userStorage, feedStorage, filmStorage, new SampledLogSettings());
+        reviewService = new ReviewService(new ReviewDbStorage(jdbcTemplate), userStorage, filmStorage, feedStorage);
+        directorService = new DirectorService(directorStorage);
+
+        genreStorage.getAll();
+        mpaStorage.getAll();
+        directorService.addDirector(Director.builder().name("Director").build());
+        filmService.addFilm(film(null));
+        userService.addUser(user(1));
+        userService.addUser(user(2));
+        filmService.addLike(1, 1);
+        filmService.removeLike(1, 1);
+        userService.addFriend(1, 2);
+        userService.removeFriend(1, 2);
+    }
+
+    @Test
+    public void testFilmEndpoints() {
+        assertThat(count(() -> filmService.getFilm(1))).isEqualTo(4);
+        assertThat(count(() -> filmService.addFilm(film(null)))).isEqualTo(3);
+        assertThat(count(() -> filmService.updateFilm(film(2L)))).isEqualTo(4);
+        assertThat(count(() -> filmService.addLike(1, 1))).isEqualTo(7);
+        assertThat(count(() -> filmService.addLike(1, 1))).isEqualTo(6);
+        assertThat(count(() -> filmService.removeLike(1, 1))).isEqualTo(7);
+        assertThat(count(() -> filmService.deleteFilm(2))).isEqualTo(1);
+    }
+
+    @Test
+    public void testUpdateFilmReconcilesAssociations() {
+        Film removed = film(1L);
+        removed.setGenres(List.of(new Genre(2L, null), new Genre(3L, null), new Genre(4L, null)));
+        removed.setDirectors(List.of());
+        // Одно удаление и одна пакетная вставка жанров, связи с режиссерами удаляются целиком
+        assertThat(count(() -> filmService.updateFilm(removed))).isEqualTo(6);
+
+        Film added = film(1L);
+        added.setGenres(List.of(new Genre(1L, null), new Genre(2L, null), new Genre(3L, null),
+                new Genre(4L, null), new Genre(5L, null), new Genre(6L, null)));
+        // Число запросов не зависит от числа жанров, неизмененные связи не трогаются
+        assertThat(count(() -> filmService.updateFilm(added))).isEqualTo(6);
+
+        Film film = filmService.getFilm(1);
+        assertThat(film.getGenres()).extracting(Genre::getId).containsExactly(1L, 2L, 3L, 4L, 5L, 6L);
+        assertThat(film.getDirectors()).extracting(Director::getId).containsExactly(1L);
+
+        Film missingDirector = film(1L);
+        missingDirector.setDirectors(List.of(Director.builder().id(99L).build()));
+        assertThatThrownBy(() -> filmService.updateFilm(missingDirector))
+                .isInstanceOf(FilmAttributeNotExistOnFilmCreationException.class);
+        Film missingGenre = film(1L);
+        missingGenre.setGenres(List.of(new Genre(1L, null), new Genre(99L, null)));
+        assertThatThrownBy(() -> filmService.updateFilm(missingGenre))
+                .isInstanceOf(FilmAttributeNotExistOnFilmCreationException.class);
+    }
+
+    @Test
+    public void testBulkImportWritesChunksInBatches() {
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            films.add(film(null));
+        }
+        films.get(10).setName("");
+        films.get(20).setMpa(new MPA(99L, null));
+        films.get(30).setGenres(List.of(new Genre(99L, null)));
+        films.get(40).setDirectors(List.of(Director.builder().id(99L).build()));
+
+        List<BulkImportReport> reports = new ArrayList<>();
+        // Справочники читаются один раз, каждый из трех пакетов - три пакетные вставки
+        assertThat(count(() -> reports.add(filmService.importFilms(films.iterator())))).isEqualTo(3 + 3 * 3);
+
+        BulkImportReport report = reports.get(0);
+        assertThat(report.getReceived()).isEqualTo(1200);
+        assertThat(report.getImported()).isEqualTo(1196);
+        assertThat(report.getErrors()).extracting(BulkImportError::getIndex).containsExactly(10, 20, 30, 40);
+        assertThat(report.getErrors()).extracting(BulkImportError::getError)
+                .containsExactly("Film", "MPA id", "Genre id", "Director id");
+
+        Film imported = filmService.getFilm(1197);
+        assertThat(imported.getGenres()).extracting(Genre::getId).containsExactly(1L);
+        assertThat(imported.getDirectors()).extracting(Director::getId).containsExactly(1L);
+        assertThat(filmService.getPopularFilm(2000, 1L, null)).hasSize(1197);
+    }
+
+    @Test
+    public void testBulkLikesApplyOnlyTheFinalDifference() {
+        List<LikeEvent> events = List.of(
+                like(1, 1, FeedOperation.ADD),
+                like(1, 2, FeedOperation.ADD),
+                like(1, 1, FeedOperation.ADD),
+                like(1, 2, FeedOperation.REMOVE),
+                like(99, 1, FeedOperation.ADD),
+                like(1, 99, FeedOperation.ADD),
+                like(1, 2, FeedOperation.UPDATE));
+
+        int userFeedSize = userService.getUserFeed(1, null, null).size();
+        List<BulkLikeReport> reports = new ArrayList<>();
+        // Три чтения, одна вставка и одно изменение likes_count на пакет плюс одна пакетная запись в ленту
+        assertThat(count(() -> reports.add(filmService.applyLikes(events.iterator())))).isEqualTo(5 + 1);
+
+        BulkLikeReport report = reports.get(0);
+        assertThat(report.getReceived()).isEqualTo(7);
+        assertThat(report.getAdded()).isEqualTo(2);
+        assertThat(report.getRemoved()).isEqualTo(1);
+        assertThat(report.getUnchanged()).isEqualTo(1);
+        assertThat(report.getErrors()).extracting(BulkImportError::getIndex).containsExactly(6, 4, 5);
+        assertThat(report.getErrors()).extracting(BulkImportError::getError)
+                .containsExactly("Like", "Film id", "User id");
+
+        assertThat(filmService.getFilm(1).getLikes()).containsExactly(1L);
+        assertThat(filmService.getPopularFilm(1, null, null).get(0).getId()).isEqualTo(1);
+        assertThat(userService.getUserFeed(2, null, null)).hasSize(2);
+        // Повторный лайк ничего не меняет и в ленту не попадает
+        assertThat(userService.getUserFeed(1, null, null)).hasSize(userFeedSize + 1);
+    }
+
+    @Test
+    public void testLeanResponses() {
+        // Без запроса лайков фильма: только счетчик из строки film
+        assertThat(count(() -> filmService.getFilmLean(1))).isEqualTo(3);
+        assertThat(count(() -> filmService.addLikeLean(1, 1))).isEqualTo(4);
+        assertThat(count(() -> filmService.removeLikeLean(1, 1))).isEqualTo(4);
+        assertThat(count(() -> userService.addFriendLean(1, 2))).isEqualTo(3);
+        assertThat(count(() -> userService.removeFriendLean(1, 2))).isEqualTo(3);
+
+        LikeResponse like = filmService.addLikeLean(1, 2);
+        assertThat(like.getLikesCount()).isEqualTo(1);
+        assertThat(filmService.getFilmLean(1).getLikes()).isNull();
+        assertThat(filmService.getFilmLean(1).getLikesCount()).isEqualTo(1);
+        assertThat(filmService.getPopularFilmLean(10, null, null)).extracting(Film::getLikesCount).containsExactly(1L);
+        assertThat(filmService.getFilm(1).getLikesCount()).isNull();
+
+        userService.addFriendLean(2, 1);
+        FriendResponse friend = userService.addFriendLean(1, 2);
+        assertThat(friend.getFriendsCount()).isEqualTo(1);
+        assertThatThrownBy(() -> userService.removeFriendLean(99, 1)).isInstanceOf(EntityNotFoundException.class);
+        assertThatThrownBy(() -> filmService.removeLikeLean(99, 1)).isInstanceOf(EntityNotFoundException.class);
+    }
+
+    @Test
+    public void testUserEndpoints() {
+        assertThat(count(() -> userService.getUser(1))).isEqualTo(1);
+        assertThat(count(() -> userService.addUser(user(3)))).isEqualTo(1);
+
+        User updatedUser = user(3);
+        updatedUser.setId(3);
+
+        assertThat(count(() -> userService.updateUser(updatedUser))).isEqualTo(1);
+        assertThat(count(() -> userService.addFriend(1, 2))).isEqualTo(4);
+        assertThat(count(() -> userService.addFriend(2, 1))).isEqualTo(3);
+        assertThat(count(() -> userService.getFriends(1))).isEqualTo(1);
+        assertThat(count(() -> userService.getCommonFriends(1, 2))).isEqualTo(2);
+        assertThat(count(() -> userService.removeFriend(1, 2))).isEqualTo(5);
+        // Лайки пользователя, пересчет useful его оценок отзывов и удаление строки
+        assertThat(count(() -> userService.deleteUser(3))).isEqualTo(3);
+    }
+
+    @Test
+    public void testReviewEndpoints() {
+        Review review = Review.builder()
+                .content("Content")
+                .userId(1L)
+                .filmId(1L)
+                .isPositive(true)
+                .build();
+
+        reviewService.addReview(review);
+
+        assertThat(count(() -> reviewService.addReview(review))).isEqualTo(2);
+        assertThat(count(() -> reviewService.addLike(2, 2))).isEqualTo(2);
+        assertThat(count(() -> reviewService.removeLike(2, 2))).isEqualTo(2);
+        assertThat(count(() -> reviewService.deleteReview(2))).isEqualTo(3);
+    }
+
+    @Test
+    public void testDirectorEndpoints() {
+        Director director = Director.builder()
+                .id(1L)
+                .name("Renamed Director")
+                .build();
+
+        assertThat(count(() -> directorService.updateDirector(director))).isEqualTo(1);
+        assertThat(count(() -> directorService.getDirector(1))).isEqualTo(0);
+        assertThat(count(() -> directorService.deleteDirector(1))).isEqualTo(1);
+    }
+
+    @Test
+    public void testMissingEntitiesAreDetectedAfterMainStatement() {
+        assertThatThrownBy(() -> filmService.getFilm(99)).isInstanceOf(EntityNotFoundException.class);
+        assertThatThrownBy(() -> filmService.updateFilm(film(99L))).isInstanceOf(EntityNotFoundException.class);
+        assertThatThrownBy(() -> filmService.deleteFilm(99)).isInstanceOf(EntityNotFoundException.class);
+        assertThatThrownBy(() -> filmService.addLike(99, 1)).isInstanceOf(EntityNotFoundException.class);
+        assertThatThrownBy(() -> filmService.addLike(1, 99)).isInstanceOf(EntityNotFoundException.class);
+        assertThatThrownBy(() -> filmService.removeLike(1, 99)).isInstanceOf(EntityNotFoundException.class);
+        assertThatThrownBy(() -> userService.getUser(99)).isInstanceOf(EntityNotFoundException.class);
+        assertThatThrownBy(() -> userService.addFriend(1, 99)).isInstanceOf(EntityNotFoundException.class);
+        assertThatThrownBy(() -> userService.removeFriend(1, 99)).isInstanceOf(EntityNotFoundException.class);
+        assertThatThrownBy(() -> userService.getFriends(99)).isInstanceOf(EntityNotFoundException.class);
+        assertThatThrownBy(() -> userService.deleteUser(99)).isInstanceOf(EntityNotFoundException.class);
+        assertThatThrownBy(() -> reviewService.addLike(99, 1)).isInstanceOf(EntityNotFoundException.class);
+        assertThatThrownBy(() -> reviewService.deleteReview(99)).isInstanceOf(EntityNotFoundException.class);
+        assertThatThrownBy(() -> directorService.deleteDirector(99)).isInstanceOf(EntityNotFoundException.class);
+    }
+
+    private int count(Runnable request) {
+        statements.set(0);
+        request.run();
+        return statements.get();
+    }
+
+    private Film film(Long id) {
+        Film.FilmBuilder builder = Film.builder()
+                .name("Film")
+                .description("Description")
+                .genres(List.of(new Genre(1L, "Комедия")))
+                .directors(List.of(Director.builder().id(1L).build()))
+                .mpa(new MPA(1L, "G"))
+                .releaseDate(LocalDate.of(2020, 8, 25))
+                .duration(100);
+        if (id != null) {
+            builder.id(id);
+        }
+        return builder.build();
+    }
+
+    private LikeEvent like(long filmId, long userId, FeedOperation operation) {
+        return LikeEvent.builder()
+                .filmId(filmId)
+                .userId(userId)
+                .operation(operation)
+                .build();
+    }
+
+    private User user(int number) {
+        return User.builder()
+                .name("User" + number)
+                .email("user" + number + "@email.ru")
+                .login("user" + number)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+    }
+
+    private DataSource countingDataSource(DataSource target) {
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{DataSource.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(target, method, args);
+                    return result instanceof Connection ? countingConnection((Connection) result) : result;
+                });
+    }
+
+    private Connection countingConnection(Connection target) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().startsWith("prepare") || method.getName().equals("createStatement")) {
+                        statements.incrementAndGet();
+                    }
+                    return invoke(target, method, args);
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.startup;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.actuate.health.Status;
+import ru.yandex.practicum.filmorate.storage.cache.Warmable;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CacheWarmUpTest {
+    @Test
+    public void testNotReadyUntilWarmedUp() {
+        AtomicInteger warmed = new AtomicInteger();
+        CacheWarmUp warmUp = warmUp(new WarmUpSettings(), warmed::incrementAndGet, warmed::incrementAndGet);
+
+        assertThat(warmUp.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+
+        warmUp.warmUp();
+
+        assertThat(warmed.get()).isEqualTo(2);
+        assertThat(warmUp.health().getStatus()).isEqualTo(Status.UP);
+    }
+
+    @Test
+    public void testFailedStorageDoesNotBlockReadiness() {
+        AtomicInteger warmed = new AtomicInteger();
+        CacheWarmUp warmUp = warmUp(new WarmUpSettings(), () -> {
+            throw new IllegalStateException("База недоступна");
+        }, warmed::incrementAndGet);
+
+        warmUp.warmUp();
+
+        assertThat(warmed.get()).isEqualTo(1);
+        assertThat(warmUp.health().getStatus()).isEqualTo(Status.UP);
+        assertThat((List<?>) warmUp.health().getDetails().get("failed")).hasSize(1);
+    }
+
+    @Test
+    public void testDisabledWarmUpIsReadyAtOnce() {
+        AtomicInteger warmed = new AtomicInteger();
+        WarmUpSettings settings = new WarmUpSettings();
+        settings.setEnabled(false);
+        CacheWarmUp warmUp = warmUp(settings, warmed::incrementAndGet);
+
+        warmUp.start();
+
+        assertThat(warmed.get()).isZero();
+        assertThat(warmUp.health().getStatus()).isEqualTo(Status.UP);
+    }
+
+    private static CacheWarmUp warmUp(WarmUpSettings settings, Warmable... storages) {
+        Map<String, Object> beans = new LinkedHashMap<>();
+        for (int i = 0; i < storages.length; i++) {
+            beans.put("storage" + i, storages[i]);
+        }
+        return new CacheWarmUp(new StaticListableBeanFactory(beans).getBeanProvider(Warmable.class), settings);
+    }
+}
@@ -0,0 +1,54 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class SchemaMigrationTest {
+    private final JdbcTemplate jdbcTemplate;
+    private final Flyway flyway;
+
+    @Test
+    public void testAllMigrationsApplied() {
+        List<String> versions = jdbcTemplate.queryForList(
+                "SELECT \"version\" FROM \"flyway_schema_history\" " +
+                        "WHERE \"success\" AND \"version\" IS NOT NULL " +
+                        "ORDER BY \"installed_rank\"",
+                String.class);
+
+        assertThat(versions).containsExactly("1", "2", "3");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM mpa_rating", Integer.class)).isEqualTo(5);
+    }
+
+    @Test
+    public void testSecondaryIndexesExist() {
+        List<String> indexes = jdbcTemplate.queryForList(
+                "SELECT LOWER(index_name) FROM information_schema.indexes WHERE table_schema = 'PUBLIC'",
+                String.class);
+
+        assertThat(indexes).contains(
+                "like_film_user_idx",
+                "follow_follower_idx",
+                "like_review_review_idx",
+                "film_director_film_idx",
+                "review_film_useful_idx",
+                "feed_user_event_idx");
+    }
+
+    @Test
+    public void testRepeatedMigrateAppliesNothing() {
+        assertThat(flyway.migrate().migrationsExecuted).isZero();
+        assertThat(flyway.info().pending()).isEmpty();
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import ru.yandex.practicum.filmorate.model.Director;
 
@@ -19,11 +20,12 @@ import static org.assertj.core.api.Assertions.assertThatCode;
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 public class DirectorDbStorageTest {
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
     private DirectorDbStorage directorStorage;
 
     @BeforeEach
     void init() {
-        directorStorage = new DirectorDbStorage(jdbcTemplate);
+        directorStorage = new DirectorDbStorage(jdbcTemplate, namedJdbcTemplate);
     }
 
     @Test
@@ -117,4 +119,33 @@ public class DirectorDbStorageTest {
         assertThat(directors)
                 .isEmpty();
     }
+
+    @Test
+    public void testGetDirectorAfterRename() {
+        Director director = Director.builder()
+                .name("Mega Famous Director 1")
+                .build();
+        directorStorage.add(director);
+        assertThat(directorStorage.get(1).getName()).isEqualTo("Mega Famous Director 1");
+
+        directorStorage.update(Director.builder()
+                .id(1L)
+                .name("Renamed Director")
+                .build());
+
+        assertThat(directorStorage.get(1).getName()).isEqualTo("Renamed Director");
+    }
+
+    @Test
+    public void testNotContainDirectorAfterDelete() {
+        Director director = Director.builder()
+                .name("Mega Famous Director 1")
+                .build();
+        directorStorage.add(director);
+        assertThat(directorStorage.notContainDirector(1)).isEqualTo(false);
+
+        directorStorage.delete(1);
+
+        assertThat(directorStorage.notContainDirector(1)).isEqualTo(true);
+    }
 }
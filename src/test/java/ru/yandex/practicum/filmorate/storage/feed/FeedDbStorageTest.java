@@ -0,0 +1,201 @@
+package ru.yandex.practicum.filmorate.storage.feed;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.feed.FeedEntity;
+import ru.yandex.practicum.filmorate.model.feed.FeedEventType;
+import ru.yandex.practicum.filmorate.model.feed.FeedOperation;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class FeedDbStorageTest {
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private FeedDbStorage feedStorage;
+
+    @BeforeEach
+    void init() {
+        feedStorage = new FeedDbStorage(jdbcTemplate, syncSettings());
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate);
+        for (int i = 1; i <= 2; i++) {
+            userStorage.add(User.builder()
+                    .name("User" + i)
+                    .email("user" + i + "@email.ru")
+                    .login("user" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build());
+        }
+    }
+
+    @Test
+    public void testGetUserFeedInAscendingOrder() {
+        feedStorage.add(1, 2, FeedEventType.FRIEND, FeedOperation.ADD);
+        feedStorage.getUserFeed(1, null, null);
+        feedStorage.add(1, 2, FeedEventType.FRIEND, FeedOperation.REMOVE);
+        feedStorage.add(2, 1, FeedEventType.FRIEND, FeedOperation.ADD);
+
+        List<FeedEntity> feed = feedStorage.getUserFeed(1, null, null);
+
+        assertThat(feed).hasSize(2);
+        assertThat(feed.get(0).getOperation()).isEqualTo(FeedOperation.ADD);
+        assertThat(feed.get(1).getOperation()).isEqualTo(FeedOperation.REMOVE);
+        assertThat(feed.get(0).getEventId()).isLessThan(feed.get(1).getEventId());
+        assertThat(feed.get(0).getEventType()).isEqualTo(FeedEventType.FRIEND);
+        assertThat(feed.get(0).getTimestamp()).isPositive();
+    }
+
+    @Test
+    public void testGetUserFeedPage() {
+        addEvents(1, 10);
+
+        List<FeedEntity> latest = feedStorage.getUserFeed(1, null, 3);
+        assertThat(eventIds(latest)).containsExactly(8L, 9L, 10L);
+
+        List<FeedEntity> previous = feedStorage.getUserFeed(1, latest.get(0).getEventId(), 3);
+        assertThat(eventIds(previous)).containsExactly(5L, 6L, 7L);
+
+        assertThat(eventIds(feedStorage.getUserFeed(1, 3L, 5))).containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void testGetUserFeedBeyondTimeline() {
+        addEvents(1, 150);
+        feedStorage.getUserFeed(1, null, 1);
+        addEvents(1, 5);
+
+        List<FeedEntity> feed = feedStorage.getUserFeed(1, null, null);
+        assertThat(eventIds(feed)).containsExactlyElementsOf(
+                LongStream.rangeClosed(1, 155).boxed().collect(Collectors.toList()));
+
+        assertThat(eventIds(feedStorage.getUserFeed(1, 40L, 3))).containsExactly(37L, 38L, 39L);
+    }
+
+    // Пакет событий попадает в ленты в памяти после фиксации, поэтому тест работает без транзакции теста
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testAddAllWritesEventsInOrder() {
+        feedStorage.add(1, 2, FeedEventType.FRIEND, FeedOperation.ADD);
+        feedStorage.getUserFeed(1, null, null);
+
+        feedStorage.addAll(List.of(
+                FeedEntity.builder().userId(1).entityId(5).eventType(FeedEventType.LIKE)
+                        .operation(FeedOperation.ADD).build(),
+                FeedEntity.builder().userId(2).entityId(5).eventType(FeedEventType.LIKE)
+                        .operation(FeedOperation.ADD).build(),
+                FeedEntity.builder().userId(1).entityId(5).eventType(FeedEventType.LIKE)
+                        .operation(FeedOperation.REMOVE).build()));
+
+        List<FeedEntity> feed = feedStorage.getUserFeed(1, null, null);
+        assertThat(eventIds(feed)).containsExactly(1L, 2L, 4L);
+        assertThat(feed.get(2).getOperation()).isEqualTo(FeedOperation.REMOVE);
+        assertThat(feed.get(2).getTimestamp()).isPositive();
+        assertThat(eventIds(feedStorage.getUserFeed(2, null, null))).containsExactly(3L);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testAddAllIsRolledBackWithCallerTransaction() {
+        FeedWriterSettings settings = new FeedWriterSettings();
+        settings.setMode(FeedWriteMode.ASYNC);
+        FeedDbStorage asyncStorage = new FeedDbStorage(jdbcTemplate, settings);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        try {
+            assertThat(asyncStorage.getUserFeed(1, null, null)).isEmpty();
+
+            transaction.executeWithoutResult(status -> {
+                asyncStorage.addAll(List.of(
+                        FeedEntity.builder().userId(1).entityId(5).eventType(FeedEventType.LIKE)
+                                .operation(FeedOperation.ADD).build()));
+                status.setRollbackOnly();
+            });
+            asyncStorage.flush();
+
+            assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM feed", Long.class)).isZero();
+            assertThat(asyncStorage.getUserFeed(1, null, null)).isEmpty();
+
+            transaction.executeWithoutResult(status -> asyncStorage.addAll(List.of(
+                    FeedEntity.builder().userId(1).entityId(6).eventType(FeedEventType.LIKE)
+                            .operation(FeedOperation.ADD).build())));
+
+            assertThat(asyncStorage.getUserFeed(1, null, null)).extracting(FeedEntity::getEntityId)
+                    .containsExactly(6L);
+        } finally {
+            asyncStorage.close();
+        }
+    }
+
+    @Test
+    public void testRemoveUserFeed() {
+        addEvents(1, 3);
+        assertThat(feedStorage.getUserFeed(1, null, null)).hasSize(3);
+
+        jdbcTemplate.update("DELETE FROM feed WHERE user_id = ?", 1);
+        feedStorage.removeUserFeed(1);
+
+        assertThat(feedStorage.getUserFeed(1, null, null)).isEmpty();
+    }
+
+    // Фоновая запись идет через свое соединение, поэтому тест работает без транзакции
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testAsyncEventsReachTimelineOnlyAfterWrite() {
+        FeedWriterSettings settings = new FeedWriterSettings();
+        settings.setMode(FeedWriteMode.ASYNC);
+        settings.setFlushIntervalMs(200);
+        FeedDbStorage asyncStorage = new FeedDbStorage(jdbcTemplate, settings);
+        try {
+            asyncStorage.add(1, 2, FeedEventType.FRIEND, FeedOperation.ADD);
+            assertThat(asyncStorage.getUserFeed(1, null, null)).hasSize(1);
+
+            assertThat(asyncStorage.getUserFeed(99, null, null)).isEmpty();
+            asyncStorage.add(99, 1, FeedEventType.LIKE, FeedOperation.ADD);
+            asyncStorage.add(1, 1, FeedEventType.LIKE, FeedOperation.ADD);
+
+            // Лента пользователя 1 уже в кэше, но новое событие видно сразу, без ожидания фоновой пачки
+            assertThat(asyncStorage.getUserFeed(1, null, null)).hasSize(2);
+            assertThat(asyncStorage.getUserFeed(99, null, null)).isEmpty();
+            assertThat(asyncStorage.getWriterMetrics().getFailed()).isEqualTo(1);
+            List<FeedEntity> feed = asyncStorage.getUserFeed(1, null, null);
+            assertThat(eventIds(feed)).containsExactlyElementsOf(
+                    jdbcTemplate.queryForList("SELECT event_id FROM feed WHERE user_id = 1 ORDER BY event_id",
+                            Long.class));
+        } finally {
+            asyncStorage.close();
+        }
+    }
+
+    static FeedWriterSettings syncSettings() {
+        FeedWriterSettings settings = new FeedWriterSettings();
+        settings.setMode(FeedWriteMode.SYNC);
+        return settings;
+    }
+
+    private void addEvents(long userId, int count) {
+        for (int i = 0; i < count; i++) {
+            feedStorage.add(userId, 1, FeedEventType.LIKE, FeedOperation.ADD);
+        }
+    }
+
+    private List<Long> eventIds(List<FeedEntity> feed) {
+        return feed.stream().map(FeedEntity::getEventId).collect(Collectors.toList());
+    }
+}
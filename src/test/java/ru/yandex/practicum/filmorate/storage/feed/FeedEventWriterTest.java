@@ -0,0 +1,144 @@
+package ru.yandex.practicum.filmorate.storage.feed;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+// Фоновый поток пишет через свое соединение, поэтому данные теста должны быть закоммичены
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class FeedEventWriterTest {
+    private final JdbcTemplate jdbcTemplate;
+    private FeedEventWriter writer;
+    private long typeId;
+    private long operationId;
+
+    @BeforeEach
+    void init() {
+        jdbcTemplate.update("INSERT INTO user_data (email, login, name, birthday) " +
+                "VALUES ('user@email.ru', 'user', 'User', '1990-01-01')");
+        typeId = jdbcTemplate.queryForObject("SELECT MIN(type_id) FROM event_type", Long.class);
+        operationId = jdbcTemplate.queryForObject("SELECT MIN(operation_id) FROM event_operation", Long.class);
+    }
+
+    @AfterEach
+    void close() {
+        writer.close();
+    }
+
+    @Test
+    public void testAsyncWriteIsBatched() {
+        writer = new FeedEventWriter(jdbcTemplate, settings(FeedWriteMode.ASYNC));
+
+        List<CompletableFuture<Long>> eventIds = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            eventIds.add(writer.write(row(1)));
+        }
+        writer.flush();
+
+        assertThat(countEvents()).isEqualTo(250);
+        assertThat(eventIds.stream().map(CompletableFuture::join).collect(Collectors.toList()))
+                .containsExactlyElementsOf(LongStream.rangeClosed(1, 250).boxed().collect(Collectors.toList()));
+        FeedWriterMetrics metrics = writer.getMetrics();
+        assertThat(metrics.getWritten()).isEqualTo(250);
+        assertThat(metrics.getBatches()).isBetween(3L, 249L);
+        assertThat(metrics.getFailed()).isZero();
+        assertThat(metrics.getQueueSize()).isZero();
+    }
+
+    @Test
+    public void testGroupCommitWaitsForBatch() throws Exception {
+        writer = new FeedEventWriter(jdbcTemplate, settings(FeedWriteMode.GROUP_COMMIT));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> results = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            results.add(executor.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    writer.write(row(1));
+                }
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        assertThat(countEvents()).isEqualTo(200);
+        assertThat(writer.getMetrics().getWritten()).isEqualTo(200);
+    }
+
+    @Test
+    public void testFailedBatchIsWrittenRowByRow() {
+        writer = new FeedEventWriter(jdbcTemplate, settings(FeedWriteMode.ASYNC));
+
+        CompletableFuture<Long> first = writer.write(row(1));
+        CompletableFuture<Long> failed = writer.write(row(999));
+        CompletableFuture<Long> last = writer.write(row(1));
+        writer.flush();
+
+        assertThat(jdbcTemplate.queryForList("SELECT event_id FROM feed ORDER BY event_id", Long.class))
+                .containsExactly(first.join(), last.join());
+        assertThat(failed).isCompletedExceptionally();
+        assertThat(writer.getMetrics().getFailed()).isEqualTo(1);
+        assertThat(writer.getMetrics().getWritten()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSyncWriteGoesDirectlyToTable() {
+        writer = new FeedEventWriter(jdbcTemplate, settings(FeedWriteMode.SYNC));
+
+        assertThat(writer.write(row(1))).isCompletedWithValue(1L);
+
+        assertThat(countEvents()).isEqualTo(1);
+        assertThat(writer.getMetrics().getEnqueued()).isZero();
+    }
+
+    @Test
+    public void testFlushAfterCloseReturns() {
+        writer = new FeedEventWriter(jdbcTemplate, settings(FeedWriteMode.ASYNC));
+        writer.write(row(1));
+        writer.close();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> writer.flush());
+        assertThat(writer.write(row(1))).isCompletedWithValue(2L);
+        assertThat(countEvents()).isEqualTo(2);
+    }
+
+    private FeedWriterSettings settings(FeedWriteMode mode) {
+        FeedWriterSettings settings = new FeedWriterSettings();
+        settings.setMode(mode);
+        return settings;
+    }
+
+    private Object[] row(long userId) {
+        return new Object[]{userId, 1L, typeId, operationId, new Timestamp(System.currentTimeMillis())};
+    }
+
+    private int countEvents() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM feed", Integer.class);
+    }
+}
@@ -6,9 +6,17 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exception.FilmAttributeNotExistOnFilmCreationException;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MPA;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.director.DirectorDbStorage;
@@ -24,26 +32,33 @@ import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+// Индексы фильмов обновляются после фиксации транзакции, поэтому тесты работают без транзакции теста
 @JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 public class FilmDbStorageTest {
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
     private FilmStorage filmStorage;
     private UserStorage userStorage;
     private DirectorStorage directorStorage;
 
     @BeforeEach
     void init() {
-        GenreStorage genreStorage = new GenreDbStorage(jdbcTemplate);
-        MPAStorage mpaStorage = new MPADbStorage(jdbcTemplate);
-        directorStorage = new DirectorDbStorage(jdbcTemplate);
-        filmStorage = new FilmDbStorage(jdbcTemplate, genreStorage, mpaStorage, directorStorage);
+        GenreStorage genreStorage = new GenreDbStorage(jdbcTemplate, namedJdbcTemplate);
+        MPAStorage mpaStorage = new MPADbStorage(jdbcTemplate, namedJdbcTemplate);
+        directorStorage = new DirectorDbStorage(jdbcTemplate, namedJdbcTemplate);
+        filmStorage = new FilmDbStorage(jdbcTemplate, namedJdbcTemplate, genreStorage, mpaStorage, directorStorage,
+                new FilmReadSettings());
         userStorage = new UserDbStorage(jdbcTemplate);
     }
 
@@ -512,4 +527,424 @@ public class FilmDbStorageTest {
 
         assertThat(filmStorage.notContainFilm(1)).isEqualTo(false);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetPopularAfterLikesChange() {
+        for (int i = 1; i <= 3; i++) {
+            filmStorage.add(Film.builder()
+                    .name("Film" + i)
+                    .description("Description" + i)
+                    .genres(Collections.emptyList())
+                    .directors(Collections.emptyList())
+                    .mpa(new MPA(1L, "G"))
+                    .releaseDate(LocalDate.of(2020, 8, 25))
+                    .duration(100)
+                    .build());
+            userStorage.add(User.builder()
+                    .name("Ivan Petrov")
+                    .email("user" + i + "@email.ru")
+                    .login("vanya" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build());
+        }
+
+        assertThat(filmStorage.getPopularFilm(10, null, null).get(0).getId()).isEqualTo(1L);
+
+        filmStorage.addLike(2, 1);
+        filmStorage.addLike(2, 2);
+        filmStorage.addLike(2, 2);
+        filmStorage.addLike(3, 1);
+
+        List<Film> popularFilms = filmStorage.getPopularFilm(10, null, null);
+        assertThat(popularFilms.get(0).getId()).isEqualTo(2L);
+        assertThat(popularFilms.get(1).getId()).isEqualTo(3L);
+        assertThat(popularFilms.get(2).getId()).isEqualTo(1L);
+
+        filmStorage.removeLike(2, 1);
+        filmStorage.removeLike(2, 2);
+
+        popularFilms = filmStorage.getPopularFilm(10, null, null);
+        assertThat(popularFilms.get(0).getId()).isEqualTo(3L);
+        assertThat(jdbcTemplate.queryForObject("SELECT likes_count FROM film WHERE film_id = 2", Integer.class))
+                .isEqualTo(0);
+    }
+
+    @Test
+    public void testGetPopularByGenreAndYear() {
+        filmStorage.getPopularFilm(10, null, null);
+
+        filmStorage.add(Film.builder()
+                .name("Film1")
+                .description("Description1")
+                .genres(List.of(new Genre(1L, "Комедия")))
+                .directors(Collections.emptyList())
+                .mpa(new MPA(1L, "G"))
+                .releaseDate(LocalDate.of(1999, 8, 25))
+                .duration(100)
+                .build());
+        filmStorage.add(Film.builder()
+                .name("Film2")
+                .description("Description2")
+                .genres(List.of(new Genre(2L, "Драма")))
+                .directors(Collections.emptyList())
+                .mpa(new MPA(1L, "G"))
+                .releaseDate(LocalDate.of(2000, 8, 25))
+                .duration(100)
+                .build());
+
+        assertThat(filmStorage.getPopularFilm(10, 1L, null)).extracting(Film::getId).containsExactly(1L);
+        assertThat(filmStorage.getPopularFilm(10, null, 2000)).extracting(Film::getId).containsExactly(2L);
+        assertThat(filmStorage.getPopularFilm(10, 2L, 1999)).isEmpty();
+
+        filmStorage.update(Film.builder()
+                .id(2L)
+                .name("Film2")
+                .description("Description2")
+                .genres(List.of(new Genre(1L, "Комедия")))
+                .directors(Collections.emptyList())
+                .mpa(new MPA(1L, "G"))
+                .releaseDate(LocalDate.of(1999, 8, 25))
+                .duration(100)
+                .build());
+
+        assertThat(filmStorage.getPopularFilm(10, 1L, 1999)).extracting(Film::getId).containsExactly(1L, 2L);
+
+        filmStorage.delete(1L);
+
+        assertThat(filmStorage.getPopularFilm(10, 1L, 1999)).extracting(Film::getId).containsExactly(2L);
+    }
+
+    @Test
+    public void testGetPage() {
+        for (int i = 1; i <= 5; i++) {
+            filmStorage.add(Film.builder()
+                    .name("Film" + i)
+                    .description("Description" + i)
+                    .genres(Collections.emptyList())
+                    .directors(Collections.emptyList())
+                    .mpa(new MPA(1L, "G"))
+                    .releaseDate(LocalDate.of(2020, 8, 25))
+                    .duration(100)
+                    .build());
+        }
+
+        assertThat(filmStorage.getPage(0, 2)).extracting(Film::getId).containsExactly(1L, 2L);
+        assertThat(filmStorage.getPage(2, 2)).extracting(Film::getId).containsExactly(3L, 4L);
+        assertThat(filmStorage.getPage(4, 2)).extracting(Film::getId).containsExactly(5L);
+        assertThat(filmStorage.getPage(5, 2)).isEmpty();
+        assertThat(filmStorage.getPage(0, 2).get(0).getMpa().getName()).isEqualTo("G");
+    }
+
+    @Test
+    public void testGetRecommendations() {
+        for (int i = 1; i <= 4; i++) {
+            filmStorage.add(Film.builder()
+                    .name("Film" + i)
+                    .description("Description" + i)
+                    .genres(Collections.emptyList())
+                    .directors(Collections.emptyList())
+                    .mpa(new MPA(1L, "G"))
+                    .releaseDate(LocalDate.of(2020, 8, 25))
+                    .duration(100)
+                    .build());
+            userStorage.add(User.builder()
+                    .name("Ivan Petrov")
+                    .email("user" + i + "@email.ru")
+                    .login("vanya" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build());
+        }
+
+        assertThat(filmStorage.getRecommendations(1L)).isEmpty();
+
+        filmStorage.addLike(1, 1);
+        filmStorage.addLike(2, 1);
+        filmStorage.addLike(1, 2);
+        filmStorage.addLike(2, 2);
+        filmStorage.addLike(3, 2);
+        filmStorage.addLike(1, 3);
+        filmStorage.addLike(4, 3);
+        filmStorage.addLike(4, 4);
+
+        assertThat(filmStorage.getRecommendations(1L)).extracting(Film::getId).containsExactly(3L, 4L);
+        assertThat(filmStorage.getRecommendations(4L)).extracting(Film::getId).containsExactly(1L);
+
+        filmStorage.removeLike(3, 2);
+
+        assertThat(filmStorage.getRecommendations(1L)).extracting(Film::getId).containsExactly(4L);
+
+        filmStorage.removeUserLikes(3);
+
+        assertThat(filmStorage.getRecommendations(1L)).isEmpty();
+    }
+
+    @Test
+    public void testLikeDuringLeaderboardLoadIsNotLost() throws InterruptedException {
+        directorStorage.add(Director.builder().name("Director").build());
+        filmStorage.add(searchFilm(null, "Film1", List.of()));
+        filmStorage.add(searchFilm(null, "Film2", List.of()));
+        userStorage.add(User.builder()
+                .name("Ivan Petrov")
+                .email("user1@email.ru")
+                .login("vanya1")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+
+        // Хранилище с незагруженным рейтингом: пока читаются его жанры, лайки фильма уже прочитаны,
+        // и в это время другой поток ставит лайк
+        List<Thread> writers = new ArrayList<>();
+        List<FilmStorage> coldStorage = new ArrayList<>();
+        JdbcTemplate loadingTemplate = new JdbcTemplate(Objects.requireNonNull(jdbcTemplate.getDataSource())) {
+            @Override
+            public void query(String sql, RowCallbackHandler rch) {
+                if (sql.contains("FROM film_genre") && writers.isEmpty()) {
+                    Thread writer = new Thread(() -> coldStorage.get(0).addLike(2, 1));
+                    writers.add(writer);
+                    writer.start();
+                    try {
+                        writer.join(500);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.query(sql, rch);
+            }
+        };
+        coldStorage.add(new FilmDbStorage(loadingTemplate, new NamedParameterJdbcTemplate(loadingTemplate),
+                new GenreDbStorage(loadingTemplate, namedJdbcTemplate),
+                new MPADbStorage(loadingTemplate, namedJdbcTemplate),
+                new DirectorDbStorage(loadingTemplate, namedJdbcTemplate),
+                new FilmReadSettings()));
+
+        coldStorage.get(0).getPopularFilm(10, null, null);
+        writers.get(0).join();
+
+        assertThat(coldStorage.get(0).getPopularFilm(10, null, null)).extracting(Film::getId)
+                .containsExactly(2L, 1L);
+    }
+
+    @Test
+    public void testRejectedFilmChangesAreNotApplied() {
+        directorStorage.add(Director.builder().name("Director").build());
+        filmStorage.add(searchFilm(null, "Original", List.of(new Genre(1L, null))));
+
+        Film missingDirector = searchFilm(1L, "Changed", List.of(new Genre(2L, null)));
+        missingDirector.setDirectors(List.of(Director.builder().id(99L).build()));
+        assertThatThrownBy(() -> filmStorage.update(missingDirector))
+                .isInstanceOf(FilmAttributeNotExistOnFilmCreationException.class);
+        Film missingGenre = searchFilm(null, "Added", List.of(new Genre(99L, null)));
+        assertThatThrownBy(() -> filmStorage.add(missingGenre))
+                .isInstanceOf(FilmAttributeNotExistOnFilmCreationException.class);
+
+        Film film = filmStorage.get(1L);
+        assertThat(film.getName()).isEqualTo("Original");
+        assertThat(film.getGenres()).extracting(Genre::getId).containsExactly(1L);
+        assertThat(film.getDirectors()).extracting(Director::getId).containsExactly(1L);
+        assertThat(filmStorage.getAll()).hasSize(1);
+        assertThat(filmStorage.search("orig", List.of("title"))).extracting(Film::getId).containsExactly(1L);
+        assertThat(filmStorage.search("chan", List.of("title"))).isEmpty();
+    }
+
+    @Test
+    public void testIndexesIgnoreRolledBackFilms() {
+        directorStorage.add(Director.builder().name("Director").build());
+        filmStorage.add(searchFilm(null, "Original", List.of()));
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            filmStorage.add(searchFilm(null, "Phantom", List.of()));
+            filmStorage.update(searchFilm(1L, "Changed", List.of()));
+            status.setRollbackOnly();
+        });
+
+        assertThat(filmStorage.getPopularFilm(10, null, null)).extracting(Film::getId).containsExactly(1L);
+        assertThat(filmStorage.search("phan", List.of("title"))).isEmpty();
+        assertThat(filmStorage.search("chan", List.of("title"))).isEmpty();
+        assertThat(filmStorage.search("orig", List.of("title"))).extracting(Film::getId).containsExactly(1L);
+    }
+
+    @Test
+    public void testIndexesIgnoreRolledBackImportsAndLikes() {
+        directorStorage.add(Director.builder().name("Director").build());
+        filmStorage.add(searchFilm(null, "First", List.of()));
+        filmStorage.add(searchFilm(null, "Second", List.of()));
+        userStorage.add(User.builder()
+                .name("User")
+                .email("user@email.ru")
+                .login("user")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+        filmStorage.addLike(1, 1);
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            filmStorage.addAll(List.of(searchFilm(null, "Phantom", List.of())));
+            filmStorage.removeLike(1, 1);
+            filmStorage.addLike(2, 1);
+            filmStorage.delete(1);
+            status.setRollbackOnly();
+        });
+
+        assertThat(filmStorage.getPopularFilm(10, null, null)).extracting(Film::getId).containsExactly(1L, 2L);
+        assertThat(filmStorage.search("phan", List.of("title"))).isEmpty();
+        assertThat(filmStorage.search("first", List.of("title"))).extracting(Film::getId).containsExactly(1L);
+
+        transaction.executeWithoutResult(status -> {
+            filmStorage.removeUserLikes(1);
+            status.setRollbackOnly();
+        });
+
+        assertThat(filmStorage.getPopularFilm(10, null, null)).extracting(Film::getId).containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void testSearch() {
+        directorStorage.add(Director.builder().name("Крадущийся тигр").build());
+        directorStorage.add(Director.builder().name("Other").build());
+        filmStorage.add(Film.builder()
+                .name("Крадущийся дракон")
+                .description("Description1")
+                .genres(Collections.emptyList())
+                .directors(Collections.emptyList())
+                .mpa(new MPA(1L, "G"))
+                .releaseDate(LocalDate.of(2020, 8, 25))
+                .duration(100)
+                .build());
+        filmStorage.add(Film.builder()
+                .name("Film2")
+                .description("Description2")
+                .genres(Collections.emptyList())
+                .directors(List.of(Director.builder().id(1L).build()))
+                .mpa(new MPA(1L, "G"))
+                .releaseDate(LocalDate.of(2020, 8, 25))
+                .duration(100)
+                .build());
+        userStorage.add(User.builder()
+                .name("Ivan Petrov")
+                .email("user1@email.ru")
+                .login("vanya1")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+        filmStorage.addLike(2, 1);
+
+        assertThat(filmStorage.search("КРАД", List.of("title"))).extracting(Film::getId).containsExactly(1L);
+        assertThat(filmStorage.search("крад", List.of("director"))).extracting(Film::getId).containsExactly(2L);
+        assertThat(filmStorage.search("крад", List.of("title", "director")))
+                .extracting(Film::getId).containsExactly(2L, 1L);
+        assertThat(filmStorage.search("m2", List.of("title"))).extracting(Film::getId).containsExactly(2L);
+        assertThat(filmStorage.search("нет", List.of("title", "director"))).isEmpty();
+
+        filmStorage.update(Film.builder()
+                .id(1L)
+                .name("Renamed")
+                .description("Description1")
+                .genres(Collections.emptyList())
+                .directors(List.of(Director.builder().id(2L).build()))
+                .mpa(new MPA(1L, "G"))
+                .releaseDate(LocalDate.of(2020, 8, 25))
+                .duration(100)
+                .build());
+        directorStorage.update(Director.builder().id(1L).name("Кто-то другой").build());
+
+        assertThat(filmStorage.search("крад", List.of("title", "director"))).isEmpty();
+        assertThat(filmStorage.search("othe", List.of("director"))).extracting(Film::getId).containsExactly(1L);
+        assertThat(filmStorage.search("другой", List.of("director"))).extracting(Film::getId).containsExactly(2L);
+
+        filmStorage.delete(2L);
+        directorStorage.delete(2L);
+
+        assertThat(filmStorage.search("другой", List.of("director"))).isEmpty();
+        assertThat(filmStorage.search("othe", List.of("director"))).isEmpty();
+        assertThat(filmStorage.search("renamed", List.of("title"))).extracting(Film::getId).containsExactly(1L);
+    }
+
+    @Test
+    public void testHydrateFilmsWithOverlappingAndEmptyRelations() {
+        Director first = directorStorage.add(Director.builder().name("First").build());
+        Director second = directorStorage.add(Director.builder().name("Second").build());
+        for (int i = 1; i <= 3; i++) {
+            userStorage.add(User.builder()
+                    .name("Ivan Petrov")
+                    .email("user" + i + "@email.ru")
+                    .login("vanya" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build());
+        }
+
+        // Жанры, режиссеры и лайки пересекаются между фильмами, у фильма 3 их нет совсем
+        filmStorage.add(hydrationFilm("Film1", 1L, List.of(new Genre(2, null), new Genre(1, null)), List.of(first)));
+        filmStorage.add(hydrationFilm("Film2", 2L, List.of(new Genre(2, null), new Genre(3, null)),
+                List.of(second, first)));
+        filmStorage.add(hydrationFilm("Film3", 1L, Collections.emptyList(), Collections.emptyList()));
+        filmStorage.add(hydrationFilm("Film4", 2L, List.of(new Genre(1, null)), List.of(second)));
+        filmStorage.addLike(1, 1);
+        filmStorage.addLike(1, 2);
+        filmStorage.addLike(2, 2);
+        filmStorage.addLike(2, 3);
+        filmStorage.addLike(4, 1);
+
+        List<Film> films = filmStorage.getAll();
+
+        assertThat(films).extracting(Film::getId).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(films.get(0).getGenres()).extracting(Genre::getId).containsExactly(1L, 2L);
+        assertThat(films.get(1).getGenres()).extracting(Genre::getId).containsExactly(2L, 3L);
+        assertThat(films.get(2).getGenres()).isEmpty();
+        assertThat(films.get(3).getGenres()).extracting(Genre::getId).containsExactly(1L);
+        assertThat(films).flatExtracting(Film::getGenres).extracting(Genre::getName).doesNotContainNull();
+
+        assertThat(films.get(0).getDirectors()).extracting(Director::getName).containsExactly("First");
+        assertThat(films.get(1).getDirectors()).extracting(Director::getName).containsExactly("First", "Second");
+        assertThat(films.get(2).getDirectors()).isEmpty();
+        assertThat(films.get(3).getDirectors()).extracting(Director::getName).containsExactly("Second");
+
+        assertThat(films.get(0).getLikes()).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(films.get(1).getLikes()).containsExactlyInAnyOrder(2L, 3L);
+        assertThat(films.get(2).getLikes()).isEmpty();
+        assertThat(films.get(3).getLikes()).containsExactly(1L);
+
+        assertThat(films).extracting(film -> film.getMpa().getName()).containsExactly("G", "PG", "G", "PG");
+
+        // Страница и выборка без лайков собираются теми же пакетными запросами
+        List<Film> page = filmStorage.getPage(1, 2);
+        assertThat(page).extracting(Film::getId).containsExactly(2L, 3L);
+        assertThat(page.get(0).getGenres()).extracting(Genre::getId).containsExactly(2L, 3L);
+        assertThat(page.get(1).getDirectors()).isEmpty();
+        assertThat(page.get(1).getLikes()).isEmpty();
+
+        List<Film> lean = filmStorage.getPopularFilmLean(4, null, null);
+        assertThat(lean).extracting(Film::getId).containsExactlyInAnyOrder(1L, 2L, 3L, 4L);
+        for (Film film : lean) {
+            Film full = films.get((int) film.getId() - 1);
+            assertThat(film.getLikesCount()).isEqualTo((long) full.getLikes().size());
+            assertThat(film.getGenres()).isEqualTo(full.getGenres());
+            assertThat(film.getDirectors()).isEqualTo(full.getDirectors());
+        }
+    }
+
+    private Film hydrationFilm(String name, long mpaId, List<Genre> genres, List<Director> directors) {
+        return Film.builder()
+                .name(name)
+                .description("Description")
+                .genres(genres)
+                .directors(directors)
+                .mpa(new MPA(mpaId, null))
+                .releaseDate(LocalDate.of(2020, 8, 25))
+                .duration(100)
+                .build();
+    }
+
+    private Film searchFilm(Long id, String name, List<Genre> genres) {
+        Film.FilmBuilder builder = Film.builder()
+                .name(name)
+                .description("Description")
+                .genres(genres)
+                .directors(List.of(Director.builder().id(1L).build()))
+                .mpa(new MPA(1L, "G"))
+                .releaseDate(LocalDate.of(2020, 8, 25))
+                .duration(100);
+        if (id != null) {
+            builder.id(id);
+        }
+        return builder.build();
+    }
+}
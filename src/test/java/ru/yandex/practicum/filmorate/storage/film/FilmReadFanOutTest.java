@@ -0,0 +1,163 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.storage.director.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MPADbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Части фильма читаются в других потоках через свои соединения, поэтому данные теста должны быть закоммичены
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class FilmReadFanOutTest {
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final Set<String> genreThreads = Collections.synchronizedSet(new HashSet<>());
+    private RuntimeException genresFailure;
+    private long genresDelayMs;
+    private String genresQuery;
+    private volatile RuntimeException genresQueryFailure;
+    private final CountDownLatch genresQueryDone = new CountDownLatch(1);
+    private long filmId;
+
+    @BeforeEach
+    void init() {
+        FilmDbStorage storage = storage(new FilmReadSettings());
+        UserDbStorage userStorage = new UserDbStorage(jdbcTemplate);
+        Director director = new DirectorDbStorage(jdbcTemplate, namedJdbcTemplate)
+                .add(Director.builder().name("Director").build());
+
+        filmId = storage.add(Film.builder()
+                .name("Film")
+                .description("Description")
+                .genres(List.of(new Genre(1L, null), new Genre(2L, null)))
+                .directors(List.of(director))
+                .mpa(new MPA(1L, null))
+                .releaseDate(LocalDate.of(2020, 8, 25))
+                .duration(100)
+                .build()).getId();
+        for (int i = 1; i <= 3; i++) {
+            User user = userStorage.add(User.builder()
+                    .email("user" + i + "@email.ru")
+                    .login("user" + i)
+                    .name("User " + i)
+                    .birthday(LocalDate.of(1990, 1, i))
+                    .build());
+            storage.addLike(filmId, user.getId());
+        }
+    }
+
+    @Test
+    public void testParallelReadMatchesSequentialRead() {
+        FilmReadSettings sequential = new FilmReadSettings();
+        sequential.setParallel(false);
+
+        Film expected = storage(sequential).get(filmId);
+        genreThreads.clear();
+        Film film = storage(new FilmReadSettings()).get(filmId);
+
+        assertThat(film).usingRecursiveComparison().isEqualTo(expected);
+        assertThat(film.getGenres()).hasSize(2);
+        assertThat(film.getDirectors()).hasSize(1);
+        assertThat(film.getLikes()).hasSize(3);
+        assertThat(film.getMpa().getName()).isNotNull();
+        assertThat(genreThreads).isNotEmpty().allMatch(name -> name.startsWith("film-read-"));
+    }
+
+    @Test
+    public void testMissingFilmIsNotFound() {
+        FilmDbStorage storage = storage(new FilmReadSettings());
+
+        assertThatThrownBy(() -> storage.get(filmId + 1)).isInstanceOf(EntityNotFoundException.class);
+    }
+
+    @Test
+    public void testFailedPartIsRethrown() {
+        genresFailure = new DataRetrievalFailureException("genres");
+        FilmDbStorage storage = storage(new FilmReadSettings());
+
+        assertThatThrownBy(() -> storage.get(filmId)).isSameAs(genresFailure);
+    }
+
+    @Test
+    public void testSlowPartTimesOut() {
+        FilmReadSettings settings = new FilmReadSettings();
+        settings.setTimeoutMs(100);
+        genresDelayMs = 2000;
+        FilmDbStorage storage = storage(settings);
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> storage.get(filmId)).isInstanceOf(QueryTimeoutException.class);
+        assertThat(System.nanoTime() - start).isLessThan(1_000_000_000L);
+    }
+
+    @Test
+    public void testSlowQueryIsStoppedAfterTimeout() throws InterruptedException {
+        FilmReadSettings settings = new FilmReadSettings();
+        settings.setTimeoutMs(100);
+        genresQuery = "SELECT SUM(X * 2) FROM SYSTEM_RANGE(1, 5000000000)";
+        FilmDbStorage storage = storage(settings);
+
+        assertThatThrownBy(() -> storage.get(filmId)).isInstanceOf(QueryTimeoutException.class);
+        // Тайм-аут оператора задается в секундах, после него БД прерывает запрос
+        assertThat(genresQueryDone.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(genresQueryFailure).isInstanceOf(QueryTimeoutException.class);
+    }
+
+    private FilmDbStorage storage(FilmReadSettings settings) {
+        GenreDbStorage genreStorage = new GenreDbStorage(jdbcTemplate, namedJdbcTemplate) {
+            @Override
+            public Map<Long, List<Genre>> getFilmsGenres(Collection<Long> filmIds) {
+                genreThreads.add(Thread.currentThread().getName());
+                if (genresFailure != null) {
+                    throw genresFailure;
+                }
+                if (genresQuery != null) {
+                    try {
+                        jdbcTemplate.queryForObject(genresQuery, Long.class);
+                    } catch (RuntimeException e) {
+                        genresQueryFailure = e;
+                        throw e;
+                    } finally {
+                        genresQueryDone.countDown();
+                    }
+                }
+                if (genresDelayMs > 0) {
+                    try {
+                        Thread.sleep(genresDelayMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.getFilmsGenres(filmIds);
+            }
+        };
+        return new FilmDbStorage(jdbcTemplate, namedJdbcTemplate, genreStorage,
+                new MPADbStorage(jdbcTemplate, namedJdbcTemplate),
+                new DirectorDbStorage(jdbcTemplate, namedJdbcTemplate),
+                settings);
+    }
+}
@@ -0,0 +1,227 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.exception.FilmAttributeNotExistOnFilmCreationException;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.director.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MPADbStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class InMemoryFilmStorageTest {
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private FilmStorage filmStorage;
+    private UserStorage userStorage;
+    private DirectorStorage directorStorage;
+
+    @BeforeEach
+    void init() {
+        directorStorage = new DirectorDbStorage(jdbcTemplate, namedJdbcTemplate);
+        userStorage = new InMemoryUserStorage();
+        filmStorage = new InMemoryFilmStorage(
+                new GenreDbStorage(jdbcTemplate, namedJdbcTemplate),
+                new MPADbStorage(jdbcTemplate, namedJdbcTemplate),
+                directorStorage,
+                userStorage);
+    }
+
+    @Test
+    public void testAddAndUpdateFilm() {
+        Director director = directorStorage.add(Director.builder().name("Крадущийся тигр").build());
+        Film film = filmStorage.add(film("Film", List.of(new Genre(2, null), new Genre(1, null)),
+                List.of(director)));
+
+        assertThat(film.getId()).isEqualTo(1);
+        assertThat(film.getMpa().getName()).isNotBlank();
+        assertThat(film.getGenres()).extracting(Genre::getId).containsExactly(1L, 2L);
+        assertThat(film.getDirectors()).extracting(Director::getName).containsExactly("Крадущийся тигр");
+
+        // Без списка жанров жанры сохраняются, режиссеры заменяются
+        Film update = film("Updated", null, null);
+        update.setId(film.getId());
+        Film updated = filmStorage.update(update);
+        assertThat(updated.getName()).isEqualTo("Updated");
+        assertThat(updated.getGenres()).extracting(Genre::getId).containsExactly(1L, 2L);
+        assertThat(updated.getDirectors()).isEmpty();
+        assertThat(filmStorage.getFilmWithName("upd")).extracting(Film::getId).containsExactly(film.getId());
+
+        assertThatThrownBy(() -> filmStorage.add(film("Film", List.of(new Genre(999, null)), null)))
+                .isInstanceOf(FilmAttributeNotExistOnFilmCreationException.class);
+        assertThatThrownBy(() -> filmStorage.get(42)).isInstanceOf(EntityNotFoundException.class);
+    }
+
+    @Test
+    public void testConcurrentLikes() throws Exception {
+        int users = 50;
+        for (int i = 1; i <= users; i++) {
+            userStorage.add(User.builder()
+                    .name("Ivan Petrov")
+                    .email("user" + i + "@email.ru")
+                    .login("vanya" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build());
+        }
+        for (int i = 1; i <= 3; i++) {
+            filmStorage.add(film("Film " + i, List.of(), List.of()));
+        }
+
+        // Фильм 2 лайкают все, фильм 3 - каждый второй, каждый лайк ставится из двух потоков
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int attempt = 0; attempt < 2; attempt++) {
+                for (long userId = 1; userId <= users; userId++) {
+                    long id = userId;
+                    futures.add(executor.submit(() -> {
+                        filmStorage.addLike(2, id);
+                        if (id % 2 == 0) {
+                            filmStorage.addLike(3, id);
+                        }
+                    }));
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(filmStorage.getFilmLikes(2)).hasSize(users);
+        assertThat(filmStorage.getFilmLikes(3)).hasSize(users / 2);
+        assertThat(filmStorage.getPopularFilm(3, null, null)).extracting(Film::getId).containsExactly(2L, 3L, 1L);
+        assertThat(filmStorage.getCommonFilms(2, 4)).extracting(Film::getId).containsExactly(2L, 3L);
+        assertThatThrownBy(() -> filmStorage.addLike(1, 999))
+                .isInstanceOf(DataIntegrityViolationException.class);
+
+        for (long userId = 1; userId <= users; userId++) {
+            filmStorage.removeUserLikes(userId);
+        }
+        assertThat(filmStorage.getFilmLikes(2)).isEmpty();
+        assertThat(filmStorage.getPopularFilm(3, null, null).stream().map(Film::getId).collect(Collectors.toList()))
+                .containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    public void testDirectorFilmsWithoutDirectorId() {
+        Director director = directorStorage.add(Director.builder().name("Крадущийся тигр").build());
+        filmStorage.add(film("Film", List.of(), List.of(director)));
+
+        assertThat(filmStorage.getDirectorSortedFilms(null, "likes")).isEmpty();
+        assertThat(filmStorage.getDirectorSortedFilms(null, "year")).isEmpty();
+        assertThat(filmStorage.getDirectorSortedFilms(director.getId(), "year")).hasSize(1);
+    }
+
+    @Test
+    public void testUpdateValidatesWithoutFilmLock() throws Exception {
+        userStorage.add(user(1));
+
+        // Проверка MPA при обновлении ждет лайк того же фильма из другого потока: под блокировкой фильма
+        // это была бы взаимная блокировка
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicBoolean updating = new AtomicBoolean();
+        AtomicReference<FilmStorage> storageRef = new AtomicReference<>();
+        FilmStorage storage = new InMemoryFilmStorage(
+                new GenreDbStorage(jdbcTemplate, namedJdbcTemplate),
+                new MPADbStorage(jdbcTemplate, namedJdbcTemplate) {
+                    @Override
+                    public boolean notContainMPA(long id) {
+                        if (updating.get()) {
+                            try {
+                                executor.submit(() -> storageRef.get().addLike(1, 1)).get(5, TimeUnit.SECONDS);
+                            } catch (Exception e) {
+                                throw new IllegalStateException(e);
+                            }
+                        }
+                        return super.notContainMPA(id);
+                    }
+                },
+                directorStorage,
+                userStorage);
+        storageRef.set(storage);
+        try {
+            storage.add(film("Film", List.of(new Genre(1, null)), List.of()));
+            updating.set(true);
+            Film update = film("Updated", null, List.of());
+            update.setId(1);
+
+            Film updated = storage.update(update);
+
+            assertThat(updated.getName()).isEqualTo("Updated");
+            assertThat(updated.getGenres()).extracting(Genre::getId).containsExactly(1L);
+            assertThat(storage.getFilmLikes(1)).containsExactly(1L);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testNoLikesAfterUserLikesRemoved() {
+        userStorage.add(user(1));
+        filmStorage.add(film("Film 1", List.of(), List.of()));
+        filmStorage.add(film("Film 2", List.of(), List.of()));
+        filmStorage.addLike(1, 1);
+
+        // Лайки удаляются перед удалением пользователя: лайк, пришедший между ними, не сохраняется
+        filmStorage.removeUserLikes(1);
+
+        assertThatThrownBy(() -> filmStorage.addLike(2, 1)).isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(filmStorage.getFilmLikes(1)).isEmpty();
+        assertThat(filmStorage.getFilmLikes(2)).isEmpty();
+        assertThat(filmStorage.getPopularFilm(2, null, null)).extracting(Film::getId).containsExactly(1L, 2L);
+    }
+
+    private User user(int i) {
+        return User.builder()
+                .name("Ivan Petrov")
+                .email("user" + i + "@email.ru")
+                .login("vanya" + i)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+    }
+
+    private Film film(String name, List<Genre> genres, List<Director> directors) {
+        return Film.builder()
+                .name(name)
+                .description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .mpa(new MPA(1, null))
+                .genres(genres)
+                .directors(directors)
+                .build();
+    }
+}
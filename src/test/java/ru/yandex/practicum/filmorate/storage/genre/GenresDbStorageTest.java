@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
@@ -13,6 +14,7 @@ import ru.yandex.practicum.filmorate.model.MPA;
 import ru.yandex.practicum.filmorate.storage.director.DirectorDbStorage;
 import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmReadSettings;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.mpa.MPADbStorage;
 import ru.yandex.practicum.filmorate.storage.mpa.MPAStorage;
@@ -29,15 +31,17 @@ import static org.assertj.core.api.Assertions.assertThat;
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 public class GenresDbStorageTest {
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
     private GenreStorage genreStorage;
     private FilmStorage filmStorage;
 
     @BeforeEach
     void init() {
-        genreStorage = new GenreDbStorage(jdbcTemplate);
-        MPAStorage mpaStorage = new MPADbStorage(jdbcTemplate);
-        DirectorStorage directorStorage = new DirectorDbStorage(jdbcTemplate);
-        filmStorage = new FilmDbStorage(jdbcTemplate, genreStorage, mpaStorage, directorStorage);
+        genreStorage = new GenreDbStorage(jdbcTemplate, namedJdbcTemplate);
+        MPAStorage mpaStorage = new MPADbStorage(jdbcTemplate, namedJdbcTemplate);
+        DirectorStorage directorStorage = new DirectorDbStorage(jdbcTemplate, namedJdbcTemplate);
+        filmStorage = new FilmDbStorage(jdbcTemplate, namedJdbcTemplate, genreStorage, mpaStorage, directorStorage,
+                new FilmReadSettings());
     }
 
     @Test
@@ -105,4 +109,12 @@ public class GenresDbStorageTest {
         assertThat(genreStorage.notContainGenre(-1)).isEqualTo(true);
         assertThat(genreStorage.notContainGenre(1)).isEqualTo(false);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCacheReturnsCopies() {
+        Genre genre = genreStorage.get(1);
+        List<Genre> genres = genreStorage.getAll();
+
+        assertThat(genreStorage.get(1)).isEqualTo(genre).isNotSameAs(genre).isNotSameAs(genres.get(0));
+    }
+}
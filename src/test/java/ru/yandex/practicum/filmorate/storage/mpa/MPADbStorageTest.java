@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import ru.yandex.practicum.filmorate.model.MPA;
 
@@ -18,11 +19,12 @@ import static org.assertj.core.api.Assertions.assertThat;
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 public class MPADbStorageTest {
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
     private MPAStorage mpaStorage;
 
     @BeforeEach
     void init() {
-        mpaStorage = new MPADbStorage(jdbcTemplate);
+        mpaStorage = new MPADbStorage(jdbcTemplate, namedJdbcTemplate);
     }
 
     @Test
@@ -37,4 +39,13 @@ public class MPADbStorageTest {
         assertThat(mpaStorage.notContainMPA(-1)).isEqualTo(true);
         assertThat(mpaStorage.notContainMPA(1)).isEqualTo(false);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCacheReturnsCopies() {
+        MPA mpa = mpaStorage.get(1);
+        List<MPA> mpas = mpaStorage.getAll();
+
+        assertThat(mpaStorage.get(1)).isEqualTo(mpa).isNotSameAs(mpa).isNotSameAs(mpas.get(0));
+        assertThat(mpaStorage.getByIds(List.of(1L)).get(1L)).isEqualTo(mpa).isNotSameAs(mpaStorage.get(1));
+    }
+}
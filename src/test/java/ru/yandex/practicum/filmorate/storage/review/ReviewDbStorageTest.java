@@ -0,0 +1,137 @@
+package ru.yandex.practicum.filmorate.storage.review;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.director.DirectorDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmReadSettings;
+import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MPADbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ReviewDbStorageTest {
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private ReviewDbStorage reviewStorage;
+    private UserDbStorage userStorage;
+
+    @BeforeEach
+    void init() {
+        reviewStorage = new ReviewDbStorage(jdbcTemplate);
+        FilmDbStorage filmStorage = new FilmDbStorage(jdbcTemplate, namedJdbcTemplate,
+                new GenreDbStorage(jdbcTemplate, namedJdbcTemplate),
+                new MPADbStorage(jdbcTemplate, namedJdbcTemplate),
+                new DirectorDbStorage(jdbcTemplate, namedJdbcTemplate),
+                new FilmReadSettings());
+        userStorage = new UserDbStorage(jdbcTemplate);
+
+        for (int i = 1; i <= 3; i++) {
+            userStorage.add(User.builder()
+                    .name("User" + i)
+                    .email("user" + i + "@email.ru")
+                    .login("user" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build());
+        }
+        for (int i = 1; i <= 2; i++) {
+            filmStorage.add(Film.builder()
+                    .name("Film" + i)
+                    .description("Description")
+                    .releaseDate(LocalDate.of(2000, 1, 1))
+                    .duration(100)
+                    .mpa(new MPA(1L, "G"))
+                    .genres(new ArrayList<>())
+                    .directors(new ArrayList<>())
+                    .build());
+        }
+        reviewStorage.add(review(1, 1));
+        reviewStorage.add(review(2, 1));
+        reviewStorage.add(review(3, 2));
+    }
+
+    @Test
+    public void testUsefulFollowsVotes() {
+        reviewStorage.addLike(1, 2);
+        reviewStorage.addLike(1, 3);
+        assertThat(useful(1)).isEqualTo(2);
+
+        reviewStorage.addLike(1, 2);
+        assertThat(useful(1)).isEqualTo(2);
+
+        reviewStorage.addDislike(1, 2);
+        assertThat(useful(1)).isEqualTo(0);
+
+        assertThat(reviewStorage.removeDislike(1, 2)).isTrue();
+        assertThat(useful(1)).isEqualTo(1);
+
+        assertThat(reviewStorage.removeLike(1, 2)).isFalse();
+        assertThat(useful(1)).isEqualTo(1);
+    }
+
+    @Test
+    public void testRejectedReviewDoesNotShiftIds() {
+        assertThat(reviewStorage.add(review(99, 1))).isEmpty();
+        assertThat(reviewStorage.add(review(1, 99))).isEmpty();
+
+        assertThat(reviewStorage.add(review(1, 2))).get().extracting(Review::getId).isEqualTo(4L);
+    }
+
+    @Test
+    public void testReviewsOrderedByUseful() {
+        reviewStorage.addDislike(1, 1);
+        reviewStorage.addLike(2, 1);
+        reviewStorage.addLike(3, 1);
+        reviewStorage.addLike(3, 2);
+
+        assertThat(reviewStorage.getAllReviews(10)).extracting(Review::getId).containsExactly(3L, 2L, 1L);
+        assertThat(reviewStorage.getAllReviews(1)).extracting(Review::getId).containsExactly(3L);
+        assertThat(reviewStorage.getFilmReviews(1, 10)).extracting(Review::getId).containsExactly(2L, 1L);
+        assertThat(reviewStorage.getFilmReviews(1, 10)).extracting(Review::getUseful).containsExactly(1L, -1L);
+    }
+
+    @Test
+    public void testDeletedVoterIsRemovedFromUseful() {
+        reviewStorage.addLike(1, 2);
+        reviewStorage.addLike(1, 3);
+        reviewStorage.addDislike(3, 2);
+        reviewStorage.addLike(3, 1);
+
+        userStorage.delete(2);
+
+        assertThat(useful(1)).isEqualTo(1);
+        assertThat(useful(3)).isEqualTo(1);
+        assertThat(reviewStorage.getReview(2)).isEmpty();
+        assertThat(reviewStorage.getAllReviews(10)).extracting(Review::getUseful).containsExactly(1L, 1L);
+    }
+
+    private long useful(long id) {
+        return reviewStorage.getReview(id).orElseThrow().getUseful();
+    }
+
+    private Review review(long userId, long filmId) {
+        return Review.builder()
+                .content("Review")
+                .userId(userId)
+                .filmId(filmId)
+                .isPositive(true)
+                .build();
+    }
+}
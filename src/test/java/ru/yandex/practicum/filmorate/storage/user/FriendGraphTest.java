@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FriendGraphTest {
+    @Test
+    public void testPairsOfLargeIdsDoNotCollide() {
+        FriendGraph graph = new FriendGraph();
+        graph.load(List.of());
+
+        // При упаковке в один long пары (0, 2^32) и (1, 2^32) давали один ключ 2^32
+        long large = 1L << 32;
+        graph.putRow(1, large, true);
+        graph.putRow(0, large, false);
+        graph.putRow(large + 1, large + 2, false);
+
+        assertThat(graph.getFriends(1)).containsExactly(large);
+        assertThat(graph.getFriends(0)).containsExactly(large);
+        assertThat(graph.getFriends(large)).containsExactly(1L);
+        assertThat(graph.getFriends(large + 1)).containsExactly(large + 2);
+
+        // Удаление строки одной пары и новая строка другой не затрагивают подтвержденную строку (1, 2^32)
+        graph.removeRow(0, large);
+        graph.putRow(large, 1, false);
+        assertThat(graph.getFriends(0)).isEmpty();
+        assertThat(graph.getFriends(1)).containsExactly(large);
+        assertThat(graph.getFriends(large)).containsExactly(1L);
+
+        graph.removeUser(large);
+        assertThat(graph.getFriends(1)).isEmpty();
+        assertThat(graph.getFriends(large + 1)).containsExactly(large + 2);
+    }
+}
@@ -0,0 +1,181 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exception.EntityNotFoundException;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@JdbcTest
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class InMemoryUserStorageTest {
+    private final JdbcTemplate jdbcTemplate;
+
+    // Граф UserDbStorage обновляется после фиксации транзакции, поэтому тест работает без транзакции теста
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testFriendsMatchDbStorage() {
+        UserStorage dbStorage = new UserDbStorage(jdbcTemplate);
+        UserStorage memoryStorage = new InMemoryUserStorage();
+        for (int i = 1; i <= 5; i++) {
+            dbStorage.add(user(i));
+            memoryStorage.add(user(i));
+        }
+
+        Random random = new Random(11);
+        for (int i = 0; i < 300; i++) {
+            long id = 1 + random.nextInt(5);
+            long friendId = 1 + random.nextInt(5);
+            if (id == friendId) {
+                continue;
+            }
+            if (random.nextBoolean()) {
+                try {
+                    dbStorage.addFriend(id, friendId);
+                } catch (DataIntegrityViolationException ignored) {
+                    // Повторная заявка
+                }
+                memoryStorage.addFriend(id, friendId);
+            } else {
+                dbStorage.removeFriend(id, friendId);
+                memoryStorage.removeFriend(id, friendId);
+            }
+        }
+        dbStorage.delete(5);
+        memoryStorage.delete(5);
+
+        for (long id = 1; id <= 4; id++) {
+            assertThat(memoryStorage.get(id).getFriends()).isEqualTo(dbStorage.get(id).getFriends());
+            assertThat(memoryStorage.getFriends(id)).isEqualTo(dbStorage.getFriends(id));
+            for (long otherId = 1; otherId <= 4; otherId++) {
+                assertThat(memoryStorage.getCommonFriends(id, otherId))
+                        .isEqualTo(dbStorage.getCommonFriends(id, otherId));
+            }
+        }
+        assertThatThrownBy(() -> memoryStorage.getFriends(5)).isInstanceOf(EntityNotFoundException.class);
+    }
+
+    @Test
+    public void testConcurrentFriendRequests() throws Exception {
+        UserStorage storage = new InMemoryUserStorage();
+        int users = 40;
+        for (int i = 1; i <= users; i++) {
+            storage.add(user(i));
+        }
+
+        // Каждый пользователь дружит со всеми, встречные заявки идут из разных потоков
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (long id = 1; id <= users; id++) {
+                long userId = id;
+                futures.add(executor.submit(() -> {
+                    for (long friendId = 1; friendId <= users; friendId++) {
+                        if (friendId != userId) {
+                            storage.addFriend(userId, friendId);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (long id = 1; id <= users; id++) {
+            assertThat(storage.getFriends(id)).hasSize(users - 1);
+        }
+        assertThat(storage.getCommonFriends(1, 2)).hasSize(users - 2);
+    }
+
+    @Test
+    public void testConcurrentDeleteAndFriendRequests() throws Exception {
+        int users = 40;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 30; round++) {
+                UserStorage storage = new InMemoryUserStorage();
+                for (int i = 1; i <= users; i++) {
+                    storage.add(user(i));
+                }
+                // Четные пользователи подписаны на всех нечетных, поэтому их удаление меняет чужие строки follow
+                for (long id = 1; id <= users; id += 2) {
+                    for (long followerId = 2; followerId <= users; followerId += 2) {
+                        storage.addFriend(id, followerId);
+                    }
+                }
+
+                // Пока четные пользователи удаляются, нечетные отправляют заявки друг другу
+                List<Future<?>> futures = new ArrayList<>();
+                for (long id = 1; id <= users; id++) {
+                    long userId = id;
+                    futures.add(executor.submit(() -> {
+                        if (userId % 2 == 0) {
+                            storage.delete(userId);
+                            return;
+                        }
+                        for (long friendId = 1; friendId <= users; friendId += 2) {
+                            if (friendId != userId) {
+                                storage.addFriend(friendId, userId);
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get(30, TimeUnit.SECONDS);
+                }
+
+                for (long id = 1; id <= users; id += 2) {
+                    assertThat(storage.getFriends(id)).extracting(User::getId)
+                            .hasSize(users / 2 - 1)
+                            .allMatch(friendId -> friendId % 2 == 1);
+                }
+                // Строки follow и списки друзей согласованы: после двух проходов отписок друзей не остается
+                for (int pass = 0; pass < 2; pass++) {
+                    for (long id = 1; id <= users; id += 2) {
+                        for (long friendId = 1; friendId <= users; friendId += 2) {
+                            if (friendId != id) {
+                                storage.removeFriend(id, friendId);
+                            }
+                        }
+                    }
+                }
+                for (long id = 1; id <= users; id += 2) {
+                    assertThat(storage.getFriends(id)).isEmpty();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private User user(int i) {
+        return User.builder()
+                .name("Ivan Petrov")
+                .email("user" + i + "@email.ru")
+                .login("vanya" + i)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+    }
+}
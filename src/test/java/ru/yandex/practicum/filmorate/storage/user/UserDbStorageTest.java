@@ -5,14 +5,22 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.MPA;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.director.DirectorDbStorage;
 import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmReadSettings;
 import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
 import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
 import ru.yandex.practicum.filmorate.storage.mpa.MPADbStorage;
@@ -22,24 +30,31 @@ import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.Random;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
 
+// Граф дружбы обновляется после фиксации транзакции, поэтому тесты работают без транзакции теста
 @JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 class UserDbStorageTest {
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
     private UserDbStorage userStorage;
     private FilmDbStorage filmStorage;
 
     @BeforeEach
     void init() {
-        GenreStorage genreStorage = new GenreDbStorage(jdbcTemplate);
-        MPAStorage mpaStorage = new MPADbStorage(jdbcTemplate);
-        DirectorStorage directorStorage = new DirectorDbStorage(jdbcTemplate);
-        filmStorage = new FilmDbStorage(jdbcTemplate, genreStorage, mpaStorage, directorStorage);
+        GenreStorage genreStorage = new GenreDbStorage(jdbcTemplate, namedJdbcTemplate);
+        MPAStorage mpaStorage = new MPADbStorage(jdbcTemplate, namedJdbcTemplate);
+        DirectorStorage directorStorage = new DirectorDbStorage(jdbcTemplate, namedJdbcTemplate);
+        filmStorage = new FilmDbStorage(jdbcTemplate, namedJdbcTemplate, genreStorage, mpaStorage, directorStorage,
+                new FilmReadSettings());
         userStorage = new UserDbStorage(jdbcTemplate);
     }
 
@@ -333,4 +348,130 @@ class UserDbStorageTest {
         assertThat(userStorage.getLikes(1)).isNotEmpty().isNotNull().isEqualTo(test);
         assertThat(userStorage.getLikes(2)).isNotEmpty().isNotNull().isEqualTo(test);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetPage() {
+        for (int i = 1; i <= 5; i++) {
+            userStorage.add(User.builder()
+                    .name("Ivan Petrov")
+                    .email("user" + i + "@email.ru")
+                    .login("vanya" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build());
+        }
+
+        assertThat(userStorage.getPage(0, 3)).extracting(User::getId).containsExactly(1L, 2L, 3L);
+        assertThat(userStorage.getPage(3, 3)).extracting(User::getId).containsExactly(4L, 5L);
+        assertThat(userStorage.getPage(5, 3)).isEmpty();
+    }
+
+    @Test
+    public void testFriendGraphMatchesFollowTable() {
+        for (int i = 1; i <= 5; i++) {
+            userStorage.add(User.builder()
+                    .name("Ivan Petrov")
+                    .email("user" + i + "@email.ru")
+                    .login("vanya" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build());
+        }
+        userStorage.getFriends(1);
+
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            long id = 1 + random.nextInt(5);
+            long friendId = 1 + random.nextInt(5);
+            if (id == friendId) {
+                continue;
+            }
+            if (random.nextBoolean()) {
+                try {
+                    userStorage.addFriend(id, friendId);
+                } catch (DataIntegrityViolationException ignored) {
+                    // Повторная заявка
+                }
+            } else {
+                userStorage.removeFriend(id, friendId);
+            }
+        }
+        userStorage.delete(5);
+
+        UserDbStorage reloadedStorage = new UserDbStorage(jdbcTemplate);
+        for (long id = 1; id <= 4; id++) {
+            assertThat(userStorage.get(id).getFriends()).isEqualTo(reloadedStorage.get(id).getFriends());
+            for (long otherId = 1; otherId <= 4; otherId++) {
+                assertThat(userStorage.getCommonFriends(id, otherId))
+                        .isEqualTo(reloadedStorage.getCommonFriends(id, otherId));
+            }
+        }
+    }
+
+    @Test
+    public void testFriendGraphIgnoresRolledBackChanges() {
+        for (int i = 1; i <= 3; i++) {
+            userStorage.add(User.builder()
+                    .name("User" + i)
+                    .email("user" + i + "@email.ru")
+                    .login("user" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build());
+        }
+        userStorage.addFriend(1, 2);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        transaction.executeWithoutResult(status -> {
+            userStorage.addFriend(1, 3);
+            userStorage.removeFriend(1, 2);
+            userStorage.delete(2);
+            status.setRollbackOnly();
+        });
+
+        assertThat(userStorage.getFriends(1)).extracting(User::getId).containsExactly(2L);
+        assertThat(userStorage.getFriendsCount(2)).isZero();
+        assertThat(userStorage.getFriendsCount(3)).isZero();
+
+        transaction.executeWithoutResult(status -> userStorage.addFriend(1, 3));
+
+        assertThat(userStorage.getFriends(1)).extracting(User::getId).containsExactly(2L, 3L);
+    }
+
+    @Test
+    public void testFriendRequestDuringGraphLoadIsNotLost() throws InterruptedException {
+        for (int i = 1; i <= 2; i++) {
+            userStorage.add(User.builder()
+                    .name("User" + i)
+                    .email("user" + i + "@email.ru")
+                    .login("user" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build());
+        }
+
+        // Хранилище с незагруженным графом: таблица follow уже прочитана, и в это время другой поток
+        // добавляет друга
+        List<Thread> writers = new ArrayList<>();
+        List<UserDbStorage> coldStorage = new ArrayList<>();
+        JdbcTemplate loadingTemplate = new JdbcTemplate(Objects.requireNonNull(jdbcTemplate.getDataSource())) {
+            @Override
+            public <T> List<T> query(String sql, RowMapper<T> rowMapper) {
+                List<T> result = super.query(sql, rowMapper);
+                if (sql.contains("FROM follow") && writers.isEmpty()) {
+                    Thread writer = new Thread(() -> coldStorage.get(0).addFriend(1, 2));
+                    writers.add(writer);
+                    writer.start();
+                    try {
+                        writer.join(500);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return result;
+            }
+        };
+        coldStorage.add(new UserDbStorage(loadingTemplate));
+
+        coldStorage.get(0).getFriendsCount(1);
+        writers.get(0).join();
+
+        assertThat(coldStorage.get(0).getFriends(1)).extracting(User::getId).containsExactly(2L);
+    }
+}